@@ -32,12 +32,15 @@ import net.pl3x.map.core.event.server.ServerLoadedEvent;
 import net.pl3x.map.core.player.Player;
 import net.pl3x.map.core.player.PlayerListener;
 import net.pl3x.map.core.player.PlayerRegistry;
+import net.pl3x.map.core.world.World;
+import org.bukkit.Chunk;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.event.server.ServerLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -85,6 +88,9 @@ public class Pl3xMapBukkit extends JavaPlugin implements Listener {
         } else {
             getServer().getScheduler().runTaskTimer(this, () ->
                     this.pl3xmap.getScheduler().tick(), 20, 20);
+            // no single server thread to copy chunks on with folia
+            getServer().getScheduler().runTaskTimer(this, () ->
+                    this.pl3xmap.getLiveChunks().tick(), 1, 1);
         }
     }
 
@@ -116,6 +122,19 @@ public class Pl3xMapBukkit extends JavaPlugin implements Listener {
         }
     }
 
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(@NonNull ChunkUnloadEvent event) {
+        // bukkit has no event for autosaves, the region file watcher picks those up
+        if (!event.isSaveChunk()) {
+            return;
+        }
+        World world = Pl3xMap.api().getWorldRegistry().get(event.getWorld().getName());
+        if (world != null) {
+            Chunk chunk = event.getChunk();
+            world.markChunkSaved(chunk.getX(), chunk.getZ());
+        }
+    }
+
     @EventHandler(priority = EventPriority.LOWEST)
     public void onServerLoaded(ServerLoadEvent event) {
         Pl3xMap.api().getEventRegistry().callEvent(new ServerLoadedEvent());
@@ -107,6 +107,16 @@ public class Pl3xMapImpl extends Pl3xMap {
         return Bukkit.getVersion();
     }
 
+    @Override
+    public double getMspt() {
+        try {
+            return Bukkit.getAverageTickTime();
+        } catch (UnsupportedOperationException e) {
+            // folia has no single tick loop
+            return -1D;
+        }
+    }
+
     @Override
     public @NonNull AudienceProvider adventure() {
         if (this.adventure == null) {
@@ -27,6 +27,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinWorkerThread;
@@ -49,14 +50,23 @@ import net.pl3x.map.core.registry.IconRegistry;
 import net.pl3x.map.core.registry.RendererRegistry;
 import net.pl3x.map.core.registry.WorldRegistry;
 import net.pl3x.map.core.renderer.heightmap.HeightmapRegistry;
+import net.pl3x.map.core.renderer.progress.RenderProfiler;
+import net.pl3x.map.core.renderer.task.LiveChunks;
+import net.pl3x.map.core.renderer.task.QueueSavedChunks;
+import net.pl3x.map.core.renderer.task.RegionFileWatcher;
 import net.pl3x.map.core.renderer.task.RegionProcessor;
+import net.pl3x.map.core.renderer.task.RenderThrottle;
 import net.pl3x.map.core.renderer.task.UpdateSettingsData;
+import net.pl3x.map.core.renderer.worker.RenderWorker;
+import net.pl3x.map.core.renderer.worker.RenderWorkerHost;
 import net.pl3x.map.core.scheduler.Scheduler;
+import net.pl3x.map.core.standalone.StandaloneRenderer;
 import net.pl3x.map.core.util.Mathf;
 import net.pl3x.map.core.util.SpiFix;
 import net.pl3x.map.core.world.Biome;
 import net.pl3x.map.core.world.Block;
 import net.pl3x.map.core.world.Blocks;
+import net.pl3x.map.core.world.RegionCache;
 import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -69,6 +79,12 @@ public abstract class Pl3xMap {
     private final Attributes manifest;
     private final HttpdServer httpdServer;
     private final RegionProcessor regionProcessor;
+    private final RegionCache regionCache;
+    private final RegionFileWatcher regionFileWatcher;
+    private final LiveChunks liveChunks;
+    private final RenderProfiler renderProfiler;
+    private final RenderThrottle renderThrottle;
+    private final RenderWorkerHost renderWorkerHost;
     private final Scheduler scheduler;
 
     private final BlockRegistry blockRegistry;
@@ -80,11 +96,33 @@ public abstract class Pl3xMap {
     private final WorldRegistry worldRegistry;
 
     private ExecutorService renderExecutor;
+    private ExecutorService ioExecutor;
 
     private String commit;
     private Metrics metrics;
     private boolean enabled;
 
+    /**
+     * Entry point of the jar outside of a server.
+     *
+     * @param args command line arguments
+     * @throws Exception if running failed
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length == 4 && args[0].equals("--worker")) {
+            // started by a server to render regions for it
+            RenderWorker.run(Integer.parseInt(args[1]), args[2], Path.of(args[3]));
+            System.exit(0);
+        }
+        if (args.length > 0 && args[0].equals("render")) {
+            System.exit(StandaloneRenderer.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        System.err.println("Pl3xMap is a server plugin/mod, put it in your plugins or mods directory");
+        System.err.println("To render a world without a server, put Gson and log4j next to it on the classpath (use ; instead of : on Windows):");
+        System.err.println("  java -cp <this jar>:<gson jar>:<log4j-api jar>:<log4j-core jar> net.pl3x.map.core.Pl3xMap render <world directory>");
+        System.exit(1);
+    }
+
     public Pl3xMap() {
         try {
             // Due to these bugs(?) in spi
@@ -114,6 +152,12 @@ public abstract class Pl3xMap {
 
         // setup tasks
         this.regionProcessor = new RegionProcessor();
+        this.regionCache = new RegionCache();
+        this.regionFileWatcher = new RegionFileWatcher();
+        this.liveChunks = new LiveChunks();
+        this.renderProfiler = new RenderProfiler();
+        this.renderThrottle = new RenderThrottle();
+        this.renderWorkerHost = new RenderWorkerHost();
         this.scheduler = new Scheduler();
 
         // setup registries
@@ -138,6 +182,30 @@ public abstract class Pl3xMap {
         return this.regionProcessor;
     }
 
+    public @NonNull RegionCache getRegionCache() {
+        return this.regionCache;
+    }
+
+    public @NonNull RegionFileWatcher getRegionFileWatcher() {
+        return this.regionFileWatcher;
+    }
+
+    public @NonNull LiveChunks getLiveChunks() {
+        return this.liveChunks;
+    }
+
+    public @NonNull RenderProfiler getRenderProfiler() {
+        return this.renderProfiler;
+    }
+
+    public @NonNull RenderThrottle getRenderThrottle() {
+        return this.renderThrottle;
+    }
+
+    public @NonNull RenderWorkerHost getRenderWorkerHost() {
+        return this.renderWorkerHost;
+    }
+
     public @NonNull BlockRegistry getBlockRegistry() {
         return this.blockRegistry;
     }
@@ -170,11 +238,20 @@ public abstract class Pl3xMap {
         return this.renderExecutor;
     }
 
+    public @NonNull ExecutorService getIOExecutor() {
+        return this.ioExecutor;
+    }
+
     public @NonNull Scheduler getScheduler() {
         return this.scheduler;
     }
 
-    public void enable() {
+    /**
+     * Set up what rendering needs, without the web server, tasks, worlds or players.
+     * <p>
+     * Processes that only render, like render workers, call this instead of {@link #enable()}.
+     */
+    protected void enableRenderer() {
         // load up configs
         Logger.debug("Loading configs");
         Config.reload();
@@ -182,9 +259,6 @@ public abstract class Pl3xMap {
         ColorsConfig.reload();
         PlayerTracker.reload();
 
-        // initialize icons
-        getIconRegistry().init();
-
         // load blocks _after_ we loaded colors
         Logger.debug("Registering blocks");
         Blocks.registerDefaults();
@@ -192,7 +266,10 @@ public abstract class Pl3xMap {
 
         // create the executor service
         Logger.debug("Creating services");
-        this.renderExecutor = ThreadFactory.createService("Pl3xMap-Renderer", Config.RENDER_THREADS);
+        this.renderExecutor = createRenderExecutor();
+        int renderThreads = ((ForkJoinPool) this.renderExecutor).getParallelism();
+        this.ioExecutor = ThreadFactory.createIOService("Pl3xMap-IO", Config.IO_THREADS < 1 ? renderThreads * 2 : Config.IO_THREADS);
+        getRegionCache().start();
 
         // register built in tile image types
         Logger.debug("Registering tile image types");
@@ -205,6 +282,32 @@ public abstract class Pl3xMap {
         // register built-in renderers
         Logger.debug("Registering renderers");
         getRendererRegistry().register();
+    }
+
+    /**
+     * Create the executor regions are rendered on.
+     * <p>
+     * On a server this leaves at least half the cpu-threads to the game.
+     *
+     * @return new render executor
+     */
+    protected @NonNull ExecutorService createRenderExecutor() {
+        return ThreadFactory.createService("Pl3xMap-Renderer", Config.RENDER_THREADS);
+    }
+
+    public void enable() {
+        enableRenderer();
+
+        // initialize icons
+        getIconRegistry().init();
+
+        // load up unfinished render jobs, worlds resume them as they initialize
+        Logger.debug("Loading render jobs");
+        getRegionProcessor().getJobs().load();
+
+        // worlds register their region directories as they initialize
+        Logger.debug("Starting region file watcher");
+        getRegionFileWatcher().start();
 
         // load up already loaded worlds
         Logger.debug("Registering worlds");
@@ -225,6 +328,18 @@ public abstract class Pl3xMap {
         Logger.debug("Starting update settings data task");
         getScheduler().addTask(new UpdateSettingsData());
 
+        Logger.debug("Starting saved chunks task");
+        getScheduler().addTask(new QueueSavedChunks());
+
+        Logger.debug("Starting render throttle");
+        getRenderThrottle().start();
+
+        // timings from before a reload may be from another config
+        getRenderProfiler().reset();
+
+        Logger.debug("Starting render worker");
+        getRenderWorkerHost().start();
+
         Logger.info("Platform: " + getPlatform());
         Logger.info("Version: " + getVersion());
 
@@ -252,14 +367,24 @@ public abstract class Pl3xMap {
         // stop tasks
         Logger.debug("Stopping tasks");
         getScheduler().cancelAll();
+        getRenderThrottle().stop();
+        getRegionFileWatcher().stop();
+        getLiveChunks().clear();
         getRegionProcessor().stop();
+        getRenderWorkerHost().stop();
+        getRegionProcessor().getJobs().unload();
         if (this.renderExecutor != null) {
             this.renderExecutor.shutdownNow();
         }
+        if (this.ioExecutor != null) {
+            this.ioExecutor.shutdownNow();
+        }
+        getRegionCache().stop();
 
         // stop integrated server
         Logger.debug("Stopping internal server");
         getHttpdServer().stopServer();
+        getHttpdServer().getSnapshotStore().clear();
 
         // unload all players
         Logger.debug("Unregistering players");
@@ -316,6 +441,26 @@ public abstract class Pl3xMap {
 
     public abstract @NonNull Path getJarPath();
 
+    /**
+     * Get the server's average milliseconds per tick, for the render throttle.
+     *
+     * @return average mspt, or -1 if the platform does not know
+     */
+    public double getMspt() {
+        return -1D;
+    }
+
+    /**
+     * Whether this platform reports every chunk the server saves through {@link World#markChunkSaved(int, int)}.
+     * <p>
+     * Region file changes already explained by reported saves are then not queued again by the file watcher.
+     *
+     * @return true if all chunk saves are reported
+     */
+    public boolean reportsChunkSaves() {
+        return false;
+    }
+
     public abstract int getColorForPower(byte power);
 
     public abstract @Nullable Block getFlower(@NonNull World world, @NonNull Biome biome, int blockX, int blockY, int blockZ);
@@ -357,6 +502,30 @@ public abstract class Pl3xMap {
             return createService(new ThreadFactory(name, parallelism));
         }
 
+        /**
+         * Create a cpu bound service that may use every cpu-thread, for when there is no game to leave room for.
+         *
+         * @param name    thread name
+         * @param threads number of threads, or less than 1 for all cpu-threads
+         * @return new executor service
+         */
+        public static @NonNull ExecutorService createUncappedService(@NonNull String name, int threads) {
+            int max = Runtime.getRuntime().availableProcessors();
+            return createService(new ThreadFactory(name, Mathf.clamp(1, max, threads < 1 ? max : threads)));
+        }
+
+        /**
+         * Create a service for threads that mostly wait on the disk.
+         * Unlike cpu bound services this is not capped to half the cpu-threads.
+         *
+         * @param name    thread name
+         * @param threads number of threads
+         * @return new executor service
+         */
+        public static @NonNull ExecutorService createIOService(@NonNull String name, int threads) {
+            return createService(new ThreadFactory(name, Mathf.clamp(1, 64, threads)));
+        }
+
         private static @NonNull ExecutorService createService(@NonNull ThreadFactory factory) {
             return new ForkJoinPool(factory.threads, factory, null, false);
         }
@@ -67,7 +67,7 @@ public class FullRenderCommand extends Pl3xMapCommand {
             regions.forEach(region -> Logger.debug("Adding region: " + region));
         }
 
-        Pl3xMap.api().getRegionProcessor().addRegions(world, regions);
+        Pl3xMap.api().getRegionProcessor().getJobs().submit(world, "fullrender", 0, regions);
 
         sender.sendMessage(Lang.COMMAND_FULLRENDER_STARTING);
     }
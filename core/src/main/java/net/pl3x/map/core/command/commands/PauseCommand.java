@@ -25,12 +25,15 @@ package net.pl3x.map.core.command.commands;
 
 import cloud.commandframework.context.CommandContext;
 import cloud.commandframework.minecraft.extras.MinecraftExtrasMetaKeys;
+import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.command.CommandHandler;
 import net.pl3x.map.core.command.Pl3xMapCommand;
 import net.pl3x.map.core.command.Sender;
+import net.pl3x.map.core.command.argument.WorldArgument;
 import net.pl3x.map.core.configuration.Lang;
 import net.pl3x.map.core.renderer.task.RegionProcessor;
+import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 public class PauseCommand extends Pl3xMapCommand {
@@ -41,6 +44,7 @@ public class PauseCommand extends Pl3xMapCommand {
     @Override
     public void register() {
         getHandler().registerSubcommand(builder -> builder.literal("pause")
+                .argument(WorldArgument.optional("world"), description(Lang.COMMAND_ARGUMENT_OPTIONAL_WORLD_DESCRIPTION))
                 .meta(MinecraftExtrasMetaKeys.DESCRIPTION, Lang.parse(Lang.COMMAND_PAUSE_DESCRIPTION))
                 .permission("pl3xmap.command.pause")
                 .handler(this::execute));
@@ -51,6 +55,18 @@ public class PauseCommand extends Pl3xMapCommand {
 
         RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
 
+        World world = context.getOrDefault("world", null);
+        if (world != null) {
+            boolean paused = !processor.isWorldPaused(world);
+            processor.setPaused(world, paused);
+            // the global pause still holds the world back after unpausing it
+            String message = paused ? Lang.COMMAND_PAUSE_PAUSED_WORLD
+                    : processor.isPaused(world) ? Lang.COMMAND_PAUSE_STILL_PAUSED_WORLD
+                    : Lang.COMMAND_PAUSE_UNPAUSED_WORLD;
+            sender.sendMessage(message, Placeholder.unparsed("world", world.getName()));
+            return;
+        }
+
         boolean paused = !processor.isPaused();
 
         processor.setPaused(paused);
@@ -84,7 +84,9 @@ public class RadiusRenderCommand extends Pl3xMapCommand {
             regions.forEach(region -> Logger.debug("Adding region: " + region));
         }
 
-        Pl3xMap.api().getRegionProcessor().addRegions(world, regions);
+        // smaller and more deliberate than a full render, let it go ahead of background work
+        String source = "radiusrender " + radius + " " + center.x() + " " + center.z();
+        Pl3xMap.api().getRegionProcessor().getJobs().submit(world, source, 10, regions);
 
         sender.sendMessage(Lang.COMMAND_RADIUSRENDER_STARTING);
     }
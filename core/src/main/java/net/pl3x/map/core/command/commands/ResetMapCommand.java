@@ -27,6 +27,7 @@ import cloud.commandframework.context.CommandContext;
 import cloud.commandframework.extra.confirmation.CommandConfirmationManager;
 import cloud.commandframework.minecraft.extras.MinecraftExtrasMetaKeys;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.concurrent.CompletableFuture;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import net.kyori.adventure.text.minimessage.tag.resolver.TagResolver;
@@ -67,6 +68,9 @@ public class ResetMapCommand extends Pl3xMapCommand {
         sender.sendMessage(Lang.COMMAND_RESETMAP_BEGIN, worldPlaceholder);
 
         CompletableFuture.runAsync(() -> {
+            // drop render jobs, the new world renders everything anyway
+            Pl3xMap.api().getRegionProcessor().getJobs().cancel(world);
+
             // unregister the world
             Pl3xMap.api().getWorldRegistry().unregister(world.getName());
 
@@ -74,6 +78,10 @@ public class ResetMapCommand extends Pl3xMapCommand {
             String result;
             try {
                 FileUtil.deleteDirectory(world.getTilesDirectory());
+                if (Files.exists(world.getDataDirectory())) {
+                    FileUtil.deleteDirectory(world.getDataDirectory());
+                }
+                Pl3xMap.api().getHttpdServer().invalidateTiles(world.getTilesDirectory());
                 result = Lang.COMMAND_RESETMAP_SUCCESS;
             } catch (IOException e) {
                 result = Lang.COMMAND_RESETMAP_FAILED;
@@ -25,6 +25,9 @@ package net.pl3x.map.core.command.commands;
 
 import cloud.commandframework.context.CommandContext;
 import cloud.commandframework.minecraft.extras.MinecraftExtrasMetaKeys;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import net.kyori.adventure.text.minimessage.tag.resolver.Placeholder;
 import net.pl3x.map.core.Pl3xMap;
@@ -33,7 +36,12 @@ import net.pl3x.map.core.command.Pl3xMapCommand;
 import net.pl3x.map.core.command.Sender;
 import net.pl3x.map.core.configuration.Lang;
 import net.pl3x.map.core.renderer.progress.Progress;
+import net.pl3x.map.core.renderer.progress.RenderProfiler;
 import net.pl3x.map.core.renderer.task.RegionProcessor;
+import net.pl3x.map.core.renderer.task.RenderJob;
+import net.pl3x.map.core.renderer.task.RenderThrottle;
+import net.pl3x.map.core.renderer.worker.RenderWorkerHost;
+import net.pl3x.map.core.world.RegionCache;
 import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -70,6 +78,29 @@ public class StatusCommand extends Pl3xMapCommand {
         String queuedHeader = "<gray>Queued up renderers:</gray>";
         String queuedEntry = "<dark_gray><line></dark_gray> <color:#5b00ff>World:</color> <white><world></white>";
 
+        String cache = """
+                <gray>Region cache:</gray>
+                <dark_gray>├─</dark_gray> <white>size:</white> <gray><cache_regions> regions, <cache_used>/<cache_budget> MiB</gray>
+                <dark_gray>├─</dark_gray> <white>hit:</white> <gray><cache_hit>%</gray>
+                <dark_gray>└─</dark_gray> <white>evicted:</white> <gray><cache_evicted></gray>""";
+
+        String jobsHeader = "<gray>Render jobs:</gray>";
+        String jobsEntry = "<dark_gray><line></dark_gray> <white><id></white> <gray><source> in</gray> <white><world></white> <gray><done>/<total></gray>";
+
+        String throttle = """
+                <gray>Render throttle:</gray>
+                <dark_gray>├─</dark_gray> <white>state:</white> <gray><throttle_state>, <throttle_share>% of render threads (max <throttle_max>%)</gray>
+                <dark_gray>├─</dark_gray> <white>mspt:</white> <gray><throttle_mspt>, cpu <throttle_cpu>%</gray>
+                <dark_gray>└─</dark_gray> <white>changes:</white> <gray><throttle_shrinks> down, <throttle_grows> up, <throttle_pauses> paused, <throttle_slept>s slept</gray>""";
+
+        String worker = "<gray>Render worker:</gray> <white><worker_state></white> <gray>(<worker_pending>/<worker_capacity> regions)</gray>";
+
+        String queues = "<gray>Queues:</gray> <gray><regions_queued> regions queued, <regions_in_flight> in flight, <render_tasks> render tasks, <io_tasks> io tasks</gray>";
+
+        String stagesHeader = "<gray>Render stages:</gray>";
+        String stagesEntry = "<dark_gray>├─</dark_gray> <white><stage>:</white> <gray><count>x, p50 <p50>, p99 <p99>, max <max>, total <total></gray>";
+        String stagesIo = "<dark_gray>└─</dark_gray> <white>io:</white> <gray><read> MiB read, <written> MiB written in <tiles> tiles</gray>";
+
         String paused = "<gray>Renderers are </gray><white>paused</white>";
         String idle = "<gray>Renderers are </gray><white>idle</white>";
 
@@ -102,6 +133,83 @@ public class StatusCommand extends Pl3xMapCommand {
                 sb.append("\n");
             }
         }
+
+        List<RenderJob> jobs = processor.getJobs().getJobs();
+        if (!jobs.isEmpty()) {
+            sb.append(jobsHeader).append("\n");
+            int i = 0;
+            for (RenderJob job : jobs) {
+                sb.append(jobsEntry
+                        .replace("<line>", ++i < jobs.size() ? lineNext : lineLast)
+                        .replace("<id>", job.getId())
+                        .replace("<source>", job.getSource())
+                        .replace("<world>", job.getWorld())
+                        .replace("<done>", Integer.toString(job.getTotal() - job.getRemaining()))
+                        .replace("<total>", Integer.toString(job.getTotal())));
+                sb.append("\n");
+            }
+        }
+
+        RegionCache regionCache = Pl3xMap.api().getRegionCache();
+        CacheStats stats = regionCache.stats();
+        sb.append(cache
+                .replace("<cache_regions>", Long.toString(regionCache.size()))
+                .replace("<cache_used>", Long.toString(regionCache.weightedSize() >> 20))
+                .replace("<cache_budget>", Long.toString(RegionCache.getBudget() >> 20))
+                .replace("<cache_hit>", String.format("%.2f", stats.hitRate() * 100D))
+                .replace("<cache_evicted>", Long.toString(stats.evictionCount())));
+        sb.append("\n");
+
+        RenderThrottle renderThrottle = Pl3xMap.api().getRenderThrottle();
+        double mspt = renderThrottle.getMspt();
+        double cpu = renderThrottle.getProcessCpuLoad();
+        sb.append(throttle
+                .replace("<throttle_state>", renderThrottle.getState().name().toLowerCase())
+                .replace("<throttle_share>", String.format("%.0f", renderThrottle.getShare() * 100D))
+                .replace("<throttle_max>", String.format("%.0f", renderThrottle.getMaxShare() * 100D))
+                .replace("<throttle_mspt>", mspt < 0 ? "unknown" : String.format("%.1f", mspt))
+                .replace("<throttle_cpu>", cpu < 0 ? "?" : String.format("%.0f", cpu * 100D))
+                .replace("<throttle_shrinks>", Long.toString(renderThrottle.getShrinks()))
+                .replace("<throttle_grows>", Long.toString(renderThrottle.getGrows()))
+                .replace("<throttle_pauses>", Long.toString(renderThrottle.getPauses()))
+                .replace("<throttle_slept>", Long.toString(renderThrottle.getSleptMillis() / 1000L)));
+        sb.append("\n");
+
+        RenderWorkerHost renderWorker = Pl3xMap.api().getRenderWorkerHost();
+        if (renderWorker.isRunning()) {
+            int capacity = renderWorker.getCapacity();
+            sb.append(worker
+                    .replace("<worker_state>", capacity > 0 ? "connected" : "starting")
+                    .replace("<worker_pending>", Integer.toString(renderWorker.getPending()))
+                    .replace("<worker_capacity>", Integer.toString(capacity)));
+            sb.append("\n");
+        }
+
+        RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+        String queueLine = queues;
+        for (Map.Entry<String, Long> queue : profiler.getQueues().entrySet()) {
+            queueLine = queueLine.replace("<" + queue.getKey() + ">", Long.toString(queue.getValue()));
+        }
+        sb.append(queueLine).append("\n");
+
+        if (profiler.isEnabled()) {
+            sb.append(stagesHeader).append("\n");
+            profiler.getHistograms().forEach((stage, histogram) -> {
+                sb.append(stagesEntry
+                        .replace("<stage>", stage)
+                        .replace("<count>", Long.toString(histogram.getCount()))
+                        .replace("<p50>", formatNanos(histogram.getValueAtPercentile(50D)))
+                        .replace("<p99>", formatNanos(histogram.getValueAtPercentile(99D)))
+                        .replace("<max>", formatNanos(histogram.getMax()))
+                        .replace("<total>", formatNanos(histogram.getSum())));
+                sb.append("\n");
+            });
+            sb.append(stagesIo
+                    .replace("<read>", Long.toString(profiler.getBytesRead() >> 20))
+                    .replace("<written>", Long.toString(profiler.getBytesWritten() >> 20))
+                    .replace("<tiles>", Long.toString(profiler.getTilesWritten())));
+            sb.append("\n");
+        }
         sb.append(footer);
 
         if (isPaused || isIdle) {
@@ -122,4 +230,14 @@ public class StatusCommand extends Pl3xMapCommand {
                 Placeholder.unparsed("linelast", lineLast)
         );
     }
+
+    private static @NonNull String formatNanos(long nanos) {
+        if (nanos < 1_000_000L) {
+            return String.format("%.0fµs", nanos / 1e3D);
+        }
+        if (nanos < 1_000_000_000L) {
+            return String.format("%.1fms", nanos / 1e6D);
+        }
+        return String.format("%.1fs", nanos / 1e9D);
+    }
 }
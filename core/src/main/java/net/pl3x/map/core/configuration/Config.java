@@ -65,6 +65,15 @@ public final class Config extends AbstractConfig {
             1.0 is high quality, no compression, large file size
             Note: Not all image formats honor this setting.""")
     public static double WEB_TILE_QUALITY = 0.0F;
+    @Key("settings.web-directory.export-json")
+    @Comment("""
+            Also write the live json data (settings, markers, etc)
+            to the web directory. The built-in web server serves this
+            data straight from memory, so this is only needed when
+            hosting the map with an external web server.
+            Note: This is always on when the built-in web server
+            is disabled or the web directory is read-only.""")
+    public static boolean WEB_DIR_EXPORT_JSON = false;
 
     @Key("settings.internal-webserver.enabled")
     @Comment("""
@@ -84,6 +93,79 @@ public final class Config extends AbstractConfig {
             The port the built-in web server listens to.
             Make sure the port is allocated if using Pterodactyl.""")
     public static int HTTPD_PORT = 8080;
+    @Key("settings.internal-webserver.tile-cache-size")
+    @Comment("""
+            How much memory (in megabytes) the built-in web server may
+            use to keep frequently requested tiles in memory.
+            Set to 0 to always read tiles from disk.""")
+    public static int HTTPD_TILE_CACHE_SIZE = 64;
+    @Key("settings.internal-webserver.render-on-request.enabled")
+    @Comment("""
+            Render regions as soon as someone looks at them on the map.
+            Missing tiles move their regions to the front of the render queue.""")
+    public static boolean HTTPD_RENDER_ON_REQUEST = true;
+    @Key("settings.internal-webserver.render-on-request.wait")
+    @Comment("""
+            How long (in milliseconds) a request for a missing tile waits
+            for its render before getting a blank tile with a retry hint.
+            Waiting requests count towards max-concurrent-requests.""")
+    public static int HTTPD_RENDER_ON_REQUEST_WAIT = 3000;
+    @Key("settings.internal-webserver.render-on-request.max-waiting")
+    @Comment("""
+            The maximum number of requests waiting for a render at once.
+            Any more get a blank tile with a retry hint right away, so
+            waiting requests never take all of max-concurrent-requests.""")
+    public static int HTTPD_RENDER_ON_REQUEST_MAX_WAITING = 16;
+    @Key("settings.internal-webserver.io-threads")
+    @Comment("""
+            The number of threads accepting connections and
+            serving cached data. Keep this low, these threads
+            compete with the game server for cpu time.
+            Value of -1 will use Undertow's default (one per cpu-thread).""")
+    public static int HTTPD_IO_THREADS = 2;
+    @Key("settings.internal-webserver.worker-threads")
+    @Comment("""
+            The number of threads reading files from disk.
+            Value of -1 will use Undertow's default (8 per io-thread).""")
+    public static int HTTPD_WORKER_THREADS = 8;
+    @Key("settings.internal-webserver.buffer-size")
+    @Comment("""
+            The size (in bytes) of each network buffer.
+            Value of -1 will let Undertow decide based on available memory.""")
+    public static int HTTPD_BUFFER_SIZE = -1;
+    @Key("settings.internal-webserver.max-connections")
+    @Comment("""
+            The maximum number of open connections. New connections
+            wait in the os backlog until others close.
+            Value of -1 will not limit connections.""")
+    public static int HTTPD_MAX_CONNECTIONS = 512;
+    @Key("settings.internal-webserver.idle-timeout")
+    @Comment("""
+            Seconds before an idle connection is closed.""")
+    public static int HTTPD_IDLE_TIMEOUT = 30;
+    @Key("settings.internal-webserver.max-concurrent-requests")
+    @Comment("""
+            The maximum number of requests being handled at once.
+            Value of -1 will not limit requests.""")
+    public static int HTTPD_MAX_CONCURRENT_REQUESTS = 64;
+    @Key("settings.internal-webserver.request-queue-size")
+    @Comment("""
+            The number of requests allowed to wait when the above
+            limit is reached. Any more get a 503 with a retry hint.""")
+    public static int HTTPD_REQUEST_QUEUE_SIZE = 256;
+    @Key("settings.internal-webserver.rate-limit.requests-per-second")
+    @Comment("""
+            The number of requests per second a single address may make.
+            Clients going over get a 429 with a retry hint.
+            Note: Behind a reverse proxy every client shares the
+            proxy's address, so limit at the proxy instead.
+            Value of -1 will not rate limit.""")
+    public static int HTTPD_RATE_LIMIT = -1;
+    @Key("settings.internal-webserver.rate-limit.burst")
+    @Comment("""
+            The number of requests an address may make in a short
+            burst (eg, when the map first loads) before being limited.""")
+    public static int HTTPD_RATE_LIMIT_BURST = 300;
 
     @Key("settings.performance.render-threads")
     @Comment("""
@@ -91,16 +173,131 @@ public final class Config extends AbstractConfig {
             Value of -1 will use 50% of the available cpu-threads. (recommended)""")
     public static int RENDER_THREADS = -1;
 
-    @Key("settings.performance.gc.when-finished")
+    @Key("settings.performance.io-threads")
+    @Comment("""
+            The number of threads to use for reading region files and writing tiles.
+            These mostly wait on the disk, so they may outnumber the cpu-threads.
+            Value of -1 will use twice the number of render-threads.""")
+    public static int IO_THREADS = -1;
+
+    @Key("settings.performance.render-memory")
+    @Comment("""
+            How much heap (in megabytes) regions being rendered may use together.
+            New regions only start rendering when others finish and free up room.
+            Value of -1 will use 25% of the max heap size. (recommended)""")
+    public static int RENDER_MEMORY = -1;
+
+    @Key("settings.performance.region-cache")
+    @Comment("""
+            How much heap (in megabytes) decoded regions may stay cached, shared by all worlds.
+            Cached regions save decoding the same chunks again for neighboring regions.
+            When the heap is nearly full after a garbage collection, half of it is let go.
+            Value of -1 will use 10% of the max heap size. (recommended)""")
+    public static int REGION_CACHE = -1;
+
+    @Key("settings.performance.region-watcher.mode")
+    @Comment("""
+            How region files saved by the server are noticed and queued for rendering.
+              watch - let the file system report changes (recommended)
+              poll  - check modified times every poll-interval, for file systems that
+                      do not report changes reliably (network mounts, some containers)
+              off   - only render regions on startup and with commands""")
+    public static String REGION_WATCHER_MODE = "watch";
+
+    @Key("settings.performance.region-watcher.quiet-period")
+    @Comment("""
+            How long (in milliseconds) a region file has to stay unchanged before it is queued.
+            The server writes a region file in many steps, this renders it once they are done.""")
+    public static int REGION_WATCHER_QUIET_PERIOD = 5000;
+
+    @Key("settings.performance.region-watcher.poll-interval")
+    @Comment("""
+            How often (in seconds) region directories are checked for changes in poll mode.""")
+    public static int REGION_WATCHER_POLL_INTERVAL = 30;
+
+    @Key("settings.performance.saved-chunks-delay")
+    @Comment("""
+            How long (in milliseconds) to wait after the server saved chunks before rendering them.
+            The server writes saved chunks to the region file in the background, shortly after.
+            Only the saved chunks are rendered, instead of the whole region.""")
+    public static int SAVED_CHUNKS_DELAY = 3000;
+
+    @Key("settings.performance.live-render.enabled")
+    @Comment("""
+            Render changes around players before the server saves them.
+            Loaded chunks with unsaved changes are copied from memory and rendered right away.""")
+    public static boolean LIVE_RENDER_ENABLED = true;
+
+    @Key("settings.performance.live-render.radius")
+    @Comment("""
+            Radius (in chunks) around each player to look for unsaved changes.""")
+    public static int LIVE_RENDER_RADIUS = 4;
+
+    @Key("settings.performance.live-render.interval")
+    @Comment("""
+            How often (in seconds) to look for unsaved changes around players.""")
+    public static int LIVE_RENDER_INTERVAL = 10;
+
+    @Key("settings.performance.live-render.chunks-per-tick")
+    @Comment("""
+            How many chunks may be copied from memory each server tick.
+            Copying happens on the server thread, keep this low to not hurt tps.""")
+    public static int LIVE_RENDER_CHUNKS_PER_TICK = 4;
+
+    @Key("settings.performance.render-throttle.enabled")
+    @Comment("""
+            Slow down or pause renders while the server is struggling to keep up.
+            Renders use less cpu when the server's mspt (milliseconds per tick) goes
+            above the target, and speed up again once the server has room to spare.""")
+    public static boolean RENDER_THROTTLE_ENABLED = true;
+
+    @Key("settings.performance.render-throttle.target-mspt")
+    @Comment("""
+            The mspt to keep the server under. A tick has 50 milliseconds before the server lags.""")
+    public static double RENDER_THROTTLE_TARGET_MSPT = 40.0D;
+
+    @Key("settings.performance.render-throttle.pause-mspt")
+    @Comment("""
+            The mspt at which renders are paused until the server recovers.""")
+    public static double RENDER_THROTTLE_PAUSE_MSPT = 48.0D;
+
+    @Key("settings.performance.render-throttle.hysteresis")
+    @Comment("""
+            How far (as a fraction of the target) the mspt has to drop below the target
+            before renders speed up again. Keeps renders from flapping around the target.""")
+    public static double RENDER_THROTTLE_HYSTERESIS = 0.2D;
+
+    @Key("settings.performance.render-throttle.grow-delay")
+    @Comment("""
+            How many seconds in a row the mspt has to stay low before renders speed up a step.""")
+    public static int RENDER_THROTTLE_GROW_DELAY = 5;
+
+    @Key("settings.performance.render-worker.enabled")
+    @Comment("""
+            Render regions in a separate java process instead of inside the server.
+            The render heap and its garbage collection pauses then stay out of the server.
+            Regions with live rendered chunks still render inside the server.
+            Falls back to rendering inside the server if the worker keeps failing to start.""")
+    public static boolean RENDER_WORKER_ENABLED = false;
+
+    @Key("settings.performance.render-worker.jvm-args")
+    @Comment("""
+            Extra java arguments for the render worker process, separated by spaces.""")
+    public static String RENDER_WORKER_JVM_ARGS = "-Xmx1G";
+
+    @Key("settings.performance.profiler.enabled")
     @Comment("""
-            Runs the JVM GC after a render job stops to free up memory immediately.""")
-    public static boolean GC_WHEN_FINISHED = true;
+            Time every stage of rendering regions, like reading, parsing, scanning and writing tiles.
+            Timings show up in /pl3xmap status, on the metrics endpoint and as JFR events.
+            Costs a little render speed, leave it off unless you are looking into slow renders.""")
+    public static boolean PROFILER_ENABLED = false;
 
-    @Key("settings.performance.gc.when-running")
+    @Key("settings.performance.profiler.endpoint")
     @Comment("""
-            Runs the JVM GC aggressively while a render is running
-            CAUTION: this _will_ slow down your renders!""")
-    public static boolean GC_WHEN_RUNNING = false;
+            Serve render timings, queue depths and cache stats on the internal web server,
+            at /metrics for Prometheus and at /metrics.json for everything else.
+            Anyone who can open the map can read these.""")
+    public static boolean PROFILER_ENDPOINT = false;
 
     private static final Config CONFIG = new Config();
 
@@ -63,6 +63,8 @@ public final class Lang extends AbstractConfig {
     public static String COMMAND_ARGUMENT_OPTIONAL_CENTER_DESCRIPTION = "Defaults to (<white>0<gray>,</gray> 0</white>) if unspecified";
     @Key("command.argument.optional-zoom")
     public static String COMMAND_ARGUMENT_OPTIONAL_ZOOM_DESCRIPTION = "Map zoom level";
+    @Key("command.argument.optional-world")
+    public static String COMMAND_ARGUMENT_OPTIONAL_WORLD_DESCRIPTION = "Defaults to all worlds if unspecified";
     @Key("command.argument.required-renderer")
     public static String COMMAND_ARGUMENT_REQUIRED_RENDERER_DESCRIPTION = "Renderer is required";
     @Key("command.argument.required-world")
@@ -98,6 +100,12 @@ public final class Lang extends AbstractConfig {
     public static String COMMAND_PAUSE_PAUSED = "<green>Renderers are now paused";
     @Key("command.pause.unpaused")
     public static String COMMAND_PAUSE_UNPAUSED = "<green>Renderers are now unpaused";
+    @Key("command.pause.paused-world")
+    public static String COMMAND_PAUSE_PAUSED_WORLD = "<green>Renderers are now paused for <grey><world>";
+    @Key("command.pause.unpaused-world")
+    public static String COMMAND_PAUSE_UNPAUSED_WORLD = "<green>Renderers are now unpaused for <grey><world>";
+    @Key("command.pause.still-paused-world")
+    public static String COMMAND_PAUSE_STILL_PAUSED_WORLD = "<green>Unpaused <grey><world></grey>, but renderers stay paused until all renderers are unpaused";
 
     @Key("command.radiusrender.description")
     public static String COMMAND_RADIUSRENDER_DESCRIPTION = "Render a section of a world";
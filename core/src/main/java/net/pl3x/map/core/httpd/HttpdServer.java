@@ -26,23 +26,86 @@ package net.pl3x.map.core.httpd;
 import io.undertow.Undertow;
 import io.undertow.UndertowLogger;
 import io.undertow.UndertowOptions;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.RequestLimit;
+import io.undertow.server.handlers.RequestLimitingHandler;
 import io.undertow.server.handlers.resource.PathResourceManager;
 import io.undertow.server.handlers.resource.ResourceHandler;
 import io.undertow.server.handlers.resource.ResourceManager;
 import io.undertow.util.ETag;
 import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.function.Consumer;
 import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.configuration.Lang;
 import net.pl3x.map.core.log.LogFilter;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.util.FileUtil;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.xnio.Options;
 
 public class HttpdServer {
+    private final SnapshotStore snapshotStore = new SnapshotStore();
+
     private Undertow server;
+    private TileCache tileCache;
+    private Consumer<@NonNull Path> tileListener;
+
+    public @NonNull SnapshotStore getSnapshotStore() {
+        return this.snapshotStore;
+    }
+
+    /**
+     * Get the tile cache of the running server.
+     *
+     * @return tile cache, or null if the server is not running
+     */
+    public @Nullable TileCache getTileCache() {
+        return this.tileCache;
+    }
+
+    /**
+     * Let the server know a tile file was just written or deleted.
+     *
+     * @param path path to tile file
+     */
+    public void invalidateTile(@NonNull Path path) {
+        TileCache cache = this.tileCache;
+        if (cache != null) {
+            cache.invalidate(path);
+        }
+        Consumer<Path> listener = this.tileListener;
+        if (listener != null) {
+            listener.accept(path);
+        }
+    }
+
+    /**
+     * Set who else wants to know about written tiles, like the server a render worker renders for.
+     *
+     * @param listener tile listener, or null to remove
+     */
+    public void setTileListener(@Nullable Consumer<@NonNull Path> listener) {
+        this.tileListener = listener;
+    }
+
+    /**
+     * Let the server know all tiles in a directory were changed.
+     *
+     * @param dir path to tiles directory
+     */
+    public void invalidateTiles(@NonNull Path dir) {
+        TileCache cache = this.tileCache;
+        if (cache != null) {
+            cache.invalidateAll(dir);
+        }
+    }
 
     public void startServer() {
         if (!Config.HTTPD_ENABLED) {
@@ -76,21 +139,63 @@ public class HttpdServer {
                 }
             });
 
-            LogFilter.HIDE_UNDERTOW_LOGS = true;
-            this.server = Undertow.builder()
+            HttpHandler fileHandler = exchange -> {
+                if (exchange.getRelativePath().startsWith("/tiles")) {
+                    exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "max-age=0, must-revalidate, no-cache");
+                }
+                if (exchange.getRelativePath().endsWith(".gz")) {
+                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
+                    exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, "gzip");
+                }
+                resourceHandler.handleRequest(exchange);
+            };
+
+            long cacheSize = Math.max(0, Config.HTTPD_TILE_CACHE_SIZE) * 1024L * 1024L;
+            this.tileCache = new TileCache(cacheSize, cacheSize / 16);
+
+            RenderOnRequest renderOnRequest = Config.HTTPD_RENDER_ON_REQUEST ? new RenderOnRequest() : null;
+            long renderWait = Math.max(0, Config.HTTPD_RENDER_ON_REQUEST_WAIT);
+            int maxWaiting = Math.max(0, Config.HTTPD_RENDER_ON_REQUEST_MAX_WAITING);
+
+            HttpHandler handler = new SnapshotHandler(this.snapshotStore, new TileHandler(this.tileCache, renderOnRequest, renderWait, maxWaiting, fileHandler));
+            if (Config.PROFILER_ENDPOINT) {
+                handler = new MetricsHandler(handler);
+            }
+            if (Config.HTTPD_MAX_CONCURRENT_REQUESTS > 0) {
+                RequestLimit limit = new RequestLimit(Config.HTTPD_MAX_CONCURRENT_REQUESTS, Math.max(0, Config.HTTPD_REQUEST_QUEUE_SIZE));
+                limit.setFailureHandler(exchange -> {
+                    exchange.getResponseHeaders().put(Headers.RETRY_AFTER, "1");
+                    exchange.setStatusCode(StatusCodes.SERVICE_UNAVAILABLE);
+                    exchange.endExchange();
+                });
+                handler = new RequestLimitingHandler(limit, handler);
+            }
+            if (Config.HTTPD_RATE_LIMIT > 0) {
+                handler = new RateLimitHandler(Config.HTTPD_RATE_LIMIT, Config.HTTPD_RATE_LIMIT_BURST, handler);
+            }
+
+            Undertow.Builder builder = Undertow.builder()
                     .setServerOption(UndertowOptions.ENABLE_HTTP2, true)
+                    .setServerOption(UndertowOptions.IDLE_TIMEOUT, Math.max(1, Config.HTTPD_IDLE_TIMEOUT) * 1000)
+                    .setServerOption(UndertowOptions.NO_REQUEST_TIMEOUT, Math.max(1, Config.HTTPD_IDLE_TIMEOUT) * 1000)
                     .addHttpListener(Config.HTTPD_PORT, Config.HTTPD_BIND)
-                    .setHandler(exchange -> {
-                        if (exchange.getRelativePath().startsWith("/tiles")) {
-                            exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "max-age=0, must-revalidate, no-cache");
-                        }
-                        if (exchange.getRelativePath().endsWith(".gz")) {
-                            exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
-                            exchange.getResponseHeaders().put(Headers.CONTENT_ENCODING, "gzip");
-                        }
-                        resourceHandler.handleRequest(exchange);
-                    })
-                    .build();
+                    .setHandler(handler);
+            if (Config.HTTPD_IO_THREADS > 0) {
+                builder.setIoThreads(Config.HTTPD_IO_THREADS);
+            }
+            if (Config.HTTPD_WORKER_THREADS > 0) {
+                builder.setWorkerThreads(Config.HTTPD_WORKER_THREADS);
+            }
+            if (Config.HTTPD_BUFFER_SIZE > 0) {
+                builder.setBufferSize(Config.HTTPD_BUFFER_SIZE);
+            }
+            if (Config.HTTPD_MAX_CONNECTIONS > 0) {
+                builder.setSocketOption(Options.CONNECTION_HIGH_WATER, Config.HTTPD_MAX_CONNECTIONS);
+                builder.setSocketOption(Options.CONNECTION_LOW_WATER, Config.HTTPD_MAX_CONNECTIONS);
+            }
+
+            LogFilter.HIDE_UNDERTOW_LOGS = true;
+            this.server = builder.build();
             this.server.start();
             LogFilter.HIDE_UNDERTOW_LOGS = false;
 
@@ -100,6 +205,7 @@ public class HttpdServer {
             );
         } catch (Exception e) {
             this.server = null;
+            this.tileCache = null;
             Logger.severe(Lang.HTTPD_START_ERROR);
             e.printStackTrace();
         }
@@ -120,6 +226,7 @@ public class HttpdServer {
         LogFilter.HIDE_UNDERTOW_LOGS = false;
 
         this.server = null;
+        this.tileCache = null;
         Logger.info(Lang.HTTPD_STOPPED);
     }
 }
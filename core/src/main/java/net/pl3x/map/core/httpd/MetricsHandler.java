@@ -0,0 +1,72 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import java.nio.charset.StandardCharsets;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.renderer.progress.RenderProfiler;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Serves render metrics from the {@link RenderProfiler}, falling through to the next handler otherwise.
+ */
+public class MetricsHandler implements HttpHandler {
+    public static final String PROMETHEUS_PATH = "/metrics";
+    public static final String JSON_PATH = "/metrics.json";
+
+    private final HttpHandler next;
+
+    public MetricsHandler(@NonNull HttpHandler next) {
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest(@NonNull HttpServerExchange exchange) throws Exception {
+        String path = exchange.getRelativePath();
+        boolean prometheus = path.equals(PROMETHEUS_PATH);
+        if (!prometheus && !path.equals(JSON_PATH) || !exchange.getRequestMethod().equals(Methods.GET)) {
+            this.next.handleRequest(exchange);
+            return;
+        }
+
+        if (exchange.isInIoThread()) {
+            // gathering queue depths and cache stats is not for the io threads
+            exchange.dispatch(this);
+            return;
+        }
+
+        RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+        String body = prometheus ? profiler.toPrometheus() : profiler.toJson();
+
+        HeaderMap headers = exchange.getResponseHeaders();
+        headers.put(Headers.CACHE_CONTROL, "no-store");
+        headers.put(Headers.CONTENT_TYPE, prometheus ? "text/plain; version=0.0.4; charset=utf-8" : "application/json");
+        exchange.getResponseSender().send(body, StandardCharsets.UTF_8);
+    }
+}
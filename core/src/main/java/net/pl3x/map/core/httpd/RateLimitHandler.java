@@ -0,0 +1,97 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Limits how many requests per second a single client address may make,
+ * using a token bucket per address.
+ */
+public class RateLimitHandler implements HttpHandler {
+    private final Cache<@NonNull String, @NonNull Bucket> buckets = Caffeine.newBuilder()
+            .expireAfterAccess(1, TimeUnit.MINUTES)
+            .maximumSize(10000)
+            .build();
+
+    private final double tokensPerMilli;
+    private final double burst;
+    private final HttpHandler next;
+
+    public RateLimitHandler(int requestsPerSecond, int burst, @NonNull HttpHandler next) {
+        this.tokensPerMilli = requestsPerSecond / 1000D;
+        this.burst = Math.max(burst, requestsPerSecond);
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest(@NonNull HttpServerExchange exchange) throws Exception {
+        InetSocketAddress source = exchange.getSourceAddress();
+        String address = source == null || source.getAddress() == null ? "unknown" : source.getAddress().getHostAddress();
+
+        long waitMillis = this.buckets.get(address, k -> new Bucket(this.burst)).tryAcquire(this.tokensPerMilli, this.burst);
+        if (waitMillis <= 0) {
+            this.next.handleRequest(exchange);
+            return;
+        }
+
+        exchange.getResponseHeaders().put(Headers.RETRY_AFTER, Long.toString(Math.max(1, (waitMillis + 999) / 1000)));
+        exchange.setStatusCode(StatusCodes.TOO_MANY_REQUESTS);
+        exchange.endExchange();
+    }
+
+    private static class Bucket {
+        private double tokens;
+        private long lastRefill;
+
+        private Bucket(double tokens) {
+            this.tokens = tokens;
+            this.lastRefill = System.currentTimeMillis();
+        }
+
+        /**
+         * Try to take a token from this bucket.
+         *
+         * @return 0 if a token was taken, otherwise milliseconds until one is available
+         */
+        private synchronized long tryAcquire(double tokensPerMilli, double burst) {
+            long now = System.currentTimeMillis();
+            this.tokens = Math.min(burst, this.tokens + (now - this.lastRefill) * tokensPerMilli);
+            this.lastRefill = now;
+            if (this.tokens >= 1D) {
+                this.tokens -= 1D;
+                return 0;
+            }
+            return (long) Math.ceil((1D - this.tokens) / tokensPerMilli);
+        }
+    }
+}
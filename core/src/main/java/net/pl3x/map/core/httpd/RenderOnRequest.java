@@ -0,0 +1,90 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.renderer.task.RegionProcessor;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Queues the regions behind a missing tile for rendering.
+ * <p>
+ * Each tile is only requested once per minute, so tiles that render
+ * empty (eg, regions without any blocks) do not keep re-queuing.
+ */
+public class RenderOnRequest {
+    private final Cache<@NonNull Path, @NonNull CompletableFuture<@NonNull Void>> recentlyRequested = Caffeine.newBuilder()
+            .expireAfterWrite(1, TimeUnit.MINUTES)
+            .maximumSize(10000)
+            .build();
+
+    /**
+     * Request the regions covered by a missing tile to be rendered.
+     * <p>
+     * Concurrent requests for the same tile (or region) share a single render.
+     *
+     * @param path absolute normalized path of the missing tile
+     * @param tile the missing tile
+     * @return future completing when every covered region finished rendering,
+     * or null if there is nothing (more) to render for this tile
+     */
+    public @Nullable CompletableFuture<@NonNull Void> request(@NonNull Path path, @NonNull TilePath tile) {
+        CompletableFuture<Void> pending = this.recentlyRequested.get(path, k -> queue(tile));
+        // already done (or nothing to render), there is nothing to wait for
+        return pending.isDone() ? null : pending;
+    }
+
+    private @NonNull CompletableFuture<@NonNull Void> queue(@NonNull TilePath tile) {
+        World world = tile.world();
+        RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int regionX = tile.minRegionX(); regionX <= tile.maxRegionX(); regionX++) {
+            for (int regionZ = tile.minRegionZ(); regionZ <= tile.maxRegionZ(); regionZ++) {
+                if (!world.visibleRegion(regionX, regionZ)) {
+                    continue;
+                }
+                if (!Files.exists(world.getRegionDirectory().resolve("r." + regionX + "." + regionZ + ".mca"))) {
+                    continue;
+                }
+                futures.add(processor.requestRegion(world, Point.of(regionX, regionZ)));
+            }
+        }
+
+        if (futures.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import io.undertow.util.ETag;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * An immutable, pre-compressed copy of a generated json file.
+ * <p>
+ * Snapshots are built once when the data changes and then handed out
+ * as-is to every client, so the internal web server never has to touch
+ * the disk or re-serialize anything to answer a request.
+ */
+public final class Snapshot {
+    private final byte[] raw;
+    private final byte[] gzip;
+    private final ETag etag;
+    private final ETag gzipETag;
+
+    private Snapshot(byte[] raw, byte[] gzip, @NonNull String hash) {
+        this.raw = raw;
+        this.gzip = gzip;
+        // each encoding is its own representation, so they get their own strong etag
+        this.etag = new ETag(false, hash);
+        this.gzipETag = new ETag(false, hash + "-gz");
+    }
+
+    public static @NonNull Snapshot of(byte[] raw) {
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        String hash = Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(raw.length);
+        return new Snapshot(raw, gzip(raw), hash);
+    }
+
+    public byte[] getRaw() {
+        return this.raw;
+    }
+
+    public byte[] getGzip() {
+        return this.gzip;
+    }
+
+    public @NonNull ETag getETag() {
+        return this.etag;
+    }
+
+    public @NonNull ETag getGzipETag() {
+        return this.gzipETag;
+    }
+
+    public boolean matches(byte[] raw) {
+        return Arrays.equals(this.raw, raw);
+    }
+
+    private static byte[] gzip(byte[] raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+            gzipOut.write(raw);
+        } catch (IOException e) {
+            // cannot happen with an in-memory stream
+            throw new RuntimeException(e);
+        }
+        return out.toByteArray();
+    }
+}
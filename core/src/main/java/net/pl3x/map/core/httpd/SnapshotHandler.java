@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.ETag;
+import io.undertow.util.ETagUtils;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.StatusCodes;
+import java.nio.ByteBuffer;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Serves dynamic json from the {@link SnapshotStore}, falling through to the next handler otherwise.
+ */
+public class SnapshotHandler implements HttpHandler {
+    private final SnapshotStore store;
+    private final HttpHandler next;
+
+    public SnapshotHandler(@NonNull SnapshotStore store, @NonNull HttpHandler next) {
+        this.store = store;
+        this.next = next;
+    }
+
+    @Override
+    public void handleRequest(@NonNull HttpServerExchange exchange) throws Exception {
+        boolean head = exchange.getRequestMethod().equals(Methods.HEAD);
+        if (!head && !exchange.getRequestMethod().equals(Methods.GET)) {
+            this.next.handleRequest(exchange);
+            return;
+        }
+
+        Snapshot snapshot = this.store.get(exchange.getRelativePath());
+        if (snapshot == null) {
+            this.next.handleRequest(exchange);
+            return;
+        }
+
+        boolean gzip = acceptsGzip(exchange);
+        ETag etag = gzip ? snapshot.getGzipETag() : snapshot.getETag();
+        byte[] bytes = gzip ? snapshot.getGzip() : snapshot.getRaw();
+
+        HeaderMap headers = exchange.getResponseHeaders();
+        headers.put(Headers.CACHE_CONTROL, "max-age=0, must-revalidate, no-cache");
+        headers.put(Headers.CONTENT_TYPE, "application/json");
+        headers.put(Headers.ETAG, etag.toString());
+        headers.put(Headers.VARY, Headers.ACCEPT_ENCODING_STRING);
+
+        if (!ETagUtils.handleIfNoneMatch(exchange, etag, false)) {
+            exchange.setStatusCode(StatusCodes.NOT_MODIFIED);
+            exchange.endExchange();
+            return;
+        }
+
+        if (gzip) {
+            headers.put(Headers.CONTENT_ENCODING, "gzip");
+        }
+        headers.put(Headers.CONTENT_LENGTH, bytes.length);
+
+        if (head) {
+            exchange.endExchange();
+            return;
+        }
+
+        exchange.getResponseSender().send(ByteBuffer.wrap(bytes));
+    }
+
+    private boolean acceptsGzip(@NonNull HttpServerExchange exchange) {
+        HeaderValues values = exchange.getRequestHeaders().get(Headers.ACCEPT_ENCODING);
+        if (values == null) {
+            return false;
+        }
+        // an explicit gzip entry wins over a wildcard, either way a weight of 0 means not acceptable
+        double gzip = -1;
+        double wildcard = -1;
+        for (String value : values) {
+            for (String encoding : value.split(",")) {
+                String[] params = encoding.split(";");
+                String coding = params[0].trim();
+                if (coding.equalsIgnoreCase("gzip") || coding.equalsIgnoreCase("x-gzip")) {
+                    gzip = Math.max(gzip, quality(params));
+                } else if (coding.equals("*")) {
+                    wildcard = Math.max(wildcard, quality(params));
+                }
+            }
+        }
+        return gzip >= 0 ? gzip > 0 : wildcard > 0;
+    }
+
+    private static double quality(@NonNull String @NonNull [] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            int equals = param.indexOf('=');
+            if (equals < 0 || !param.substring(0, equals).trim().equalsIgnoreCase("q")) {
+                continue;
+            }
+            try {
+                return Double.parseDouble(param.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+        return 1;
+    }
+}
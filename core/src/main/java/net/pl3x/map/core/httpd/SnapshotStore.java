@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.util.FileUtil;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Holds the latest snapshot of every dynamic json file, keyed by its url path.
+ */
+public class SnapshotStore {
+    private final Map<@NonNull String, @NonNull Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    /**
+     * Update the json stored for the given web directory file.
+     * <p>
+     * Nothing happens if the json is identical to the current snapshot.
+     *
+     * @param file file inside the web directory this json belongs to
+     * @param json json data
+     */
+    public void put(@NonNull Path file, @NonNull String json) {
+        byte[] raw = json.getBytes(StandardCharsets.UTF_8);
+        String key = toKey(file);
+
+        Snapshot existing = this.snapshots.get(key);
+        if (existing != null && existing.matches(raw)) {
+            return;
+        }
+
+        this.snapshots.put(key, Snapshot.of(raw));
+
+        if (isExportingToDisk()) {
+            try {
+                FileUtil.writeAtomic(raw, file);
+            } catch (IOException e) {
+                Logger.warn("Failed to export " + file, e);
+            }
+        }
+    }
+
+    public @Nullable Snapshot get(@NonNull String urlPath) {
+        return this.snapshots.get(urlPath);
+    }
+
+    /**
+     * Remove all snapshots stored under the given web directory path.
+     *
+     * @param dir directory inside the web directory
+     */
+    public void remove(@NonNull Path dir) {
+        String prefix = toKey(dir) + "/";
+        this.snapshots.keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    public void clear() {
+        this.snapshots.clear();
+    }
+
+    /**
+     * Whether the json files should also be written to the web directory.
+     * <p>
+     * The internal web server serves them straight from memory, so this is only
+     * needed when the map is (also) hosted by an external web server.
+     *
+     * @return true if exporting to disk
+     */
+    public static boolean isExportingToDisk() {
+        return Config.WEB_DIR_EXPORT_JSON || Config.WEB_DIR_READONLY || !Config.HTTPD_ENABLED;
+    }
+
+    private static @NonNull String toKey(@NonNull Path file) {
+        Path webDir = FileUtil.getWebDir().toAbsolutePath().normalize();
+        Path relative = webDir.relativize(file.toAbsolutePath().normalize());
+        return "/" + relative.toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.undertow.util.ETag;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * In-memory cache of tile file attributes and bytes for the internal web server.
+ * <p>
+ * Tile writers invalidate entries directly after writing, so the caches never have to
+ * stat the disk to stay fresh. The expiry on attributes only exists as a safety net for
+ * files changed by something other than Pl3xMap.
+ */
+public class TileCache {
+    private static final Attributes MISSING = new Attributes(false, 0, 0, null);
+
+    private final Cache<@NonNull Path, @NonNull Attributes> attributes;
+    private final Cache<@NonNull Path, @NonNull Tile> tiles;
+    private final long maxTileSize;
+
+    public TileCache(long maxBytes, long maxTileSize) {
+        this.maxTileSize = maxTileSize;
+        this.attributes = Caffeine.newBuilder()
+                .expireAfterWrite(1, TimeUnit.MINUTES)
+                .maximumSize(10000)
+                .build();
+        this.tiles = Caffeine.newBuilder()
+                .maximumWeight(Math.max(0, maxBytes))
+                .weigher((Path path, Tile tile) -> tile.buffer().capacity())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Get the hit and eviction stats of the cached tile bytes.
+     *
+     * @return tile cache stats
+     */
+    public @NonNull CacheStats stats() {
+        return this.tiles.stats();
+    }
+
+    /**
+     * Get the cached attributes of a file, reading them from disk if not cached.
+     *
+     * @param path absolute normalized path
+     * @return file attributes
+     */
+    public @NonNull Attributes getAttributes(@NonNull Path path) {
+        return this.attributes.get(path, TileCache::readAttributes);
+    }
+
+    /**
+     * Get the cached attributes of a file without touching the disk.
+     *
+     * @param path absolute normalized path
+     * @return file attributes, or null if not cached
+     */
+    public @Nullable Attributes getCachedAttributes(@NonNull Path path) {
+        return this.attributes.getIfPresent(path);
+    }
+
+    /**
+     * Get the cached bytes of a file without touching the disk.
+     *
+     * @param path  absolute normalized path
+     * @param attrs current attributes of the file
+     * @return read-only buffer of the file, or null if not cached
+     */
+    public @Nullable ByteBuffer getCachedBytes(@NonNull Path path, @NonNull Attributes attrs) {
+        Tile tile = this.tiles.getIfPresent(path);
+        if (tile == null || tile.modified() != attrs.modified()) {
+            return null;
+        }
+        return tile.buffer().duplicate();
+    }
+
+    /**
+     * Get the bytes of a file, reading it into the cache if needed.
+     *
+     * @param path  absolute normalized path
+     * @param attrs current attributes of the file
+     * @return read-only buffer of the file
+     * @throws IOException if the file could not be read
+     */
+    public @NonNull ByteBuffer getBytes(@NonNull Path path, @NonNull Attributes attrs) throws IOException {
+        ByteBuffer cached = getCachedBytes(path, attrs);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] bytes = Files.readAllBytes(path);
+        if (bytes.length > this.maxTileSize) {
+            // direct memory is only freed once the gc gets to it, keep it for what stays cached
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip().asReadOnlyBuffer();
+        this.tiles.put(path, new Tile(buffer, attrs.modified()));
+        return buffer.duplicate();
+    }
+
+    /**
+     * Forget everything known about a file. Call this after writing a tile.
+     *
+     * @param path path to file
+     */
+    public void invalidate(@NonNull Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        this.attributes.invalidate(key);
+        this.tiles.invalidate(key);
+    }
+
+    /**
+     * Forget everything known about all files in a directory.
+     *
+     * @param dir path to directory
+     */
+    public void invalidateAll(@NonNull Path dir) {
+        Path prefix = dir.toAbsolutePath().normalize();
+        this.attributes.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        this.tiles.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+    }
+
+    private static @NonNull Attributes readAttributes(@NonNull Path path) {
+        try {
+            BasicFileAttributes attr = Files.readAttributes(path, BasicFileAttributes.class);
+            if (!attr.isRegularFile()) {
+                return MISSING;
+            }
+            long modified = attr.lastModifiedTime().toMillis();
+            return new Attributes(true, attr.size(), modified, new ETag(false, Long.toString(modified)));
+        } catch (NoSuchFileException e) {
+            return MISSING;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return MISSING;
+        }
+    }
+
+    public record Attributes(boolean exists, long size, long modified, @Nullable ETag etag) {
+    }
+
+    private record Tile(@NonNull ByteBuffer buffer, long modified) {
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.ETagUtils;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.Methods;
+import io.undertow.util.SameThreadExecutor;
+import io.undertow.util.StatusCodes;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.util.FileUtil;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Serves tile images and blockinfo data through the {@link TileCache}.
+ * <p>
+ * Requests that can be answered from memory are handled right on the io thread,
+ * anything that needs the disk is dispatched to a worker thread first.
+ * <p>
+ * Missing tiles are handed to {@link RenderOnRequest}, and the request is parked
+ * for a short while to give the render a chance to finish. Parked requests keep their
+ * slot in the request limit, so only a few may be parked at once.
+ */
+public class TileHandler implements HttpHandler {
+    private static final AttachmentKey<@NonNull Boolean> RENDER_REQUESTED = AttachmentKey.create(Boolean.class);
+    private static final AttachmentKey<@NonNull Boolean> VIEWED = AttachmentKey.create(Boolean.class);
+    private static final int RETRY_AFTER = 5;
+
+    private final TileCache cache;
+    private final RenderOnRequest renderOnRequest;
+    private final long renderWait;
+    private final int maxWaiting;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final HttpHandler next;
+    private final Path webDir;
+    private final Path tilesDir;
+    private final String tileExtension;
+    private final String tileContentType;
+
+    public TileHandler(@NonNull TileCache cache, @Nullable RenderOnRequest renderOnRequest, long renderWait, int maxWaiting, @NonNull HttpHandler next) {
+        this.cache = cache;
+        this.renderOnRequest = renderOnRequest;
+        this.renderWait = renderWait;
+        this.maxWaiting = maxWaiting;
+        this.next = next;
+        this.webDir = FileUtil.getWebDir().toAbsolutePath().normalize();
+        this.tilesDir = this.webDir.resolve("tiles");
+
+        String format = Config.WEB_TILE_FORMAT.toLowerCase(Locale.ROOT);
+        this.tileExtension = "." + format;
+        this.tileContentType = "image/" + (format.equals("jpg") ? "jpeg" : format);
+    }
+
+    @Override
+    public void handleRequest(@NonNull HttpServerExchange exchange) throws Exception {
+        String url = exchange.getRelativePath();
+        boolean head = exchange.getRequestMethod().equals(Methods.HEAD);
+        if (!url.startsWith("/tiles/") || (!head && !exchange.getRequestMethod().equals(Methods.GET))) {
+            this.next.handleRequest(exchange);
+            return;
+        }
+
+        boolean gzip = url.endsWith(".gz");
+        if (!gzip && !url.endsWith(this.tileExtension)) {
+            this.next.handleRequest(exchange);
+            return;
+        }
+
+        Path path = resolve(url);
+        if (path == null) {
+            this.next.handleRequest(exchange);
+            return;
+        }
+
+        TilePath tile = TilePath.parse(this.tilesDir, path);
+        if (tile != null && exchange.getAttachment(VIEWED) == null) {
+            // let the region processor know what people are looking at, once per request
+            exchange.putAttachment(VIEWED, Boolean.TRUE);
+            Pl3xMap.api().getRegionProcessor().markViewed(tile.world(), tile.zoom(), tile.x(), tile.z());
+        }
+
+        TileCache.Attributes attrs = this.cache.getCachedAttributes(path);
+        if (attrs == null) {
+            if (exchange.isInIoThread()) {
+                exchange.dispatch(this);
+                return;
+            }
+            attrs = this.cache.getAttributes(path);
+        }
+
+        HeaderMap headers = exchange.getResponseHeaders();
+        headers.put(Headers.CACHE_CONTROL, "max-age=0, must-revalidate, no-cache");
+
+        if (!attrs.exists()) {
+            if (this.renderOnRequest != null && tile != null && exchange.getAttachment(RENDER_REQUESTED) == null) {
+                if (exchange.isInIoThread()) {
+                    exchange.dispatch(this);
+                    return;
+                }
+                CompletableFuture<Void> render = this.renderOnRequest.request(path, tile);
+                if (render != null) {
+                    exchange.putAttachment(RENDER_REQUESTED, Boolean.TRUE);
+                    if (this.waiting.incrementAndGet() <= this.maxWaiting) {
+                        // park the request until the render finishes or we give up waiting, then try again
+                        exchange.dispatch(SameThreadExecutor.INSTANCE, () -> render
+                                .copy().orTimeout(this.renderWait, TimeUnit.MILLISECONDS)
+                                .whenComplete((result, throwable) -> {
+                                    this.waiting.decrementAndGet();
+                                    exchange.dispatch(this);
+                                }));
+                        return;
+                    }
+                    // too many parked already, answer now and let the browser retry
+                    this.waiting.decrementAndGet();
+                }
+            }
+            // tile not rendered (yet), browsers treat an empty 200 as a blank tile
+            if (exchange.getAttachment(RENDER_REQUESTED) != null) {
+                // still rendering, do not let anything cache the blank tile
+                headers.put(Headers.CACHE_CONTROL, "no-store");
+                headers.put(Headers.RETRY_AFTER, Long.toString(RETRY_AFTER));
+            }
+            exchange.setStatusCode(StatusCodes.OK);
+            exchange.endExchange();
+            return;
+        }
+
+        if (gzip) {
+            headers.put(Headers.CONTENT_TYPE, "application/json");
+            headers.put(Headers.CONTENT_ENCODING, "gzip");
+        } else {
+            headers.put(Headers.CONTENT_TYPE, this.tileContentType);
+        }
+        if (attrs.etag() != null) {
+            headers.put(Headers.ETAG, attrs.etag().toString());
+            if (!ETagUtils.handleIfNoneMatch(exchange, attrs.etag(), false)) {
+                exchange.setStatusCode(StatusCodes.NOT_MODIFIED);
+                exchange.endExchange();
+                return;
+            }
+        }
+
+        if (head) {
+            headers.put(Headers.CONTENT_LENGTH, attrs.size());
+            exchange.endExchange();
+            return;
+        }
+
+        ByteBuffer buffer = this.cache.getCachedBytes(path, attrs);
+        if (buffer == null) {
+            if (exchange.isInIoThread()) {
+                exchange.dispatch(this);
+                return;
+            }
+            buffer = this.cache.getBytes(path, attrs);
+        }
+
+        headers.put(Headers.CONTENT_LENGTH, buffer.remaining());
+        exchange.getResponseSender().send(buffer);
+    }
+
+    private @Nullable Path resolve(@NonNull String url) {
+        Path path = this.webDir.resolve(url.substring(1)).normalize();
+        // do not allow escaping the web directory
+        return path.startsWith(this.webDir) ? path : null;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.httpd;
+
+import java.nio.file.Path;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A tile (or blockinfo) file of an enabled world, as found in the tiles directory.
+ *
+ * @param world world the tile belongs to
+ * @param zoom  zoom level, 0 is one region per tile
+ * @param x     tile x
+ * @param z     tile z
+ */
+public record TilePath(@NonNull World world, int zoom, int x, int z) {
+    /**
+     * Parse a tile path in the form {@code <world>/<zoom>/<renderer>/<x>_<z>.<ext>}.
+     *
+     * @param tilesDir absolute normalized tiles directory
+     * @param tile     absolute normalized tile path
+     * @return parsed tile, or null if the path does not point at a tile of an enabled world
+     */
+    public static @Nullable TilePath parse(@NonNull Path tilesDir, @NonNull Path tile) {
+        if (!tile.startsWith(tilesDir)) {
+            return null;
+        }
+
+        Path relative = tilesDir.relativize(tile);
+        if (relative.getNameCount() != 4) {
+            return null;
+        }
+
+        World world = getWorld(relative.getName(0).toString());
+        if (world == null || !world.isEnabled()) {
+            return null;
+        }
+
+        try {
+            int zoom = Integer.parseInt(relative.getName(1).toString());
+            if (zoom < 0 || zoom > world.getConfig().ZOOM_MAX_OUT) {
+                return null;
+            }
+            String name = relative.getName(3).toString();
+            int dot = name.indexOf('.');
+            String[] split = (dot < 0 ? name : name.substring(0, dot)).split("_");
+            if (split.length != 2) {
+                return null;
+            }
+            return new TilePath(world, zoom, Integer.parseInt(split[0]), Integer.parseInt(split[1]));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    // a tile at zoom level z covers (1 << z) * (1 << z) regions
+
+    public int minRegionX() {
+        return this.x << this.zoom;
+    }
+
+    public int minRegionZ() {
+        return this.z << this.zoom;
+    }
+
+    public int maxRegionX() {
+        return ((this.x + 1) << this.zoom) - 1;
+    }
+
+    public int maxRegionZ() {
+        return ((this.z + 1) << this.zoom) - 1;
+    }
+
+    private static @Nullable World getWorld(@NonNull String directory) {
+        for (World world : Pl3xMap.api().getWorldRegistry()) {
+            if (world.getTilesDirectory().getFileName().toString().equals(directory)) {
+                return world;
+            }
+        }
+        return null;
+    }
+}
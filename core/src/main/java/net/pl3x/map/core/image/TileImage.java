@@ -27,31 +27,30 @@ import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import net.pl3x.map.core.Keyed;
+import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.image.io.IO;
 import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.renderer.progress.RenderProfiler;
+import net.pl3x.map.core.renderer.progress.RenderStageEvent;
+import net.pl3x.map.core.util.BufferPool;
 import net.pl3x.map.core.util.Colors;
+import net.pl3x.map.core.util.FileLocks;
 import net.pl3x.map.core.util.FileUtil;
 import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class TileImage extends Keyed {
-    private static final Map<@NonNull Path, @NonNull ReadWriteLock> FILE_LOCKS = new ConcurrentHashMap<>();
-
     public static final String DIR_PATH = "%d/%s/";
     public static final String FILE_PATH = "%d_%d.%s";
 
     private final World world;
     private final Point region;
 
-    private final int[] pixels = new int[512 << 9];
+    private int[] pixels = BufferPool.takePixels();
 
     private final IO.Type io;
 
@@ -78,6 +77,16 @@ public class TileImage extends Keyed {
         this.written = true;
     }
 
+    /**
+     * Give the pixel buffer back to the pool. This image must not be used afterwards.
+     */
+    public void release() {
+        if (this.pixels != null) {
+            BufferPool.releasePixels(this.pixels);
+            this.pixels = null;
+        }
+    }
+
     public void saveToDisk() {
         if (!this.written) {
             return; // nothing written, nothing to save
@@ -93,24 +102,27 @@ public class TileImage extends Keyed {
                     this.region.z() >> zoom,
                     this.io.getKey()));
 
-            ReadWriteLock lock = FILE_LOCKS.computeIfAbsent(filePath, k -> new ReentrantReadWriteLock(true));
-            lock.writeLock().lock();
-
-            // wrap all this to ensure we close the file lock even on fail
+            // a render worker process may be writing the same zoomed out tile
             try {
-                // read existing image from disk
-                BufferedImage buffer = getBuffer(filePath);
+                FileLocks.Lock lock = FileLocks.lock(filePath);
+                try {
+                    // read existing image from disk
+                    BufferedImage buffer = getBuffer(filePath);
+
+                    // write new pixels
+                    writePixels(buffer, 512 >> zoom, zoom);
 
-                // write new pixels
-                writePixels(buffer, 512 >> zoom, zoom);
+                    // finally, save buffer to disk
+                    this.io.write(filePath, buffer);
 
-                // finally, save buffer to disk
-                this.io.write(filePath, buffer);
+                    // let the web server know this tile changed
+                    Pl3xMap.api().getHttpdServer().invalidateTile(filePath);
+                } finally {
+                    lock.close();
+                }
             } catch (Throwable t) {
                 t.printStackTrace();
             }
-
-            lock.writeLock().unlock();
         }
     }
 
@@ -119,7 +131,10 @@ public class TileImage extends Keyed {
 
         // try to read existing image
         if (Files.exists(path) && Files.size(path) > 0) {
+            RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+            RenderStageEvent read = profiler.start(RenderProfiler.Stage.TILE_READ);
             buffer = this.io.read(path);
+            profiler.stop(read);
         }
 
         // if not, create a new image
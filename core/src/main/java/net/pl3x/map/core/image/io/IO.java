@@ -24,6 +24,7 @@
 package net.pl3x.map.core.image.io;
 
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -35,10 +36,15 @@ import javax.imageio.ImageWriteParam;
 import javax.imageio.ImageWriter;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
 import net.pl3x.map.core.Keyed;
+import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.registry.Registry;
+import net.pl3x.map.core.renderer.progress.RenderProfiler;
+import net.pl3x.map.core.renderer.progress.RenderStageEvent;
+import net.pl3x.map.core.util.FileUtil;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -109,8 +115,13 @@ public abstract class IO {
         }
 
         public void write(@NonNull Path path, @NonNull BufferedImage buffer) {
+            RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+
+            // encode in memory first, so encoding and writing can be timed apart
+            RenderStageEvent encode = profiler.start(RenderProfiler.Stage.ENCODE);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
             ImageWriter writer = null;
-            try (ImageOutputStream out = ImageIO.createImageOutputStream(path.toFile())) {
+            try (ImageOutputStream out = new MemoryCacheImageOutputStream(bytes)) {
                 writer = ImageIO.getImageWritersBySuffix(getKey()).next();
                 ImageWriteParam param = writer.getDefaultWriteParam();
                 if (param.canWriteCompressed()) {
@@ -126,11 +137,25 @@ public abstract class IO {
             } catch (IOException e) {
                 Logger.warn("Could not write tile image: " + path);
                 e.printStackTrace();
+                return;
             } finally {
                 if (writer != null) {
                     writer.dispose();
                 }
             }
+            profiler.stop(encode);
+
+            RenderStageEvent write = profiler.start(RenderProfiler.Stage.WRITE);
+            try {
+                // never leave a half written tile behind for the web server or another process
+                FileUtil.writeAtomic(bytes.toByteArray(), path);
+            } catch (IOException e) {
+                Logger.warn("Could not write tile image: " + path);
+                e.printStackTrace();
+                return;
+            }
+            profiler.stop(write);
+            profiler.addTileWritten(bytes.size());
         }
     }
 }
@@ -0,0 +1,92 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.log;
+
+import java.util.UUID;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.audience.MessageType;
+import net.kyori.adventure.identity.Identity;
+import net.kyori.adventure.key.Key;
+import net.kyori.adventure.platform.AudienceProvider;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.flattener.ComponentFlattener;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Sends everything to standard out, for running outside of a server.
+ */
+public class ConsoleAudienceProvider implements AudienceProvider {
+    private final Audience console = new Audience() {
+        @Override
+        @SuppressWarnings("deprecation")
+        public void sendMessage(@NonNull Identity source, @NonNull Component message, @NonNull MessageType type) {
+            System.out.println(PlainTextComponentSerializer.plainText().serialize(message));
+        }
+    };
+
+    @Override
+    public @NonNull Audience all() {
+        return this.console;
+    }
+
+    @Override
+    public @NonNull Audience console() {
+        return this.console;
+    }
+
+    @Override
+    public @NonNull Audience players() {
+        return Audience.empty();
+    }
+
+    @Override
+    public @NonNull Audience player(@NonNull UUID playerId) {
+        return Audience.empty();
+    }
+
+    @Override
+    public @NonNull Audience permission(@NonNull String permission) {
+        return Audience.empty();
+    }
+
+    @Override
+    public @NonNull Audience world(@NonNull Key world) {
+        return Audience.empty();
+    }
+
+    @Override
+    public @NonNull Audience server(@NonNull String serverName) {
+        return Audience.empty();
+    }
+
+    @Override
+    public @NonNull ComponentFlattener flattener() {
+        return ComponentFlattener.basic();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -40,14 +40,32 @@ public class WorldRegistry extends Registry<@NonNull World> {
         return world;
     }
 
+    /**
+     * Get the world wrapping a platform level.
+     *
+     * @param level platform level
+     * @return world, or null if the level is not registered
+     */
+    public @Nullable World getByLevel(@NonNull Object level) {
+        for (World world : this.entries.values()) {
+            if (world.getLevel() == level) {
+                return world;
+            }
+        }
+        return null;
+    }
+
     @Override
     public @Nullable World unregister(@NonNull String id) {
         World world = this.entries.remove(id);
         if (world != null) {
             Pl3xMap.api().getEventRegistry().callEvent(new WorldUnloadedEvent(world));
             world.getMarkerTask().cancel();
-            world.getRegionFileWatcher().stop();
+            Pl3xMap.api().getRegionFileWatcher().unregister(world);
+            Pl3xMap.api().getLiveChunks().invalidate(world);
             world.cleanup();
+            Pl3xMap.api().getHttpdServer().getSnapshotStore().remove(world.getTilesDirectory());
+            Pl3xMap.api().getHttpdServer().invalidateTiles(world.getTilesDirectory());
         }
         return world;
     }
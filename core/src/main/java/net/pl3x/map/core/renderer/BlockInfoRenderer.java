@@ -27,14 +27,12 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.image.TileImage;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.renderer.task.RegionScanTask;
-import net.pl3x.map.core.util.ByteUtil;
+import net.pl3x.map.core.util.BufferPool;
+import net.pl3x.map.core.util.FileLocks;
 import net.pl3x.map.core.util.FileUtil;
 import net.pl3x.map.core.util.Mathf;
 import net.pl3x.map.core.world.Biome;
@@ -44,8 +42,6 @@ import net.pl3x.map.core.world.Region;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 public class BlockInfoRenderer extends Renderer {
-    private static final Map<@NonNull Path, @NonNull ReadWriteLock> FILE_LOCKS = new ConcurrentHashMap<>();
-
     private ByteBuffer byteBuffer;
 
     public BlockInfoRenderer(@NonNull RegionScanTask task, @NonNull Builder builder) {
@@ -54,7 +50,7 @@ public class BlockInfoRenderer extends Renderer {
 
     @Override
     public void allocateData(@NonNull Point region) {
-        this.byteBuffer = ByteBuffer.allocate(512 * 512 * 4 + 12);
+        this.byteBuffer = BufferPool.takeBlockInfo();
         Path path = getWorld().getTilesDirectory()
                 .resolve(String.format(TileImage.DIR_PATH, 0, getKey()))
                 .resolve(String.format(TileImage.FILE_PATH, region.x(), region.z(), "pl3xmap.gz"));
@@ -63,7 +59,7 @@ public class BlockInfoRenderer extends Renderer {
                 FileUtil.readGzip(path, this.byteBuffer);
             }
         } catch (IOException ignore) {
-            // silently fail - we're clearing and rebuilding the entire byteBuffer anyway in scanData()
+            // silently fail - a full scan rebuilds the entire byteBuffer anyway, a partial one keeps the rest
         }
     }
 
@@ -85,8 +81,13 @@ public class BlockInfoRenderer extends Renderer {
                     (int) Math.floor((double) region.z() / step),
                     "pl3xmap.gz"));
 
-            ReadWriteLock lock = FILE_LOCKS.computeIfAbsent(filePath, k -> new ReentrantReadWriteLock(true));
-            lock.writeLock().lock();
+            // a render worker process may be writing the same zoomed out file
+            FileLocks.Lock lock;
+            try {
+                lock = FileLocks.lock(filePath);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
 
             Throwable error = null;
 
@@ -98,9 +99,9 @@ public class BlockInfoRenderer extends Renderer {
                     error = e;
                 }
             } else {
+                ByteBuffer buffer = BufferPool.takeBlockInfo();
                 try {
                     // read existing data from disk
-                    ByteBuffer buffer = ByteBuffer.allocate(this.byteBuffer.capacity());
                     if (Files.exists(filePath) && Files.size(filePath) > 0) {
                         try {
                             FileUtil.readGzip(filePath, buffer);
@@ -110,9 +111,7 @@ public class BlockInfoRenderer extends Renderer {
                     }
 
                     // copy header
-                    for (int i = 0; i < 12; i++) {
-                        buffer.put(i, this.byteBuffer.get(i));
-                    }
+                    buffer.put(0, this.byteBuffer, 0, 12);
 
                     // write new data
                     int baseX = (region.x() * size) & 511;
@@ -120,9 +119,8 @@ public class BlockInfoRenderer extends Renderer {
                     for (int x = 0; x < 512; x += step) {
                         for (int z = 0; z < 512; z += step) {
                             int index = z * 512 + x;
-                            int packed = ByteUtil.getInt(this.byteBuffer, 12 + index * 4);
                             int newIndex = (baseZ + (z / step)) * 512 + (baseX + (x / step));
-                            buffer.put(12 + newIndex * 4, ByteUtil.toBytes(packed));
+                            buffer.putInt(12 + newIndex * 4, this.byteBuffer.getInt(12 + index * 4));
                         }
                     }
 
@@ -130,11 +128,22 @@ public class BlockInfoRenderer extends Renderer {
                     FileUtil.saveGzip(buffer.array(), filePath);
                 } catch (IOException e) {
                     error = e;
+                } finally {
+                    BufferPool.releaseBlockInfo(buffer);
                 }
             }
 
+            // let the web server know this tile changed
+            Pl3xMap.api().getHttpdServer().invalidateTile(filePath);
+
             // ensure the file lock closes before throwing any errors
-            lock.writeLock().unlock();
+            try {
+                lock.close();
+            } catch (IOException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
 
             if (error != null) {
                 throw new RuntimeException(error);
@@ -143,14 +152,21 @@ public class BlockInfoRenderer extends Renderer {
     }
 
     @Override
-    public void scanData(@NonNull Region region) {
-        this.byteBuffer.clear();
+    public void releaseData() {
+        if (this.byteBuffer != null) {
+            BufferPool.releaseBlockInfo(this.byteBuffer);
+            this.byteBuffer = null;
+        }
+    }
 
-        this.byteBuffer.put(0, ByteUtil.toBytes(0x706C3378)); // pl3x
-        this.byteBuffer.put(4, ByteUtil.toBytes(0x6D617001)); // map1
-        this.byteBuffer.put(8, ByteUtil.toBytes(getWorld().getMinBuildHeight()));
+    @Override
+    public void prepareScan(@NonNull Region region) {
+        this.byteBuffer.clear();
 
-        super.scanData(region);
+        // pooled buffers are little endian, same as ByteUtil
+        this.byteBuffer.putInt(0, 0x706C3378); // pl3x
+        this.byteBuffer.putInt(4, 0x6D617001); // map1
+        this.byteBuffer.putInt(8, getWorld().getMinBuildHeight());
     }
 
     @Override
@@ -168,6 +184,6 @@ public class BlockInfoRenderer extends Renderer {
         //                     111111111111 - 12 bits - yPos  (4095)
         int packed = ((block.getIndex() & 1023) << 22) | ((biome.index() & 1023) << 12) | (y & 4095);
         int index = (blockZ & 511) * 512 + (blockX & 511);
-        this.byteBuffer.put(12 + index * 4, ByteUtil.toBytes(packed));
+        this.byteBuffer.putInt(12 + index * 4, packed);
     }
 }
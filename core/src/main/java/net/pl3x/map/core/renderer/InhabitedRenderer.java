@@ -38,10 +38,10 @@ public final class InhabitedRenderer extends Renderer {
         super(task, builder);
     }
 
-    public void scanData(@NonNull Region region) {
+    @Override
+    public void prepareScan(@NonNull Region region) {
         // get the basic renderer so we can copy its tiles
         this.basic = getRegionScanTask().getRenderer(RendererRegistry.BASIC);
-        super.scanData(region);
     }
 
     @Override
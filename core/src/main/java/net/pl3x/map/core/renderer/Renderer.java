@@ -46,6 +46,7 @@ public abstract class Renderer extends Keyed {
     private final String name;
     private final World world;
     private final Heightmap heightmap;
+    private final boolean splittable;
 
     private TileImage tileImage;
 
@@ -57,6 +58,9 @@ public abstract class Renderer extends Keyed {
 
         String key = getWorld().getConfig().RENDER_HEIGHTMAP_TYPE.toLowerCase(Locale.ROOT);
         this.heightmap = Pl3xMap.api().getHeightmapRegistry().get(key);
+
+        // renderers that still override the whole region scan can not be split up
+        this.splittable = !overridesScanData(getClass());
     }
 
     public @NonNull RegionScanTask getRegionScanTask() {
@@ -87,24 +91,69 @@ public abstract class Renderer extends Keyed {
         this.tileImage.saveToDisk();
     }
 
+    /**
+     * Release the buffers allocated in {@link #allocateData(Point)}.
+     * Called on the render thread once the region is done, saved or not.
+     */
+    public void releaseData() {
+        if (this.tileImage != null) {
+            this.tileImage.release();
+        }
+    }
+
+    /**
+     * Whether {@link #scanChunks(Region, int, int, int, int)} may be called
+     * concurrently for different parts of a region.
+     *
+     * @return true if this renderer can be split up
+     */
+    public boolean isSplittable() {
+        return this.splittable;
+    }
+
+    /**
+     * Called once per region before any chunks are scanned.
+     *
+     * @param region region about to be scanned
+     */
+    public void prepareScan(@NonNull Region region) {
+    }
+
     public void scanData(@NonNull Region region) {
+        prepareScan(region);
         int cX = region.getX() << 5;
         int cZ = region.getZ() << 5;
+        scanChunks(region, cX, cZ, cX + 32, cZ + 32);
+    }
 
-        // iterate each chunk in this region
-        for (int chunkX = cX; chunkX < cX + 32; chunkX++) {
+    /**
+     * Scan an area of chunks in a region.
+     * <p>
+     * This may run on several threads at once for separate areas of the same region,
+     * so only touch the pixels of the blocks in the given area.
+     *
+     * @param region    region being scanned
+     * @param minChunkX min chunk x (inclusive)
+     * @param minChunkZ min chunk z (inclusive)
+     * @param maxChunkX max chunk x (exclusive)
+     * @param maxChunkZ max chunk z (exclusive)
+     */
+    public void scanChunks(@NonNull Region region, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        // iterate each chunk in this area
+        for (int chunkX = minChunkX; chunkX < maxChunkX; chunkX++) {
             int bX = chunkX << 4;
-            for (int chunkZ = cZ; chunkZ < cZ + 32; chunkZ++) {
+            for (int chunkZ = minChunkZ; chunkZ < maxChunkZ; chunkZ++) {
                 // skip any blocks that do not need to be rendered due to visibility limits
                 if (!getWorld().visibleChunk(chunkX, chunkZ)) {
                     continue;
                 }
+                // pause (or bail out) between chunks, never in the middle of one
+                getRegionScanTask().checkpoint();
                 int bZ = chunkZ << 4;
                 Chunk chunk = region.getChunk(chunkX, chunkZ);
                 // iterate each block in this chunk
                 for (int blockX = bX; blockX < bX + 16; blockX++) {
                     for (int blockZ = bZ; blockZ < bZ + 16; blockZ++) {
-                        Pl3xMap.api().getRegionProcessor().checkPaused();
                         // skip any blocks that do not need to be rendered due to visibility limits
                         if (!getWorld().visibleBlock(blockX, blockZ)) {
                             continue;
@@ -121,6 +170,14 @@ public abstract class Renderer extends Keyed {
         }
     }
 
+    private static boolean overridesScanData(@NonNull Class<?> clazz) {
+        try {
+            return clazz.getMethod("scanData", Region.class).getDeclaringClass() != Renderer.class;
+        } catch (NoSuchMethodException e) {
+            return true;
+        }
+    }
+
     public abstract void scanBlock(@NonNull Region region, @NonNull Chunk chunk, Chunk.@NonNull BlockData data, int blockX, int blockZ);
 
     public int basicPixelColor(@NonNull Region region, Chunk.@NonNull BlockData data, int blockX, int blockZ) {
@@ -0,0 +1,359 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.progress;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.httpd.TileCache;
+import net.pl3x.map.core.renderer.task.RegionProcessor;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Times the stages of rendering regions, to see where render time goes.
+ * <p>
+ * While disabled, {@link #start(Stage)} returns null and {@link #stop(RenderStageEvent)} ignores it,
+ * so instrumented code only pays for a config check. Timings are kept per stage in histograms,
+ * and the scan stage per renderer.
+ */
+public class RenderProfiler {
+    private static final double[] QUANTILES = {0.5D, 0.9D, 0.99D};
+
+    private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    private final Map<@NonNull Stage, @NonNull Histogram> stages = new EnumMap<>(Stage.class);
+    private final Map<@NonNull String, @NonNull Histogram> scans = new ConcurrentHashMap<>();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder tilesWritten = new LongAdder();
+
+    private volatile long since = System.currentTimeMillis();
+
+    public RenderProfiler() {
+        for (Stage stage : Stage.values()) {
+            this.stages.put(stage, new Histogram());
+        }
+    }
+
+    public boolean isEnabled() {
+        return Config.PROFILER_ENABLED;
+    }
+
+    /**
+     * Start timing a stage.
+     *
+     * @param stage stage about to run
+     * @return running stage to hand to {@link #stop(RenderStageEvent)}, or null if profiling is disabled
+     */
+    public @Nullable RenderStageEvent start(@NonNull Stage stage) {
+        return start(stage, null);
+    }
+
+    /**
+     * Start timing a stage of one renderer.
+     *
+     * @param stage    stage about to run
+     * @param renderer key of the renderer running the stage
+     * @return running stage to hand to {@link #stop(RenderStageEvent)}, or null if profiling is disabled
+     */
+    public @Nullable RenderStageEvent start(@NonNull Stage stage, @Nullable String renderer) {
+        if (!Config.PROFILER_ENABLED) {
+            return null;
+        }
+        return new RenderStageEvent(stage, renderer);
+    }
+
+    /**
+     * Stop timing a stage and record how long it took.
+     *
+     * @param event running stage from {@link #start(Stage)}, may be null
+     */
+    public void stop(@Nullable RenderStageEvent event) {
+        if (event == null) {
+            return;
+        }
+        long nanos = event.stop();
+        String renderer = event.getRenderer();
+        if (renderer == null) {
+            this.stages.get(event.getType()).record(nanos);
+        } else {
+            this.scans.computeIfAbsent(renderer, k -> new Histogram()).record(nanos);
+        }
+    }
+
+    public void addBytesRead(long bytes) {
+        if (Config.PROFILER_ENABLED) {
+            this.bytesRead.add(bytes);
+        }
+    }
+
+    public void addTileWritten(long bytes) {
+        if (Config.PROFILER_ENABLED) {
+            this.bytesWritten.add(bytes);
+            this.tilesWritten.increment();
+        }
+    }
+
+    public long getBytesRead() {
+        return this.bytesRead.sum();
+    }
+
+    public long getBytesWritten() {
+        return this.bytesWritten.sum();
+    }
+
+    public long getTilesWritten() {
+        return this.tilesWritten.sum();
+    }
+
+    public long getSince() {
+        return this.since;
+    }
+
+    /**
+     * Get the histograms of all stages that recorded something, the scan stage once per renderer.
+     *
+     * @return histograms by stage name, like "parse" or "scan:basic"
+     */
+    public @NonNull Map<@NonNull String, @NonNull Histogram> getHistograms() {
+        Map<String, Histogram> histograms = new LinkedHashMap<>();
+        this.stages.forEach((stage, histogram) -> {
+            if (stage == Stage.SCAN) {
+                new TreeMap<>(this.scans).forEach((renderer, scan) -> histograms.put(stage.getKey() + ":" + renderer, scan));
+            } else if (histogram.getCount() > 0) {
+                histograms.put(stage.getKey(), histogram);
+            }
+        });
+        return histograms;
+    }
+
+    /**
+     * Forget everything recorded so far.
+     */
+    public void reset() {
+        this.stages.values().forEach(Histogram::reset);
+        this.scans.clear();
+        this.bytesRead.reset();
+        this.bytesWritten.reset();
+        this.tilesWritten.reset();
+        this.since = System.currentTimeMillis();
+    }
+
+    /**
+     * Write stage timings, queue depths and cache stats as json.
+     *
+     * @return json
+     */
+    public @NonNull String toJson() {
+        Map<String, Object> stages = new LinkedHashMap<>();
+        getHistograms().forEach((name, histogram) -> {
+            Map<String, Object> stage = new LinkedHashMap<>();
+            stage.put("count", histogram.getCount());
+            stage.put("total_ms", histogram.getSum() / 1e6D);
+            for (double quantile : QUANTILES) {
+                stage.put("p" + (int) (quantile * 100) + "_ms", histogram.getValueAtPercentile(quantile * 100D) / 1e6D);
+            }
+            stage.put("max_ms", histogram.getMax() / 1e6D);
+            stages.put(name, stage);
+        });
+
+        Map<String, Object> io = new LinkedHashMap<>();
+        io.put("region_bytes_read", getBytesRead());
+        io.put("tile_bytes_written", getBytesWritten());
+        io.put("tiles_written", getTilesWritten());
+
+        Map<String, Object> caches = new LinkedHashMap<>();
+        getCacheStats().forEach((name, stats) -> caches.put(name, Map.of(
+                "hit_rate", stats.hitRate(),
+                "requests", stats.requestCount(),
+                "evictions", stats.evictionCount()
+        )));
+
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("enabled", isEnabled());
+        json.put("since", this.since);
+        json.put("stages", stages);
+        json.put("io", io);
+        json.put("queues", getQueues());
+        json.put("caches", caches);
+        return this.gson.toJson(json);
+    }
+
+    /**
+     * Write stage timings, queue depths and cache stats in the Prometheus text format.
+     *
+     * @return Prometheus metrics
+     */
+    public @NonNull String toPrometheus() {
+        StringBuilder sb = new StringBuilder();
+
+        Map<String, Histogram> histograms = getHistograms();
+        header(sb, "pl3xmap_stage_duration_seconds", "summary", "Time spent in each render stage");
+        histograms.forEach((name, histogram) -> {
+            String labels = stageLabels(name);
+            for (double quantile : QUANTILES) {
+                sample(sb, "pl3xmap_stage_duration_seconds", labels + ",quantile=\"" + quantile + "\"", histogram.getValueAtPercentile(quantile * 100D) / 1e9D);
+            }
+            sample(sb, "pl3xmap_stage_duration_seconds_sum", labels, histogram.getSum() / 1e9D);
+            sample(sb, "pl3xmap_stage_duration_seconds_count", labels, histogram.getCount());
+        });
+        header(sb, "pl3xmap_stage_duration_seconds_max", "gauge", "Longest time spent in each render stage");
+        histograms.forEach((name, histogram) -> sample(sb, "pl3xmap_stage_duration_seconds_max", stageLabels(name), histogram.getMax() / 1e9D));
+
+        header(sb, "pl3xmap_region_read_bytes_total", "counter", "Bytes of region files read");
+        sample(sb, "pl3xmap_region_read_bytes_total", null, getBytesRead());
+        header(sb, "pl3xmap_tile_written_bytes_total", "counter", "Bytes of tile images written");
+        sample(sb, "pl3xmap_tile_written_bytes_total", null, getBytesWritten());
+        header(sb, "pl3xmap_tiles_written_total", "counter", "Tile images written");
+        sample(sb, "pl3xmap_tiles_written_total", null, getTilesWritten());
+
+        header(sb, "pl3xmap_queue_depth", "gauge", "Regions or tasks waiting in each queue");
+        getQueues().forEach((queue, depth) -> sample(sb, "pl3xmap_queue_depth", "queue=\"" + queue + "\"", depth));
+
+        Map<String, CacheStats> caches = getCacheStats();
+        header(sb, "pl3xmap_cache_hit_ratio", "gauge", "Share of cache lookups that were hits");
+        caches.forEach((cache, stats) -> sample(sb, "pl3xmap_cache_hit_ratio", "cache=\"" + cache + "\"", stats.hitRate()));
+        header(sb, "pl3xmap_cache_requests_total", "counter", "Cache lookups");
+        caches.forEach((cache, stats) -> sample(sb, "pl3xmap_cache_requests_total", "cache=\"" + cache + "\"", stats.requestCount()));
+        header(sb, "pl3xmap_cache_evictions_total", "counter", "Cache entries evicted");
+        caches.forEach((cache, stats) -> sample(sb, "pl3xmap_cache_evictions_total", "cache=\"" + cache + "\"", stats.evictionCount()));
+        return sb.toString();
+    }
+
+    /**
+     * Get how many regions or tasks wait in each queue right now.
+     *
+     * @return queue depths by queue name
+     */
+    public @NonNull Map<@NonNull String, @NonNull Long> getQueues() {
+        RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
+        Map<String, Long> queues = new LinkedHashMap<>();
+        queues.put("regions_queued", (long) processor.getQueuedRegionCount());
+        queues.put("regions_in_flight", (long) processor.getInFlightCount());
+        queues.put("render_tasks", getQueuedTasks(Pl3xMap.api().getRenderExecutor()));
+        queues.put("io_tasks", getQueuedTasks(Pl3xMap.api().getIOExecutor()));
+        return queues;
+    }
+
+    private @NonNull Map<@NonNull String, @NonNull CacheStats> getCacheStats() {
+        Map<String, CacheStats> caches = new LinkedHashMap<>();
+        caches.put("region", Pl3xMap.api().getRegionCache().stats());
+        TileCache tileCache = Pl3xMap.api().getHttpdServer().getTileCache();
+        if (tileCache != null) {
+            caches.put("tile", tileCache.stats());
+        }
+        return caches;
+    }
+
+    private static long getQueuedTasks(@Nullable ExecutorService executor) {
+        if (executor instanceof ForkJoinPool pool) {
+            return pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount();
+        } else if (executor instanceof ThreadPoolExecutor pool) {
+            return pool.getQueue().size();
+        }
+        return 0;
+    }
+
+    private static @NonNull String stageLabels(@NonNull String name) {
+        int renderer = name.indexOf(':');
+        if (renderer < 0) {
+            return "stage=\"" + name + "\"";
+        }
+        return "stage=\"" + name.substring(0, renderer) + "\",renderer=\"" + escape(name.substring(renderer + 1)) + "\"";
+    }
+
+    private static void header(@NonNull StringBuilder sb, @NonNull String name, @NonNull String type, @NonNull String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(@NonNull StringBuilder sb, @NonNull String name, @Nullable String labels, double value) {
+        sb.append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value == Math.rint(value) && !Double.isInfinite(value) ? Long.toString((long) value) : Double.toString(value)).append('\n');
+    }
+
+    private static @NonNull String escape(@NonNull String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Stages of rendering a region, in the order they run.
+     */
+    public enum Stage {
+        /**
+         * Reading a region file into memory, once per region.
+         */
+        READ,
+        /**
+         * Decompressing a chunk, once per chunk.
+         */
+        DECOMPRESS,
+        /**
+         * Parsing the nbt of a chunk, once per chunk.
+         */
+        PARSE,
+        /**
+         * Turning the nbt of a chunk into block data, once per chunk.
+         */
+        POPULATE,
+        /**
+         * A renderer scanning a region, or a part of one when the region is split up.
+         */
+        SCAN,
+        /**
+         * Reading an existing tile image to draw on, once per tile.
+         */
+        TILE_READ,
+        /**
+         * Encoding a tile image, once per tile.
+         */
+        ENCODE,
+        /**
+         * Writing an encoded tile image to disk, once per tile.
+         */
+        WRITE;
+
+        private final String key = name().toLowerCase(Locale.ROOT);
+
+        public @NonNull String getKey() {
+            return this.key;
+        }
+    }
+}
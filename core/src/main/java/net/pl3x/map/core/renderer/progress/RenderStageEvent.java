@@ -0,0 +1,85 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.progress;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * One timed stage of rendering a region, see {@link RenderProfiler}.
+ * <p>
+ * Also a flight recorder event, so stages show up in JFR recordings next to gc pauses and
+ * lock contention. It is only committed while a recording has it enabled.
+ */
+@Name("net.pl3x.map.RenderStage")
+@Label("Render Stage")
+@Category("Pl3xMap")
+@Description("A stage of rendering a region")
+@StackTrace(false)
+public class RenderStageEvent extends jdk.jfr.Event {
+    @Label("Stage")
+    private final String stage;
+
+    @Label("Renderer")
+    private final String renderer;
+
+    // transient fields are not recorded
+    private final transient RenderProfiler.Stage type;
+    private final transient long started;
+
+    RenderStageEvent(RenderProfiler.@NonNull Stage type, @Nullable String renderer) {
+        this.type = type;
+        this.stage = type.getKey();
+        this.renderer = renderer;
+        this.started = System.nanoTime();
+        begin();
+    }
+
+    public RenderProfiler.@NonNull Stage getType() {
+        return this.type;
+    }
+
+    public @Nullable String getRenderer() {
+        return this.renderer;
+    }
+
+    /**
+     * End this stage, committing it to running recordings.
+     *
+     * @return duration in nanoseconds
+     */
+    long stop() {
+        long nanos = System.nanoTime() - this.started;
+        end();
+        if (shouldCommit()) {
+            commit();
+        }
+        return nanos;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.LongLongMap;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.ChunkSnapshot;
+import net.pl3x.map.core.world.Region;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Renders changes around players before the server saves them.
+ * <p>
+ * Platforms call {@link #tick()} every server tick. Every few seconds worlds are asked for
+ * loaded chunks with unsaved changes near players, which are then captured a few per tick
+ * (see {@link World#captureChunk(int, int)}). Snapshots are built and compared on a render
+ * thread, and only chunks that changed since their last snapshot are queued.
+ * <p>
+ * Snapshots are kept until the region file catches up, so renders of their region
+ * use them instead of the outdated chunks in the file (see {@link #overlay(Region)}).
+ */
+public class LiveChunks {
+    // snapshots of chunks that were not captured again for this long are surely saved by now
+    private static final long MAX_AGE = TimeUnit.MINUTES.toMillis(10);
+
+    // server thread only
+    private final Deque<@NonNull Request> requests = new ArrayDeque<>();
+    private final Set<@NonNull Request> requested = new HashSet<>();
+    private int ticks;
+
+    private final Map<@NonNull World, @NonNull Map<@NonNull Long, @NonNull ChunkSnapshot>> snapshots = new ConcurrentHashMap<>();
+    private final Map<@NonNull World, @NonNull LongLongMap> hashes = new ConcurrentHashMap<>(); // <chunk pos, snapshot hash>
+
+    /**
+     * Look for and capture unsaved chunks. Call on the server thread, every tick.
+     */
+    public void tick() {
+        if (!Config.LIVE_RENDER_ENABLED || !Pl3xMap.api().isEnabled()) {
+            return;
+        }
+
+        if (++this.ticks >= Math.max(1, Config.LIVE_RENDER_INTERVAL) * 20) {
+            this.ticks = 0;
+            collect();
+        }
+
+        if (this.requests.isEmpty()) {
+            return;
+        }
+        List<Supplier<ChunkSnapshot>> batch = new ArrayList<>();
+        for (int i = Math.max(1, Config.LIVE_RENDER_CHUNKS_PER_TICK); i > 0 && !this.requests.isEmpty(); i--) {
+            Request request = this.requests.poll();
+            this.requested.remove(request);
+            if (!request.world().isEnabled()) {
+                continue;
+            }
+            try {
+                Supplier<ChunkSnapshot> capture = request.world().captureChunk(Mathf.longToX(request.pos()), Mathf.longToZ(request.pos()));
+                if (capture != null) {
+                    batch.add(capture);
+                }
+            } catch (Throwable t) {
+                Logger.warn("Failed to capture chunk for " + request.world().getName(), t);
+            }
+        }
+        if (!batch.isEmpty()) {
+            Pl3xMap.api().getRenderExecutor().execute(() -> process(batch));
+        }
+    }
+
+    /**
+     * Use the snapshots of a region's chunks that are newer than its region file.
+     * <p>
+     * Called after the region was loaded for rendering. Snapshots older than the region file are dropped.
+     *
+     * @param region loaded region
+     */
+    public void overlay(@NonNull Region region) {
+        Map<Long, ChunkSnapshot> snapshots = this.snapshots.get(region.getWorld());
+        if (snapshots == null || snapshots.isEmpty()) {
+            return;
+        }
+        boolean changed = false;
+        int cX = region.getX() << 5;
+        int cZ = region.getZ() << 5;
+        for (int chunkX = cX; chunkX < cX + 32; chunkX++) {
+            for (int chunkZ = cZ; chunkZ < cZ + 32; chunkZ++) {
+                long pos = Mathf.asLong(chunkX, chunkZ);
+                ChunkSnapshot snapshot = snapshots.get(pos);
+                if (snapshot == null) {
+                    continue;
+                }
+                if (snapshot.getCaptured() <= region.getLastModified()) {
+                    // the server saved it since
+                    snapshots.remove(pos, snapshot);
+                    continue;
+                }
+                region.putChunk(snapshot.toChunk(region));
+                changed = true;
+            }
+        }
+        if (changed) {
+            Pl3xMap.api().getRegionCache().reweigh(region);
+        }
+    }
+
+    /**
+     * Check if any chunk of a region has a snapshot waiting to be rendered.
+     *
+     * @param world  world the region is in
+     * @param region region position
+     * @return true if the region has snapshots
+     */
+    public boolean hasSnapshots(@NonNull World world, @NonNull Point region) {
+        Map<Long, ChunkSnapshot> snapshots = this.snapshots.get(world);
+        if (snapshots == null || snapshots.isEmpty()) {
+            return false;
+        }
+        int cX = region.x() << 5;
+        int cZ = region.z() << 5;
+        for (int chunkX = cX; chunkX < cX + 32; chunkX++) {
+            for (int chunkZ = cZ; chunkZ < cZ + 32; chunkZ++) {
+                if (snapshots.containsKey(Mathf.asLong(chunkX, chunkZ))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Forget all snapshots of a world.
+     *
+     * @param world world to forget
+     */
+    public void invalidate(@NonNull World world) {
+        this.snapshots.remove(world);
+        this.hashes.remove(world);
+    }
+
+    /**
+     * Forget everything, including chunks waiting to be captured.
+     */
+    public void clear() {
+        this.requests.clear();
+        this.requested.clear();
+        this.snapshots.clear();
+        this.hashes.clear();
+    }
+
+    private void collect() {
+        int radius = Math.max(0, Config.LIVE_RENDER_RADIUS);
+        for (World world : Pl3xMap.api().getWorldRegistry()) {
+            if (!world.isEnabled()) {
+                continue;
+            }
+            world.collectUnsavedChunks(radius, pos -> {
+                Request request = new Request(world, pos);
+                if (this.requested.add(request)) {
+                    this.requests.add(request);
+                }
+            });
+        }
+        Pl3xMap.api().getRenderExecutor().execute(this::prune);
+    }
+
+    private void process(@NonNull List<@NonNull Supplier<@NonNull ChunkSnapshot>> batch) {
+        Map<World, Map<Point, long[]>> queue = new HashMap<>();
+        for (Supplier<ChunkSnapshot> capture : batch) {
+            ChunkSnapshot snapshot;
+            try {
+                snapshot = capture.get();
+            } catch (Throwable t) {
+                Logger.warn("Failed to snapshot chunk", t);
+                continue;
+            }
+            World world = snapshot.getWorld();
+            long pos = Mathf.asLong(snapshot.getX(), snapshot.getZ());
+
+            // keep the newest snapshot either way, it is still what the server has
+            this.snapshots.computeIfAbsent(world, w -> new ConcurrentHashMap<>()).put(pos, snapshot);
+
+            LongLongMap hashes = this.hashes.computeIfAbsent(world, w -> new LongLongMap());
+            synchronized (hashes) {
+                if (hashes.size() > 0 && hashes.get(pos, ~snapshot.getHash()) == snapshot.getHash()) {
+                    continue;
+                }
+                hashes.put(pos, snapshot.getHash());
+            }
+
+            int index = Region.getChunkIndex(snapshot.getX(), snapshot.getZ());
+            queue.computeIfAbsent(world, w -> new HashMap<>())
+                    .computeIfAbsent(Point.of(snapshot.getX() >> 5, snapshot.getZ() >> 5), k -> new long[16])[index >> 6] |= 1L << index;
+        }
+
+        RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
+        queue.forEach((world, regions) -> regions.forEach((region, chunks) -> processor.addChunks(world, region, chunks)));
+    }
+
+    private void prune() {
+        long oldest = System.currentTimeMillis() - MAX_AGE;
+        this.snapshots.values().forEach(snapshots -> snapshots.values().removeIf(snapshot -> snapshot.getCaptured() < oldest));
+
+        // without a snapshot the chunk was saved, or not captured for a long time. it is only
+        // captured again once unsaved changes show up, there is no render to skip anymore
+        this.hashes.forEach((world, hashes) -> {
+            Map<Long, ChunkSnapshot> snapshots = this.snapshots.getOrDefault(world, Map.of());
+            synchronized (hashes) {
+                hashes.removeIf((pos, hash) -> !snapshots.containsKey(pos));
+            }
+        });
+    }
+
+    private record Request(@NonNull World world, long pos) {
+    }
+}
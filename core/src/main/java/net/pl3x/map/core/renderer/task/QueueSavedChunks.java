@@ -0,0 +1,53 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.scheduler.Task;
+import net.pl3x.map.core.world.World;
+
+/**
+ * Queues the chunks the server saved, once their region files were written.
+ */
+public class QueueSavedChunks extends Task {
+    public QueueSavedChunks() {
+        super(1, true);
+    }
+
+    @Override
+    public void run() {
+        try {
+            long before = System.currentTimeMillis() - Math.max(0, Config.SAVED_CHUNKS_DELAY);
+            RegionProcessor processor = Pl3xMap.api().getRegionProcessor();
+            for (World world : Pl3xMap.api().getWorldRegistry()) {
+                if (world.isEnabled()) {
+                    world.getSavedChunks().drain(before).forEach((region, chunks) -> processor.addChunks(world, region, chunks));
+                }
+            }
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+    }
+}
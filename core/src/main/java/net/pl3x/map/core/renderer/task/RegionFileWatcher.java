@@ -25,122 +25,388 @@ package net.pl3x.map.core.renderer.task;
 
 import java.io.IOException;
 import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.util.LongLongMap;
+import net.pl3x.map.core.util.Mathf;
 import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
 import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
 import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
 
-public class RegionFileWatcher implements Runnable {
-    private final World world;
+/**
+ * Queues region files the server saved, for all worlds on a single thread.
+ * <p>
+ * The server writes a region file in many steps while saving, so a file is only queued once
+ * it stayed unchanged for the quiet period. When the file system drops events, the region
+ * directory is checked against the modified times seen last instead. File systems that do
+ * not report changes reliably can be polled the same way.
+ */
+public class RegionFileWatcher {
+    // upper bound on how long registering a world waits for the watcher thread
+    private static final long MAX_WAIT = 1000L;
 
-    private Timer timer;
-    private TimerTask task;
-    private Thread thread;
+    private final BlockingQueue<@NonNull Runnable> actions = new LinkedBlockingQueue<>();
 
-    private boolean stopped;
+    // only touched by the watcher thread
+    private final Map<@NonNull World, @NonNull Watched> worlds = new HashMap<>();
+    private final Map<@NonNull WatchKey, @NonNull Watched> keys = new HashMap<>();
+    private final Map<@NonNull Pending, @NonNull Long> pending = new HashMap<>();
+    private long nextPoll;
 
-    public RegionFileWatcher(@NonNull World world) {
-        this.world = world;
-    }
+    private volatile boolean running;
+    private Mode mode = Mode.OFF;
+    private WatchService service;
+    private ExecutorService executor;
 
+    /**
+     * Start watching with the configured mode.
+     */
     public void start() {
-        start(true);
-    }
-
-    public void start(boolean verbose) {
-        if (!Pl3xMap.api().isEnabled()) {
+        stop();
+        this.mode = Mode.of(Config.REGION_WATCHER_MODE);
+        if (this.mode == Mode.OFF) {
+            Logger.debug("Region file watcher is turned off");
             return;
         }
-        if (verbose) {
-            Logger.debug("Starting region file watcher for " + this.world.getName());
-        }
-        stop(false);
-        this.timer = new Timer();
-        this.task = new TimerTask() {
-            @Override
-            public void run() {
-                RegionFileWatcher rfw = RegionFileWatcher.this;
-                rfw.thread = Thread.currentThread();
-                rfw.thread.setName(String.format("Pl3xMap-FileWatcher-%s", rfw.world.getName()));
-                rfw.stopped = false;
-                rfw.run();
+        if (this.mode == Mode.WATCH) {
+            try {
+                this.service = FileSystems.getDefault().newWatchService();
+            } catch (IOException | UnsupportedOperationException e) {
+                Logger.warn("Cannot watch region files, polling them instead", e);
+                this.mode = Mode.POLL;
             }
-        };
-
-        this.timer.schedule(task, 10000L);
+        }
+        Logger.debug("Starting region file watcher (" + this.mode.name().toLowerCase(Locale.ROOT) + ")");
+        this.running = true;
+        this.nextPoll = System.currentTimeMillis() + pollInterval();
+        this.executor = Pl3xMap.ThreadFactory.createService("Pl3xMap-FileWatcher");
+        this.executor.execute(this::run);
     }
 
+    /**
+     * Stop watching all worlds.
+     */
     public void stop() {
-        stop(true);
+        this.running = false;
+        if (this.service != null) {
+            try {
+                this.service.close();
+            } catch (IOException ignore) {
+            }
+            this.service = null;
+        }
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            try {
+                // the old thread has to let go of its state before a new one starts
+                this.executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+            }
+            this.executor = null;
+        }
+        this.actions.clear();
+        this.mode = Mode.OFF;
     }
 
-    public void stop(boolean verbose) {
-        if (verbose) {
-            Logger.debug("Stopping region file watcher for " + this.world.getName());
+    /**
+     * Start watching the region directory of a world.
+     *
+     * @param world world to watch
+     */
+    public void register(@NonNull World world) {
+        if (this.running) {
+            this.actions.add(() -> watch(world));
         }
-        this.stopped = true;
-        if (this.task != null) {
-            this.task.cancel();
+    }
+
+    /**
+     * Stop watching the region directory of a world.
+     *
+     * @param world world to stop watching
+     */
+    public void unregister(@NonNull World world) {
+        if (this.running) {
+            this.actions.add(() -> unwatch(world));
         }
-        if (this.timer != null) {
-            this.timer.cancel();
+    }
+
+    private void run() {
+        Logger.debug("Region file watcher started");
+        try {
+            while (this.running) {
+                long wait = Math.max(0, Math.min(MAX_WAIT, nextDue() - System.currentTimeMillis()));
+                if (this.service != null) {
+                    WatchKey key = this.service.poll(wait, TimeUnit.MILLISECONDS);
+                    if (key != null) {
+                        handle(key);
+                    }
+                } else {
+                    Runnable action = this.actions.poll(wait, TimeUnit.MILLISECONDS);
+                    if (action != null) {
+                        action.run();
+                    }
+                }
+
+                Runnable action;
+                while ((action = this.actions.poll()) != null) {
+                    action.run();
+                }
+
+                long now = System.currentTimeMillis();
+                if (this.mode == Mode.POLL && now >= this.nextPoll) {
+                    this.worlds.values().forEach(watched -> scan(watched, true));
+                    this.nextPoll = now + pollInterval();
+                }
+                for (Watched watched : this.worlds.values()) {
+                    if (watched.rescanAt > 0 && now >= watched.rescanAt) {
+                        watched.rescanAt = 0;
+                        rescan(watched);
+                    }
+                }
+                flush(now);
+            }
+        } catch (ClosedWatchServiceException | InterruptedException ignore) {
+        } catch (Throwable t) {
+            Logger.warn("Region file watcher crashed", t);
         }
-        if (this.thread != null) {
-            this.thread.interrupt();
+        this.worlds.clear();
+        this.keys.clear();
+        this.pending.clear();
+        Logger.debug("Region file watcher stopped");
+    }
+
+    private void watch(@NonNull World world) {
+        Watched watched = new Watched(world);
+        this.worlds.put(world, watched);
+        if (this.service != null) {
+            listen(watched);
+        } else {
+            // remember what is on disk now, the world already queued what changed before
+            scan(watched, false);
         }
     }
 
-    @Override
-    public void run() {
-        Path dir = this.world.getRegionDirectory();
+    private void unwatch(@NonNull World world) {
+        Watched watched = this.worlds.remove(world);
+        if (watched == null) {
+            return;
+        }
+        if (watched.key != null) {
+            watched.key.cancel();
+            this.keys.remove(watched.key);
+        }
+        this.pending.keySet().removeIf(entry -> entry.watched() == watched);
+    }
 
-        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+    private void listen(@NonNull Watched watched) {
+        try {
+            watched.key = watched.dir.register(this.service, ENTRY_CREATE, ENTRY_MODIFY);
+            this.keys.put(watched.key, watched);
+        } catch (NoSuchFileException e) {
+            // nothing saved in this world yet, check back later
+            watched.rescanAt = System.currentTimeMillis() + pollInterval();
+        } catch (IOException e) {
+            Logger.warn("Failed to watch region directory " + watched.dir + ", polling it instead", e);
+            watched.rescanAt = System.currentTimeMillis() + pollInterval();
+        }
+    }
 
-            dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
-            Logger.debug("Region file watcher started for " + dir);
+    private void handle(@NonNull WatchKey key) {
+        Watched watched = this.keys.get(key);
+        if (watched == null) {
+            key.cancel();
+            return;
+        }
+        long due = System.currentTimeMillis() + quietPeriod();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // events got dropped, find what changed from the modified times
+                Logger.debug("Region file watcher overflowed for " + watched.world.getName());
+                watched.rescanAt = due;
+                continue;
+            }
+            Point region = FileUtil.regionFileToPoint(event.context().toString());
+            if (region != null) {
+                this.pending.put(new Pending(watched, Mathf.asLong(region)), due);
+            }
+        }
+        if (!key.reset()) {
+            // region directory is gone, watch it again once it is back
+            this.keys.remove(key);
+            watched.key = null;
+            watched.rescanAt = System.currentTimeMillis() + pollInterval();
+        }
+    }
 
-            WatchKey key;
-            while ((key = watcher.take()) != null) {
-                Collection<Path> modifiedFiles = new HashSet<>();
+    private void rescan(@NonNull Watched watched) {
+        if (this.service != null && watched.key == null) {
+            listen(watched);
+        }
+        scan(watched, true);
+        if (this.service != null && watched.key == null) {
+            watched.rescanAt = System.currentTimeMillis() + pollInterval();
+        }
+    }
 
-                Logger.debug("Region file watcher got a key!");
-                for (WatchEvent<?> event : key.pollEvents()) {
-                    Logger.debug("Region file watcher detected event: " + event.kind().name());
-                    if (event.kind() != OVERFLOW) {
-                        Path file = (Path) event.context();
-                        Logger.debug("Detected file change: " + file.getFileName());
-                        modifiedFiles.add(dir.resolve(file));
-                    }
+    /**
+     * Compare the modified times of a world's region files with the ones seen last.
+     *
+     * @param watched  world to scan
+     * @param dispatch true to queue changed files, false to only remember their modified times
+     */
+    private void scan(@NonNull Watched watched, boolean dispatch) {
+        long due = System.currentTimeMillis() + quietPeriod();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(watched.dir, "r.*.*.mca")) {
+            for (Path path : stream) {
+                Point region = FileUtil.regionFileToPoint(path.getFileName().toString());
+                if (region == null) {
+                    continue;
+                }
+                long pos = Mathf.asLong(region);
+                long modified;
+                try {
+                    modified = Files.getLastModifiedTime(path).toMillis();
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (!dispatch) {
+                    watched.modified.put(pos, modified);
+                    continue;
+                }
+                long seen = watched.modified.get(pos, -1);
+                if (seen < 0) {
+                    seen = watched.world.getRegionModifiedState().get(pos);
                 }
-                key.reset();
+                if (modified > seen) {
+                    // a file still being written keeps its first due, flush checks it settled
+                    this.pending.putIfAbsent(new Pending(watched, pos), due);
+                }
+            }
+        } catch (NoSuchFileException ignore) {
+        } catch (IOException e) {
+            Logger.warn("Failed to scan region directory " + watched.dir, e);
+        }
+    }
 
-                Collection<Point> points = FileUtil.regionPathsToPoints(this.world, modifiedFiles, true);
-                Pl3xMap.api().getRegionProcessor().addRegions(this.world, points);
+    /**
+     * Queue the files that stayed unchanged for the quiet period.
+     *
+     * @param now current time
+     */
+    private void flush(long now) {
+        long quiet = quietPeriod();
+        Map<World, List<Point>> ready = new HashMap<>();
+        Iterator<Map.Entry<Pending, Long>> iter = this.pending.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<Pending, Long> entry = iter.next();
+            if (entry.getValue() > now) {
+                continue;
             }
+            Watched watched = entry.getKey().watched();
+            long pos = entry.getKey().pos();
+            int rX = Mathf.longToX(pos);
+            int rZ = Mathf.longToZ(pos);
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(watched.dir.resolve("r." + rX + "." + rZ + ".mca"), BasicFileAttributes.class);
+            } catch (IOException e) {
+                iter.remove();
+                continue;
+            }
+            long modified = attrs.lastModifiedTime().toMillis();
+            if (now - modified < quiet) {
+                // changed without telling us, wait for it to settle
+                entry.setValue(modified + quiet);
+                continue;
+            }
+            iter.remove();
+            watched.modified.put(pos, modified);
+            if (watched.world.getSavedChunks().covers(pos, modified)) {
+                // the server already told us which chunks it saved
+                continue;
+            }
+            if (attrs.size() <= 0 || !watched.world.visibleRegion(rX, rZ)) {
+                continue;
+            }
+            ready.computeIfAbsent(watched.world, k -> new ArrayList<>()).add(Point.of(rX, rZ));
+        }
+        ready.forEach((world, regions) -> {
+            Logger.debug("Region file watcher queued " + regions.size() + " regions for " + world.getName());
+            Pl3xMap.api().getRegionProcessor().addRegions(world, regions);
+        });
+    }
 
-        } catch (ClosedWatchServiceException | InterruptedException ignore) {
-        } catch (IOException e) {
-            e.printStackTrace();
+    private long nextDue() {
+        long due = Long.MAX_VALUE;
+        for (long value : this.pending.values()) {
+            due = Math.min(due, value);
+        }
+        for (Watched watched : this.worlds.values()) {
+            if (watched.rescanAt > 0) {
+                due = Math.min(due, watched.rescanAt);
+            }
         }
+        return this.mode == Mode.POLL ? Math.min(due, this.nextPoll) : due;
+    }
 
-        if (this.stopped) {
-            Logger.debug("Region file watcher stopped!");
-        } else {
-            Logger.debug("Region file watcher stopped! Trying to start again..");
-            start(false);
+    private static long quietPeriod() {
+        return Math.max(0, Config.REGION_WATCHER_QUIET_PERIOD);
+    }
+
+    private static long pollInterval() {
+        return Math.max(1, Config.REGION_WATCHER_POLL_INTERVAL) * 1000L;
+    }
+
+    public enum Mode {
+        WATCH, POLL, OFF;
+
+        private static @NonNull Mode of(@NonNull String name) {
+            try {
+                return valueOf(name.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                Logger.warn("Unknown region watcher mode '" + name + "', using watch");
+                return WATCH;
+            }
         }
     }
+
+    private static class Watched {
+        private final World world;
+        private final Path dir;
+        private final LongLongMap modified = new LongLongMap(); // <pos, last seen modified time>
+        private WatchKey key;
+        private long rescanAt;
+
+        private Watched(@NonNull World world) {
+            this.world = world;
+            this.dir = world.getRegionDirectory();
+        }
+    }
+
+    private record Pending(@NonNull Watched watched, long pos) {
+    }
 }
@@ -23,54 +23,158 @@
  */
 package net.pl3x.map.core.renderer.task;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.player.Player;
 import net.pl3x.map.core.renderer.progress.Progress;
+import net.pl3x.map.core.renderer.worker.RenderWorkerHost;
 import net.pl3x.map.core.util.Mathf;
-import net.pl3x.map.core.util.SpiralIterator;
+import net.pl3x.map.core.world.Chunk;
+import net.pl3x.map.core.world.Region;
 import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
-
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Feeds queued regions to the render executor, most important first.
+ * <p>
+ * Only a few regions are handed to the executor at a time, the rest stay queued.
+ * In order, regions go first when
+ * <ol>
+ *     <li>someone is waiting on them through {@link #requestRegion(World, Point)}</li>
+ *     <li>they are near an online player or being looked at on the web map</li>
+ *     <li>everything else, in bands of increasing distance to a player (or spawn)</li>
+ * </ol>
+ * Regions slowly gain priority the longer they are queued. Regions of equal priority go in
+ * Hilbert curve order, so renders running side by side are neighbors and share the regions
+ * they read for heightmaps and biome blending through the world's region cache.
+ * <p>
+ * The few requested, viewed and near player regions are looked up every time a slot frees up.
+ * Background regions are kept ordered in a {@link RegionQueue} per world as they are queued,
+ * and only ranked again every so often when players moved to other bands or jobs changed.
+ * <p>
+ * The queue is indexed by world and region, so queuing a region that is already queued
+ * does nothing. Queuing a region that is being rendered marks it to render once more after.
+ * Regions can also be queued for only some of their chunks (see {@link #addChunks(World, Point, long[])}),
+ * queuing more chunks or the whole region adds to that.
+ * The processor thread sleeps until something is queued or a render finishes.
+ * <p>
+ * Renders can be paused globally or per world. Paused renders park at the next chunk
+ * (see {@link RegionScanTask#checkpoint()}) until resumed. When a requested region is
+ * waiting and no slot is free, a background render is preempted at its next checkpoint
+ * and queued again.
+ */
 public class RegionProcessor {
-    private final Map<@NonNull World, @NonNull Collection<@NonNull Point>> regionsToScan = new ConcurrentHashMap<>();
-    private final Deque<@NonNull Ticket> ticketsToScan = new ConcurrentLinkedDeque<>();
+    // how close (in regions) to a player a region has to be to get bumped
+    private static final int PLAYER_RADIUS = 8;
+    // how long (in milliseconds) a region has to wait to be considered one region closer
+    private static final long AGE_STEP = 10000L;
+    // priority gap between tiers, larger than any distance in regions
+    private static final double TIER = 100000D;
+    // width (in regions) of the distance bands background regions are rendered in
+    private static final int BAND = 4;
+    // how often (in milliseconds) background regions may be ranked again
+    private static final long RESCORE_INTERVAL = AGE_STEP;
+    // how many times a failing region is tried before it is left for the next full render
+    private static final int MAX_RETRIES = 3;
+    // regions within a band go in hilbert curve order to keep renders in flight close together
+    private static final Comparator<Scored> ORDER = Comparator.comparingDouble(Scored::priority).thenComparingLong(Scored::order);
+    // rough heap used per renderer while a region renders (raster plus zoom level merging)
+    private static final long RENDERER_FOOTPRINT = 2L * 1024L * 1024L;
+    // rough size of a region file held in memory between reading and parsing
+    private static final long FILE_FOOTPRINT = 4L * 1024L * 1024L;
+
+    private final Map<@NonNull World, @NonNull RegionQueue> queuedRegions = new ConcurrentHashMap<>();
+    // region positions of the players of each world with queued regions, as of the last pass
+    private final Map<@NonNull World, @NonNull List<@NonNull Point>> playerRegions = new ConcurrentHashMap<>();
+    // bands the players were in when background regions were last ranked
+    private final Map<@NonNull World, @NonNull Set<@NonNull Long>> rankedBands = new HashMap<>();
+    private long lastRescore;
+    private int rankedJobsVersion;
+    private final Map<@NonNull Ticket, @NonNull InFlight> inFlightRegions = new ConcurrentHashMap<>();
+    // regions queued (or to render again) for only some chunks, a bit per chunk index. no entry renders the whole region
+    private final Map<@NonNull Ticket, long @NonNull []> queuedChunks = new ConcurrentHashMap<>();
+    private final AtomicLong reservedMemory = new AtomicLong();
+    private final Set<@NonNull World> activeWorlds = new HashSet<>();
+    private final Map<@NonNull Ticket, @NonNull CompletableFuture<@NonNull Void>> requestedRegions = new ConcurrentHashMap<>();
+    // regions that failed to render -> number of failed attempts
+    private final Map<@NonNull Ticket, @NonNull Integer> failedRegions = new ConcurrentHashMap<>();
+    // tiles viewed on the web map, handed over by web server threads and picked up every pass
+    private final Queue<@NonNull ViewedTile> viewed = new ArrayBlockingQueue<>(4096);
+    private final Cache<@NonNull ViewedTile, @NonNull Boolean> viewedTiles = Caffeine.newBuilder()
+            .expireAfterWrite(30, TimeUnit.SECONDS)
+            .maximumSize(10000)
+            .build();
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition wakeup = this.lock.newCondition();
+    private final AtomicInteger generation = new AtomicInteger();
+    private boolean signalled;
 
     private final Executor executor;
     private final Progress progress;
+    private final RenderJobManager jobs;
 
-    private CompletableFuture<@NonNull Void> future;
-
-    private boolean paused;
-
-    private long timeStarted;
-    private boolean running;
+    private final Lock pauseLock = new ReentrantLock();
+    private final Condition resumed = this.pauseLock.newCondition();
+    private final Set<@NonNull World> pausedWorlds = ConcurrentHashMap.newKeySet();
+    private volatile boolean paused;
 
     public RegionProcessor() {
         this.executor = Pl3xMap.ThreadFactory.createService("Pl3xMap-Processor");
         this.progress = new Progress();
+        this.jobs = new RenderJobManager();
+    }
+
+    public @NonNull RenderJobManager getJobs() {
+        return this.jobs;
     }
 
-    @SuppressWarnings("BusyWait")
+    /**
+     * Park the calling thread while renders are paused.
+     */
     public void checkPaused() {
-        while (isPaused()) {
-            try {
-                Thread.sleep(50);
-            } catch (InterruptedException ignore) {
-            }
+        if (isPaused()) {
+            park(null);
+        }
+    }
+
+    /**
+     * Park the calling thread while renders of the given world are paused.
+     *
+     * @param world world being rendered
+     */
+    public void checkPaused(@NonNull World world) {
+        if (isPaused(world)) {
+            park(world);
         }
     }
 
@@ -78,8 +182,58 @@ public class RegionProcessor {
         return this.paused;
     }
 
+    public boolean isPaused(@NonNull World world) {
+        return this.paused || this.pausedWorlds.contains(world);
+    }
+
+    /**
+     * Check if renders of a world are paused on their own, regardless of the global pause.
+     *
+     * @param world world to check
+     * @return true if the world itself is paused
+     */
+    public boolean isWorldPaused(@NonNull World world) {
+        return this.pausedWorlds.contains(world);
+    }
+
     public void setPaused(boolean paused) {
         this.paused = paused;
+        if (!paused) {
+            resume();
+        }
+    }
+
+    public void setPaused(@NonNull World world, boolean paused) {
+        if (paused) {
+            this.pausedWorlds.add(world);
+        } else if (this.pausedWorlds.remove(world)) {
+            resume();
+        }
+    }
+
+    private void park(@Nullable World world) {
+        this.pauseLock.lock();
+        try {
+            while (world == null ? isPaused() : isPaused(world)) {
+                this.resumed.await();
+            }
+        } catch (InterruptedException e) {
+            // render executor is shutting down, abandon this render
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while paused");
+        } finally {
+            this.pauseLock.unlock();
+        }
+    }
+
+    private void resume() {
+        this.pauseLock.lock();
+        try {
+            this.resumed.signalAll();
+        } finally {
+            this.pauseLock.unlock();
+        }
+        signal();
     }
 
     public @NonNull Progress getProgress() {
@@ -87,170 +241,657 @@ public class RegionProcessor {
     }
 
     public Set<World> getQueuedWorlds() {
-        return this.regionsToScan.keySet();
+        return this.queuedRegions.entrySet().stream()
+                .filter(entry -> !entry.getValue().isEmpty())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Get the number of regions waiting to render, in all worlds.
+     *
+     * @return queued regions
+     */
+    public int getQueuedRegionCount() {
+        int queued = 0;
+        for (RegionQueue regions : this.queuedRegions.values()) {
+            queued += regions.size();
+        }
+        return queued;
+    }
+
+    public int getInFlightCount() {
+        return this.inFlightRegions.size();
     }
 
     public void start(long delay) {
-        this.future = CompletableFuture.runAsync(() -> {
+        int gen = this.generation.incrementAndGet();
+        CompletableFuture.runAsync(() -> {
             // wait 10 seconds...
-            try {
-                Thread.sleep(delay);
-            } catch (InterruptedException ignore) {
+            if (!await(delay, gen)) {
+                return;
             }
 
-            // run the task
-            if (!isPaused()) {
-                run();
-            }
+            while (this.generation.get() == gen) {
+                // run the task
+                if (!isPaused()) {
+                    run();
+                }
 
-            // rinse and repeat
-            start(1000L);
+                // sleep until something changes
+                if (!await(-1, gen)) {
+                    return;
+                }
+            }
         }, this.executor);
     }
 
     public void stop() {
-        if (this.future != null) {
-            boolean result = this.future.cancel(true);
-            Logger.debug("Stopped region processor: " + result);
-        }
+        this.generation.incrementAndGet();
+        signal();
+        Logger.debug("Stopped region processor");
+
+        // renders in flight are cancelled with the render executor, queue them up again
+        List<Ticket> interrupted = new ArrayList<>(this.inFlightRegions.keySet());
+        this.inFlightRegions.clear();
+        this.reservedMemory.set(0);
+        interrupted.forEach(ticket -> addRegions(ticket.world(), List.of(ticket.region())));
+
+        this.requestedRegions.values().forEach(requested -> requested.cancel(false));
+        this.requestedRegions.clear();
+        this.failedRegions.clear();
     }
 
     public void addRegions(@NonNull World world, @NonNull Collection<@NonNull Point> regions) {
-        for (Point region : regions) {
-            Ticket ticket = new Ticket(world, region);
-            if (!this.ticketsToScan.contains(ticket)) {
-                this.ticketsToScan.add(ticket);
+        long now = System.currentTimeMillis();
+        List<Point> players = this.playerRegions.getOrDefault(world, List.of());
+        this.queuedRegions.compute(world, (w, queued) -> {
+            if (queued == null) {
+                queued = new RegionQueue();
+            }
+            for (Point region : regions) {
+                Ticket ticket = new Ticket(world, region);
+                // already rendering, render all of it once more when done
+                if (this.inFlightRegions.computeIfPresent(ticket, (k, v) -> {
+                    this.queuedChunks.remove(k);
+                    return v.markRerun();
+                }) == null) {
+                    this.queuedChunks.remove(ticket);
+                    queued.add(region, now, rank(world, region, now, players));
+                }
+            }
+            return queued;
+        });
+        signal();
+    }
+
+    /**
+     * Queue some chunks of a region to render.
+     * <p>
+     * Only these chunks are scanned, the tiles keep the pixels of the other chunks.
+     * A region already queued whole stays queued whole.
+     *
+     * @param world  world the region is in
+     * @param region region position
+     * @param chunks a bit per chunk index to render (see {@link Region#getChunkIndex(int, int)})
+     */
+    public void addChunks(@NonNull World world, @NonNull Point region, long @NonNull [] chunks) {
+        long now = System.currentTimeMillis();
+        Ticket ticket = new Ticket(world, region);
+        List<Point> players = this.playerRegions.getOrDefault(world, List.of());
+        this.queuedRegions.compute(world, (w, queued) -> {
+            if (queued == null) {
+                queued = new RegionQueue();
+            }
+            // already rendering, render these chunks once more when done (unless all of it reruns anyway)
+            if (this.inFlightRegions.computeIfPresent(ticket, (k, v) -> {
+                if (!v.rerun() || this.queuedChunks.containsKey(k)) {
+                    this.queuedChunks.merge(k, chunks, RegionProcessor::union);
+                }
+                return v.markRerun();
+            }) == null) {
+                if (queued.add(region, now, rank(world, region, now, players))) {
+                    this.queuedChunks.put(ticket, chunks.clone());
+                } else {
+                    this.queuedChunks.computeIfPresent(ticket, (k, v) -> union(v, chunks));
+                }
             }
+            return queued;
+        });
+        signal();
+    }
+
+    private void requeue(@NonNull World world, @NonNull Point region, long @Nullable [] chunks) {
+        if (chunks == null) {
+            addRegions(world, List.of(region));
+        } else {
+            addChunks(world, region, chunks);
         }
     }
 
-    private void run() {
-        if (this.running) {
-            // this task is already running
-            Logger.debug("Region processor already running!");
-            return;
+    private static long @NonNull [] union(long @NonNull [] a, long @NonNull [] b) {
+        long[] union = new long[a.length];
+        for (int i = 0; i < union.length; i++) {
+            union[i] = a[i] | b[i];
         }
+        return union;
+    }
 
-        // consider task as running
-        this.running = true;
-        this.timeStarted = System.currentTimeMillis();
+    /**
+     * Request a region to be rendered ahead of everything else queued.
+     * <p>
+     * Requesting a region that is already requested returns the same future.
+     *
+     * @param world  world the region is in
+     * @param region region position
+     * @return future completing once the region is rendered
+     */
+    public @NonNull CompletableFuture<@NonNull Void> requestRegion(@NonNull World world, @NonNull Point region) {
+        return this.requestedRegions.computeIfAbsent(new Ticket(world, region), ticket -> {
+            addRegions(world, List.of(region));
+            return new CompletableFuture<>();
+        });
+    }
 
-        Logger.debug("Region processor started queuing at " + this.timeStarted);
+    /**
+     * Mark a tile as currently viewed on the web map.
+     * <p>
+     * Queued regions in view get rendered before others for a short while.
+     * Cheap enough to call from web server io threads, the tile is only
+     * handed over and looked at by the processor on its next pass.
+     *
+     * @param world world the tile is in
+     * @param zoom  zoom level of the tile, 0 is one region per tile
+     * @param x     tile x
+     * @param z     tile z
+     */
+    public void markViewed(@NonNull World world, int zoom, int x, int z) {
+        // drop it if the processor is far behind, views are only a hint
+        this.viewed.offer(new ViewedTile(world, zoom, x, z));
+    }
 
+    private boolean isViewed(@NonNull Ticket ticket) {
+        Point region = ticket.region();
+        for (int zoom = 0; zoom <= ticket.world().getConfig().ZOOM_MAX_OUT; zoom++) {
+            if (this.viewedTiles.getIfPresent(new ViewedTile(ticket.world(), zoom, region.x() >> zoom, region.z() >> zoom)) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Wake the processor up to look for more regions to render.
+     */
+    public void signal() {
+        this.lock.lock();
         try {
-            while (!this.ticketsToScan.isEmpty()) {
-                Ticket ticket = this.ticketsToScan.poll();
-                Collection<Point> set = this.regionsToScan.getOrDefault(ticket.world, new HashSet<>());
-                set.add(ticket.region);
-                this.regionsToScan.put(ticket.world, set);
+            this.signalled = true;
+            this.wakeup.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Wait for a signal.
+     *
+     * @param timeout max milliseconds to wait, or -1 to wait for a signal
+     * @param gen     generation of the calling loop
+     * @return false if the calling loop should stop
+     */
+    private boolean await(long timeout, int gen) {
+        this.lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (this.generation.get() == gen) {
+                if (timeout < 0) {
+                    if (this.signalled) {
+                        break;
+                    }
+                    this.wakeup.await();
+                } else {
+                    if (nanos <= 0) {
+                        break;
+                    }
+                    nanos = this.wakeup.awaitNanos(nanos);
+                }
             }
+            this.signalled = false;
+            return this.generation.get() == gen;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
 
-            Iterator<Map.Entry<World, Collection<Point>>> iter = this.regionsToScan.entrySet().iterator();
-            while (iter.hasNext()) {
-                Map.Entry<World, Collection<Point>> entry = iter.next();
-                iter.remove();
-                World world = entry.getKey();
-                Collection<Point> regions = entry.getValue();
-                process(world, regions);
+    private void run() {
+        try {
+            long now = System.currentTimeMillis();
 
+            ViewedTile tile;
+            while ((tile = this.viewed.poll()) != null) {
+                this.viewedTiles.put(tile, Boolean.TRUE);
+            }
+            updatePlayers(now);
+
+            int slots = getMaxInFlight() - this.inFlightRegions.size();
+            int waiting = 0;
+            if (slots > 0) {
+                long budget = getMemoryBudget();
+                for (Scored next : nextTickets(slots, now)) {
+                    // only admit what fits in the heap budget, the rest waits for renders to complete
+                    long footprint = estimateFootprint(next.ticket().world());
+                    if (!this.inFlightRegions.isEmpty() && this.reservedMemory.get() + footprint > budget) {
+                        waiting = (int) this.requestedRegions.keySet().stream().filter(ticket -> !this.inFlightRegions.containsKey(ticket)).count();
+                        break;
+                    }
+                    this.reservedMemory.addAndGet(footprint);
+                    schedule(next, footprint);
+                }
+            } else {
+                waiting = (int) this.requestedRegions.keySet().stream().filter(ticket -> !this.inFlightRegions.containsKey(ticket)).count();
             }
+
+            // make room for requested regions by kicking out background renders
+            if (waiting > 0) {
+                preempt(waiting);
+            }
+
+            updateProgress();
         } catch (Throwable t) {
             t.printStackTrace();
         }
-
-        this.running = false;
-        Logger.debug("Region processor finished queuing at " + System.currentTimeMillis());
     }
 
-    private void process(@NonNull World world, @NonNull Collection<@NonNull Point> regionPositions) {
-        Logger.debug(world.getName() + " Region processor started processing at " + System.currentTimeMillis());
-
-        // find max radius for spiral iterator
-        int maxRadius = 0;
-        for (Point pos : regionPositions) {
-            maxRadius = Math.max(Math.max(maxRadius, Math.abs(pos.x())), Math.abs(pos.z()));
+    private void preempt(int count) {
+        for (InFlight inFlight : this.inFlightRegions.values()) {
+            if (count <= 0) {
+                return;
+            }
+            // regions on the worker process can not be stopped from here
+            if (inFlight.tier() >= 2 && !inFlight.remote() && !inFlight.task().isPreempted()) {
+                inFlight.task().preempt();
+                count--;
+            }
         }
+    }
 
-        // create spiral iterator to order region scanning
-        Point spawn = world.getSpawn();
-        SpiralIterator spiralIterator = new SpiralIterator(spawn.x() >> 9, spawn.z() >> 9, maxRadius);
+    /**
+     * Look up where the players of every world with queued regions are, and rank background
+     * regions again if players moved to other bands or render jobs changed.
+     *
+     * @param now current time
+     */
+    private void updatePlayers(long now) {
+        this.playerRegions.keySet().retainAll(this.queuedRegions.keySet());
+        this.rankedBands.keySet().retainAll(this.queuedRegions.keySet());
+        for (World world : this.queuedRegions.keySet()) {
+            List<Point> players = new ArrayList<>();
+            for (Player player : world.getPlayers()) {
+                Point pos = player.getPosition();
+                players.add(Point.of(pos.x() >> 9, pos.z() >> 9));
+            }
+            this.playerRegions.put(world, players);
+        }
 
-        // order preserved map of regions with boolean to signify if it was already scanned
-        List<Point> orderedRegionsToScan = new ArrayList<>();
+        if (now - this.lastRescore < RESCORE_INTERVAL) {
+            return;
+        }
+        this.lastRescore = now;
+        int jobsVersion = this.jobs.getVersion();
+        boolean jobsChanged = jobsVersion != this.rankedJobsVersion;
+        this.rankedJobsVersion = jobsVersion;
+        this.queuedRegions.forEach((world, queued) -> {
+            List<Point> players = this.playerRegions.getOrDefault(world, List.of());
+            Set<Long> bands = new HashSet<>();
+            for (Point player : players) {
+                bands.add(Mathf.asLong(Math.floorDiv(player.x(), BAND), Math.floorDiv(player.z(), BAND)));
+            }
+            if (!jobsChanged && bands.equals(this.rankedBands.get(world))) {
+                return;
+            }
+            this.rankedBands.put(world, bands);
+            queued.rescore((region, time) -> rank(world, region, time, players));
+        });
+    }
 
-        // iterate the spiral
-        int numberOfSkippedRegions = 0;
-        while (spiralIterator.hasNext()) {
-            // let us not get stuck in an endless loop
-            if (numberOfSkippedRegions > 1000000) {
-                Logger.debug("Failsafe triggered.");
-                // we scanned over a million non-existent regions straight
-                // quit the spiral and add the remaining regions to the end
-                orderedRegionsToScan.addAll(regionPositions);
-                break;
+    private @NonNull List<@NonNull Scored> nextTickets(int count, long now) {
+        // the few requested, viewed and near player regions are scored on the spot
+        Map<Ticket, Scored> urgent = new HashMap<>();
+        for (Ticket ticket : this.requestedRegions.keySet()) {
+            scoreUrgent(urgent, ticket, now);
+        }
+        for (ViewedTile tile : this.viewedTiles.asMap().keySet()) {
+            // a tile at zoom level z covers (1 << z) * (1 << z) regions
+            for (int x = tile.x() << tile.zoom(); x < (tile.x() + 1) << tile.zoom(); x++) {
+                for (int z = tile.z() << tile.zoom(); z < (tile.z() + 1) << tile.zoom(); z++) {
+                    scoreUrgent(urgent, new Ticket(tile.world(), Point.of(x, z)), now);
+                }
+            }
+        }
+        this.playerRegions.forEach((world, players) -> {
+            for (Point player : players) {
+                for (int x = player.x() - PLAYER_RADIUS; x <= player.x() + PLAYER_RADIUS; x++) {
+                    for (int z = player.z() - PLAYER_RADIUS; z <= player.z() + PLAYER_RADIUS; z++) {
+                        scoreUrgent(urgent, new Ticket(world, Point.of(x, z)), now);
+                    }
+                }
             }
+        });
+        List<Scored> next = new ArrayList<>(urgent.values());
+        next.sort(ORDER);
+        if (next.size() >= count) {
+            return next.subList(0, count);
+        }
 
-            // get region from spiral and ensure a region file exists for it
-            Point regionPos = spiralIterator.next();
-            if (regionPositions.remove(regionPos)) {
-                // file exists, add region to scan
-                orderedRegionsToScan.add(regionPos);
-                numberOfSkippedRegions = 0;
-            } else {
-                numberOfSkippedRegions++;
+        // the rest from the front of the background queues
+        int remaining = count - next.size();
+        long steps = Math.floorDiv(now, AGE_STEP);
+        List<Scored> background = new ArrayList<>();
+        this.queuedRegions.forEach((world, queued) -> {
+            if (isPaused(world)) {
+                return;
+            }
+            for (RegionQueue.Entry entry : queued.first(remaining, region -> urgent.containsKey(new Ticket(world, region)))) {
+                background.add(new Scored(new Ticket(world, entry.region()), 2, 2 * TIER + entry.rank() - steps, entry.hilbert()));
             }
+        });
+        background.sort(ORDER);
+        next.addAll(background.subList(0, Math.min(remaining, background.size())));
+        return next;
+    }
+
+    private void scoreUrgent(@NonNull Map<@NonNull Ticket, @NonNull Scored> urgent, @NonNull Ticket ticket, long now) {
+        if (urgent.containsKey(ticket) || isPaused(ticket.world())) {
+            return;
+        }
+        RegionQueue queue = this.queuedRegions.get(ticket.world());
+        Long queued = queue == null ? null : queue.getQueued(ticket.region());
+        if (queued == null) {
+            return;
         }
+        Scored scored = score(ticket, queued, now, this.playerRegions.getOrDefault(ticket.world(), List.of()));
+        if (scored.tier() < 2) {
+            urgent.put(ticket, scored);
+        }
+    }
 
-        // create and send tasks to executor to run
-        schedule(world, orderedRegionsToScan);
+    /**
+     * Rank a background region. Only depends on when the region was queued, so it stays
+     * valid while the region waits, until players move or render jobs change.
+     *
+     * @param world   world the region is in
+     * @param region  region position
+     * @param queued  time the region was queued
+     * @param players player positions in region coordinates
+     * @return rank, lower renders first
+     */
+    private long rank(@NonNull World world, @NonNull Point region, long queued, @NonNull List<@NonNull Point> players) {
+        int distance = distance(world, region, players);
+        // round down to the band, the curve decides the order inside it
+        distance -= distance % BAND;
+        // whole steps only, so regions queued together stay tied and fall back to curve order.
+        // queued earlier ranks lower, taking off the current step when taken out gives the age.
+        // regions of a render job get a head start of the job's priority in steps
+        return (long) Math.min(distance, TIER - 1) + Math.floorDiv(queued, AGE_STEP) - this.jobs.getPriority(world, Mathf.asLong(region));
+    }
 
-        Logger.debug(world.getName() + " Region processor finished processing at " + System.currentTimeMillis());
+    private static int distance(@NonNull World world, @NonNull Point region, @NonNull List<@NonNull Point> players) {
+        // distance (in regions) to the nearest player, or spawn if nobody is around
+        int distance = Integer.MAX_VALUE;
+        for (Point player : players) {
+            distance = Math.min(distance, Math.max(Math.abs(region.x() - player.x()), Math.abs(region.z() - player.z())));
+        }
+        if (distance == Integer.MAX_VALUE) {
+            Point spawn = world.getSpawn();
+            distance = Math.max(Math.abs(region.x() - (spawn.x() >> 9)), Math.abs(region.z() - (spawn.z() >> 9)));
+        }
+        return distance;
     }
 
-    private void schedule(@NonNull World world, @NonNull List<@NonNull Point> orderedRegionsToScan) {
+    private @NonNull Scored score(@NonNull Ticket ticket, long queued, long now, @NonNull List<@NonNull Point> players) {
+        Point region = ticket.region();
+        int distance = distance(ticket.world(), region, players);
+
+        int tier;
+        if (this.requestedRegions.containsKey(ticket)) {
+            tier = 0;
+        } else if (isViewed(ticket)) {
+            tier = 1;
+            distance = 0;
+        } else if (distance <= PLAYER_RADIUS && !players.isEmpty()) {
+            tier = 1;
+        } else {
+            tier = 2;
+            // round down to the band, the curve decides the order inside it
+            distance -= distance % BAND;
+        }
+
+        // whole steps only, so regions queued together stay tied and fall back to curve order.
+        // regions of a render job get a head start of the job's priority in steps
+        long age = (now - queued) / AGE_STEP + this.jobs.getPriority(ticket.world(), Mathf.asLong(region));
+        return new Scored(ticket, tier, tier * TIER + Math.min(distance, TIER - 1) - age, Mathf.hilbert(region.x(), region.z()));
+    }
+
+    private void schedule(@NonNull Scored scored, long footprint) {
+        Ticket ticket = scored.ticket();
+        World world = ticket.world();
+        Point pos = ticket.region();
+        long timeStarted = System.currentTimeMillis();
+
+        // mark in flight before leaving the queue so no ticket slips through
+        long[] chunks = this.queuedChunks.get(ticket);
+        RegionScanTask task = new RegionScanTask(world, pos, chunks);
+        this.inFlightRegions.put(ticket, new InFlight(task, scored.tier(), footprint, false, false));
+        if (!this.queuedChunks.remove(ticket, chunks) && chunks != null) {
+            // more got queued in the meantime, render it again after
+            this.inFlightRegions.computeIfPresent(ticket, (k, v) -> v.markRerun());
+        }
+        RegionQueue queued = this.queuedRegions.get(world);
+        if (queued != null) {
+            queued.remove(pos);
+        }
+
+        this.activeWorlds.add(world);
         getProgress().setWorld(world);
-        getProgress().setTotalRegions(orderedRegionsToScan.size());
-        getProgress().setTotalChunks(getProgress().getTotalRegions() * 1024L);
-
-        CompletableFuture.allOf(orderedRegionsToScan.stream()
-                .map(pos -> CompletableFuture.runAsync(new RegionScanTask(world, pos), Pl3xMap.api().getRenderExecutor())
-                        .whenComplete((result, throwable) -> {
-                            if (throwable != null) {
-                                throwable.printStackTrace();
-                            }
-
-                            // set region modified time
-                            world.getRegionModifiedState().set(Mathf.asLong(pos), this.timeStarted);
-
-                            // run the garbage collector
-                            if (Config.GC_WHEN_RUNNING) {
-                                System.gc();
-                            }
-                        })
-                ).toArray(CompletableFuture[]::new)
-        ).whenComplete((result, throwable) -> {
+
+        // live snapshots only exist in this process, render those regions here
+        CompletableFuture<Void> render = null;
+        RenderWorkerHost worker = Pl3xMap.api().getRenderWorkerHost();
+        if (worker.isRunning() && !Pl3xMap.api().getLiveChunks().hasSnapshots(world, pos)) {
+            render = worker.submit(world, pos, chunks);
+            if (render != null) {
+                this.inFlightRegions.computeIfPresent(ticket, (k, v) -> v.markRemote());
+                render = render.thenRun(() -> getProgress().increment());
+            }
+        }
+        if (render == null) {
+            render = task.pipeline(Pl3xMap.api().getIOExecutor(), Pl3xMap.api().getRenderExecutor());
+        }
+
+        render.whenComplete((result, throwable) -> {
+            if (throwable instanceof CompletionException && throwable.getCause() instanceof RegionScanTask.Preempted) {
+                // make way for more important work, try again later
+                InFlight inFlight = this.inFlightRegions.remove(ticket);
+                long[] again = chunks;
+                if (inFlight != null) {
+                    this.reservedMemory.addAndGet(-inFlight.footprint());
+                    if (inFlight.rerun()) {
+                        long[] more = this.queuedChunks.remove(ticket);
+                        again = again == null || more == null ? null : union(again, more);
+                    }
+                }
+                requeue(world, pos, again);
+                return;
+            }
             if (throwable != null) {
-                throwable.printStackTrace();
+                fail(ticket, chunks, throwable);
+                return;
+            }
+            this.failedRegions.remove(ticket);
+
+            // set region modified time
+            world.getRegionModifiedState().set(Mathf.asLong(pos), timeStarted);
+
+            // checkpoint any render jobs waiting on this region
+            this.jobs.complete(world, pos);
+
+            // let anyone waiting on this region know it is done
+            CompletableFuture<Void> requested = this.requestedRegions.remove(ticket);
+            if (requested != null) {
+                requested.complete(null);
+            }
+
+            InFlight inFlight = this.inFlightRegions.remove(ticket);
+            if (inFlight != null) {
+                this.reservedMemory.addAndGet(-inFlight.footprint());
+
+                // queued again while rendering, render once more
+                if (inFlight.rerun()) {
+                    requeue(world, pos, this.queuedChunks.remove(ticket));
+                }
+            }
+
+            // free slot and memory, pick the next region
+            signal();
+        });
+    }
+
+    private void fail(@NonNull Ticket ticket, long @Nullable [] chunks, @NonNull Throwable throwable) {
+        World world = ticket.world();
+        Point pos = ticket.region();
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+
+        // the region was not rendered, leave its modified time and any job checkpoint alone
+        long[] again = chunks;
+        InFlight inFlight = this.inFlightRegions.remove(ticket);
+        if (inFlight != null) {
+            this.reservedMemory.addAndGet(-inFlight.footprint());
+            if (inFlight.rerun()) {
+                long[] more = this.queuedChunks.remove(ticket);
+                again = again == null || more == null ? null : union(again, more);
             }
+        }
 
-            // stop the progress tracker
-            getProgress().finish();
+        int attempts = this.failedRegions.merge(ticket, 1, Integer::sum);
+        if (attempts < MAX_RETRIES) {
+            Logger.warn("Failed to render region " + pos.x() + "," + pos.z() + " in " + world.getName() + " (attempt " + attempts + "), trying again later", cause);
+            requeue(world, pos, again);
+        } else {
+            // give up for now, the region stays modified and the next full render picks it up
+            Logger.severe("Failed to render region " + pos.x() + "," + pos.z() + " in " + world.getName() + " after " + attempts + " attempts", cause);
+            this.failedRegions.remove(ticket);
+            this.jobs.skip(world, pos);
+            CompletableFuture<Void> requested = this.requestedRegions.remove(ticket);
+            if (requested != null) {
+                requested.completeExceptionally(cause);
+            }
+        }
+
+        signal();
+    }
 
+    private void updateProgress() {
+        // clean up worlds that have nothing left to render
+        this.activeWorlds.removeIf(world -> {
+            if (hasWork(world)) {
+                return false;
+            }
+            this.queuedRegions.computeIfPresent(world, (w, queued) -> queued.isEmpty() ? null : queued);
             // free up some memory
             world.cleanup();
+            Logger.debug(world.getName() + " Region processor finished task at " + System.currentTimeMillis());
+            return true;
+        });
 
-            // run the garbage collector
-            if (Config.GC_WHEN_FINISHED) {
-                System.gc();
+        if (this.activeWorlds.isEmpty()) {
+            if (getProgress().getWorld() != null) {
+                // stop the progress tracker
+                getProgress().finish();
             }
+            return;
+        }
 
-            // consider task as no longer running
-            this.running = false;
+        long queued = getQueuedRegionCount();
+        long total = getProgress().getProcessedRegions().get() + queued + this.inFlightRegions.size();
+        getProgress().setTotalRegions(total);
+        getProgress().setTotalChunks(total * 1024L);
+    }
 
-            Logger.debug(world.getName() + " Region processor finished task at " + System.currentTimeMillis());
-        }).join();
+    private boolean hasWork(@NonNull World world) {
+        RegionQueue queued = this.queuedRegions.get(world);
+        if (queued != null && !queued.isEmpty()) {
+            return true;
+        }
+        // only a handful of regions are ever in flight
+        for (Ticket ticket : this.inFlightRegions.keySet()) {
+            if (ticket.world().equals(world)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int getMaxInFlight() {
+        // keep every render thread busy, plus one region per thread being read or written
+        ExecutorService renderExecutor = Pl3xMap.api().getRenderExecutor();
+        int threads = renderExecutor instanceof ForkJoinPool pool ? pool.getParallelism() : Config.RENDER_THREADS;
+        int max = Math.max(1, threads) * 2;
+        RenderWorkerHost worker = Pl3xMap.api().getRenderWorkerHost();
+        if (worker.isRunning()) {
+            // as many as the worker asked for, none while it is restarting.
+            // the throttle never goes below one, that one would render inside the server
+            max = worker.getCapacity();
+            if (max <= 0) {
+                return 0;
+            }
+        }
+        // fewer while the server is struggling, none while the throttle paused renders
+        return Pl3xMap.api().getRenderThrottle().limitInFlight(max);
+    }
+
+    /**
+     * Get the amount of heap renders in flight may use together.
+     *
+     * @return memory budget in bytes
+     */
+    public static long getMemoryBudget() {
+        long max = Runtime.getRuntime().maxMemory();
+        if (Config.RENDER_MEMORY > 0) {
+            return Config.RENDER_MEMORY * 1024L * 1024L;
+        }
+        // a quarter of the heap, leave the rest to the server
+        return max == Long.MAX_VALUE ? 1024L * 1024L * 1024L : max / 4;
+    }
+
+    /**
+     * Estimate how much heap rendering a region of the given world takes.
+     *
+     * @param world world to estimate for
+     * @return estimated footprint in bytes
+     */
+    public static long estimateFootprint(@NonNull World world) {
+        return FILE_FOOTPRINT + 1024L * Chunk.FOOTPRINT + world.getRenderers().size() * RENDERER_FOOTPRINT;
     }
 
     private record Ticket(@NonNull World world, @NonNull Point region) {
     }
+
+    private record ViewedTile(@NonNull World world, int zoom, int x, int z) {
+    }
+
+    private record InFlight(@NonNull RegionScanTask task, int tier, long footprint, boolean rerun, boolean remote) {
+        private @NonNull InFlight markRerun() {
+            return new InFlight(this.task, this.tier, this.footprint, true, this.remote);
+        }
+
+        private @NonNull InFlight markRemote() {
+            return new InFlight(this.task, this.tier, this.footprint, this.rerun, true);
+        }
+    }
+
+    private record Scored(@NonNull Ticket ticket, int tier, double priority, long order) {
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.function.ToLongBiFunction;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.Mathf;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Queued background regions of one world, kept in render order as they are added.
+ * <p>
+ * Regions are ordered by a rank that does not change while they wait, see
+ * {@link RegionProcessor} for how it is made up, and then by their position along a hilbert
+ * curve. Taking the next few regions only looks at the front of the queue. Ranks only change
+ * when {@link #rescore(ToLongBiFunction)} is called, like when players moved.
+ */
+public class RegionQueue {
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::rank)
+            .thenComparingLong(Entry::hilbert)
+            .thenComparingLong(Entry::pos);
+
+    private final Map<@NonNull Long, @NonNull Entry> entries = new HashMap<>();
+    private final TreeSet<@NonNull Entry> order = new TreeSet<>(ORDER);
+
+    /**
+     * Queue a region, unless it is already queued.
+     *
+     * @param region region position
+     * @param queued time the region was queued
+     * @param rank   rank of the region, lower renders first
+     * @return true if the region was not queued yet
+     */
+    public synchronized boolean add(@NonNull Point region, long queued, long rank) {
+        long pos = Mathf.asLong(region);
+        if (this.entries.containsKey(pos)) {
+            return false;
+        }
+        Entry entry = new Entry(region, pos, queued, rank, Mathf.hilbert(region.x(), region.z()));
+        this.entries.put(pos, entry);
+        this.order.add(entry);
+        return true;
+    }
+
+    public synchronized boolean remove(@NonNull Point region) {
+        Entry entry = this.entries.remove(Mathf.asLong(region));
+        if (entry == null) {
+            return false;
+        }
+        this.order.remove(entry);
+        return true;
+    }
+
+    /**
+     * Get when a region was queued.
+     *
+     * @param region region position
+     * @return time queued, or null if not queued
+     */
+    public synchronized @Nullable Long getQueued(@NonNull Point region) {
+        Entry entry = this.entries.get(Mathf.asLong(region));
+        return entry == null ? null : entry.queued();
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+    /**
+     * Get the regions at the front of the queue, without taking them out.
+     *
+     * @param count max number of regions
+     * @param skip  regions to pass over
+     * @return up to count regions, in render order
+     */
+    public synchronized @NonNull List<@NonNull Entry> first(int count, @NonNull Predicate<@NonNull Point> skip) {
+        List<Entry> first = new ArrayList<>(Math.min(count, this.order.size()));
+        for (Entry entry : this.order) {
+            if (first.size() >= count) {
+                break;
+            }
+            if (!skip.test(entry.region())) {
+                first.add(entry);
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Rank every queued region again.
+     *
+     * @param rank new rank of a region, given its position and time queued
+     */
+    public synchronized void rescore(@NonNull ToLongBiFunction<@NonNull Point, @NonNull Long> rank) {
+        Collection<Entry> old = new ArrayList<>(this.entries.values());
+        this.order.clear();
+        for (Entry entry : old) {
+            Entry updated = new Entry(entry.region(), entry.pos(), entry.queued(), rank.applyAsLong(entry.region(), entry.queued()), entry.hilbert());
+            this.entries.put(entry.pos(), updated);
+            this.order.add(updated);
+        }
+    }
+
+    /**
+     * A queued region.
+     *
+     * @param region  region position
+     * @param pos     region position packed into a long
+     * @param queued  time the region was queued
+     * @param rank    rank of the region, lower renders first
+     * @param hilbert position along the hilbert curve
+     */
+    public record Entry(@NonNull Point region, long pos, long queued, long rank, long hilbert) {
+    }
+}
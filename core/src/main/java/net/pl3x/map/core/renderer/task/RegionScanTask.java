@@ -28,26 +28,50 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinTask;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.registry.RendererRegistry;
 import net.pl3x.map.core.renderer.Renderer;
-import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.renderer.progress.RenderProfiler;
+import net.pl3x.map.core.renderer.progress.RenderStageEvent;
+import net.pl3x.map.core.world.BorderStrip;
 import net.pl3x.map.core.world.Region;
 import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class RegionScanTask implements Runnable {
+    // size (in chunks) of the areas a region is split into when scanning, 16 areas per region
+    private static final int SPLIT_SIZE = 8;
+
     private final World world;
     private final Point regionPos;
+    private final long[] chunks;
 
     private final Map<@NonNull String, @NonNull Renderer> renderers = new LinkedHashMap<>();
 
+    private volatile boolean preempted;
+    private volatile BorderStrip borderStrip;
+
     public RegionScanTask(@NonNull World world, @NonNull Point regionPos) {
+        this(world, regionPos, null);
+    }
+
+    /**
+     * Create a task rendering some chunks of a region.
+     *
+     * @param world     world the region is in
+     * @param regionPos region position
+     * @param chunks    a bit per chunk index to render (see {@link Region#getChunkIndex(int, int)}), or null for all chunks
+     */
+    public RegionScanTask(@NonNull World world, @NonNull Point regionPos, long @Nullable [] chunks) {
         this.world = world;
         this.regionPos = regionPos;
+        this.chunks = chunks;
 
         RendererRegistry registry = Pl3xMap.api().getRendererRegistry();
         List<Renderer.Builder> rendererBuilders = new ArrayList<>(this.world.getRenderers().values());
@@ -67,6 +91,10 @@ public class RegionScanTask implements Runnable {
         return this.world;
     }
 
+    public long @Nullable [] getChunks() {
+        return this.chunks;
+    }
+
     public @Nullable Renderer getRenderer(@NonNull String id) {
         return this.renderers.get(id);
     }
@@ -75,58 +103,209 @@ public class RegionScanTask implements Runnable {
         this.renderers.clear();
     }
 
+    /**
+     * Ask this task to give up its render thread at the next checkpoint.
+     */
+    public void preempt() {
+        this.preempted = true;
+    }
+
+    public boolean isPreempted() {
+        return this.preempted;
+    }
+
+    /**
+     * Park while this task's world is paused, and bail out if the task was preempted.
+     * <p>
+     * Call this once per chunk (or between stages), not per block.
+     *
+     * @throws Preempted if the task was preempted
+     */
+    public void checkpoint() {
+        Pl3xMap.api().getRegionProcessor().checkPaused(this.world);
+        Pl3xMap.api().getRenderThrottle().pace();
+        if (this.preempted) {
+            throw new Preempted();
+        }
+    }
+
     @Override
     public void run() {
         try {
             Logger.debug("[" + this.world.getName() + "] Scanning " + regionPos + " -- " + Thread.currentThread().getName());
 
-            Pl3xMap.api().getRegionProcessor().checkPaused();
+            checkpoint();
 
             allocateImages();
 
-            Pl3xMap.api().getRegionProcessor().checkPaused();
+            checkpoint();
 
-            scanRegion(loadRegion());
+            scanRegion(parseRegion(readRegion()));
 
-            Pl3xMap.api().getRegionProcessor().checkPaused();
+            checkpoint();
 
             saveImages();
+        } catch (Preempted e) {
+            // let the region processor know
+            throw e;
         } catch (Throwable t) {
             t.printStackTrace();
+        } finally {
+            releaseImages();
         }
     }
 
+    /**
+     * Run this task as a pipeline, each stage on the executor suited for it.
+     * <p>
+     * Reading and writing files happens on the io executor, while decompressing, parsing
+     * and scanning happens on the render executor. This lets the next region be read while
+     * this one is scanned, without io waits holding on to render threads.
+     *
+     * @param io     executor for file reads and writes
+     * @param render executor for cpu heavy work
+     * @return future completing once the region is saved
+     */
+    public @NonNull CompletableFuture<@NonNull Void> pipeline(@NonNull Executor io, @NonNull Executor render) {
+        return CompletableFuture.supplyAsync(() -> {
+                    Logger.debug("[" + this.world.getName() + "] Reading " + regionPos + " -- " + Thread.currentThread().getName());
+                    checkpoint();
+                    allocateImages();
+                    return readRegion();
+                }, io)
+                .thenApplyAsync(this::parseRegion, render)
+                .thenAcceptAsync(this::scanRegion, render)
+                .thenRunAsync(this::saveImages, io)
+                .whenComplete((result, throwable) -> releaseImages());
+    }
+
     private void allocateImages() {
         for (Renderer renderer : this.renderers.values()) {
-            Pl3xMap.api().getRegionProcessor().checkPaused();
             renderer.allocateData(this.regionPos);
         }
     }
 
-    private @NonNull Region loadRegion() {
+    private void releaseImages() {
+        for (Renderer renderer : this.renderers.values()) {
+            renderer.releaseData();
+        }
+    }
+
+    private @NonNull RegionFile readRegion() {
         Region region = this.world.getRegion(null, this.regionPos.x(), this.regionPos.z());
         try {
-            region.loadChunks();
+            return new RegionFile(region, region.readFile());
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        return region;
+    }
+
+    private @NonNull Region parseRegion(@NonNull RegionFile file) {
+        checkpoint();
+        if (file.data() != null) {
+            try {
+                file.region().loadChunks(file.data());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        // changes the server did not save yet
+        Pl3xMap.api().getLiveChunks().overlay(file.region());
+        return file.region();
     }
 
     private void scanRegion(@NonNull Region region) {
+        List<Renderer> splittable = new ArrayList<>();
+        List<Renderer> whole = new ArrayList<>();
         for (Renderer renderer : this.renderers.values()) {
-            Pl3xMap.api().getRegionProcessor().checkPaused();
+            (renderer.isSplittable() ? splittable : whole).add(renderer);
+        }
+
+        if (!splittable.isEmpty()) {
+            checkpoint();
+            splittable.forEach(renderer -> renderer.prepareScan(region));
+
+            int cX = region.getX() << 5;
+            int cZ = region.getZ() << 5;
+            if (ForkJoinTask.inForkJoinPool()) {
+                // split the region up so idle render threads can help out, every area
+                // runs all renderers in order so renderers can build on each other's pixels
+                List<ForkJoinTask<?>> areas = new ArrayList<>();
+                for (int x = cX; x < cX + 32; x += SPLIT_SIZE) {
+                    for (int z = cZ; z < cZ + 32; z += SPLIT_SIZE) {
+                        int minX = x, minZ = z;
+                        areas.add(ForkJoinTask.adapt(() -> scanArea(region, splittable, minX, minZ, minX + SPLIT_SIZE, minZ + SPLIT_SIZE)));
+                    }
+                }
+                ForkJoinTask.invokeAll(areas);
+            } else {
+                scanArea(region, splittable, cX, cZ, cX + 32, cZ + 32);
+            }
+        }
+
+        RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+        for (Renderer renderer : whole) {
+            checkpoint();
+            RenderStageEvent scan = profiler.start(RenderProfiler.Stage.SCAN, renderer.getKey());
             renderer.scanData(region);
+            profiler.stop(scan);
+        }
+
+        if (region.getLastModified() > 0) {
+            // hand our edges to the neighbors, so they do not have to decode our chunks
+            this.borderStrip = BorderStrip.create(region);
+            this.world.putBorderStrip(region.getX(), region.getZ(), this.borderStrip);
         }
         Pl3xMap.api().getRegionProcessor().getProgress().increment();
     }
 
+    private void scanArea(@NonNull Region region, @NonNull List<@NonNull Renderer> renderers, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        if (this.chunks == null) {
+            renderers.forEach(renderer -> scanChunks(renderer, region, minChunkX, minChunkZ, maxChunkX, maxChunkZ));
+            return;
+        }
+        // only the given chunks, unscanned pixels are left alone when the tiles are saved
+        for (int chunkX = minChunkX; chunkX < maxChunkX; chunkX++) {
+            for (int chunkZ = minChunkZ; chunkZ < maxChunkZ; chunkZ++) {
+                int index = Region.getChunkIndex(chunkX, chunkZ);
+                if ((this.chunks[index >> 6] & 1L << index) == 0) {
+                    continue;
+                }
+                int x = chunkX, z = chunkZ;
+                renderers.forEach(renderer -> scanChunks(renderer, region, x, z, x + 1, z + 1));
+            }
+        }
+    }
+
+    private void scanChunks(@NonNull Renderer renderer, @NonNull Region region, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ) {
+        RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+        RenderStageEvent scan = profiler.start(RenderProfiler.Stage.SCAN, renderer.getKey());
+        renderer.scanChunks(region, minChunkX, minChunkZ, maxChunkX, maxChunkZ);
+        profiler.stop(scan);
+    }
+
     private void saveImages() {
         for (Renderer renderer : this.renderers.values()) {
-            Pl3xMap.api().getRegionProcessor().checkPaused();
+            // no preempting half way through saving, only pause
+            Pl3xMap.api().getRegionProcessor().checkPaused(this.world);
             renderer.saveData(this.regionPos);
         }
-        // set region modified time
-        world.getRegionModifiedState().set(Mathf.asLong(this.regionPos), System.currentTimeMillis());
+        if (this.borderStrip != null) {
+            this.world.saveBorderStrip(this.regionPos.x(), this.regionPos.z(), this.borderStrip);
+        }
+    }
+
+    private record RegionFile(@NonNull Region region, byte @Nullable [] data) {
+    }
+
+    /**
+     * Thrown from {@link #checkpoint()} when the task was preempted.
+     */
+    public static class Preempted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public Preempted() {
+            super("Region render preempted", null, false, false);
+        }
     }
 }
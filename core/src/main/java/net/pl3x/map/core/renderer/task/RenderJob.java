@@ -0,0 +1,269 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.util.LongLongMap;
+import net.pl3x.map.core.util.Mathf;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A set of regions someone asked to render, kept on disk until all of them are rendered.
+ * <p>
+ * The job file holds the region set and is written once. Completed regions are appended
+ * to a checkpoint file next to it as they finish, so a restart only redoes the regions that
+ * were still in flight.
+ */
+public class RenderJob {
+    private static final int MAGIC = 0x524A4F01; // "RJO" version 1
+    private static final long PENDING = 0;
+    private static final long DONE = 1;
+
+    private final String id;
+    private final String world;
+    private final String source;
+    private final int priority;
+    private final long created;
+    private final LongLongMap regions; // <pos, state>
+    private final Path file;
+    private final Path checkpointFile;
+
+    private OutputStream checkpoint;
+    private int remaining;
+
+    private RenderJob(@NonNull Path dir, @NonNull String id, @NonNull String world, @NonNull String source, int priority, long created, int size) {
+        this.id = id;
+        this.world = world;
+        this.source = source;
+        this.priority = priority;
+        this.created = created;
+        this.regions = new LongLongMap(size);
+        this.file = dir.resolve(id + ".job");
+        this.checkpointFile = dir.resolve(id + ".done");
+    }
+
+    /**
+     * Create a new job and write it to disk.
+     *
+     * @param dir      jobs directory
+     * @param id       unique job id
+     * @param world    name of the world to render
+     * @param source   what started the job, for humans
+     * @param priority how many age steps the job's regions are ahead of other background regions
+     * @param regions  regions to render
+     * @return new job
+     * @throws IOException if the job could not be written
+     */
+    public static @NonNull RenderJob create(@NonNull Path dir, @NonNull String id, @NonNull String world, @NonNull String source, int priority, @NonNull Collection<@NonNull Point> regions) throws IOException {
+        RenderJob job = new RenderJob(dir, id, world, source, priority, System.currentTimeMillis(), regions.size());
+        for (Point region : regions) {
+            job.regions.put(Mathf.asLong(region), PENDING);
+        }
+        job.remaining = job.regions.size();
+
+        CRC32 crc = new CRC32();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new GZIPOutputStream(bytes), crc))) {
+            out.writeInt(MAGIC);
+            out.writeUTF(job.world);
+            out.writeUTF(job.source);
+            out.writeInt(job.priority);
+            out.writeLong(job.created);
+            out.writeInt(job.regions.size());
+            job.regions.forEach((pos, state) -> {
+                try {
+                    out.writeLong(pos);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.writeInt((int) crc.getValue());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        FileUtil.writeAtomic(bytes.toByteArray(), job.file);
+        return job;
+    }
+
+    /**
+     * Read a job and its checkpoints from disk.
+     *
+     * @param file job file
+     * @return job, or null if nothing is left to render
+     * @throws IOException if the job file could not be read or is corrupt
+     */
+    public static @Nullable RenderJob read(@NonNull Path file) throws IOException {
+        String name = file.getFileName().toString();
+        String id = name.substring(0, name.length() - ".job".length());
+
+        RenderJob job;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new GZIPInputStream(Files.newInputStream(file)), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a render job");
+            }
+            String world = in.readUTF();
+            String source = in.readUTF();
+            int priority = in.readInt();
+            long created = in.readLong();
+            int size = in.readInt();
+            job = new RenderJob(file.getParent(), id, world, source, priority, created, size);
+            for (int i = 0; i < size; i++) {
+                job.regions.put(in.readLong(), PENDING);
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Checksum mismatch");
+            }
+        }
+        job.remaining = job.regions.size();
+
+        if (Files.exists(job.checkpointFile)) {
+            // a torn last record just means that region renders again
+            ByteBuffer done = ByteBuffer.wrap(Files.readAllBytes(job.checkpointFile));
+            while (done.remaining() >= 8) {
+                job.markDone(done.getLong());
+            }
+        }
+        return job.remaining > 0 ? job : null;
+    }
+
+    public @NonNull String getId() {
+        return this.id;
+    }
+
+    public @NonNull String getWorld() {
+        return this.world;
+    }
+
+    public @NonNull String getSource() {
+        return this.source;
+    }
+
+    public int getPriority() {
+        return this.priority;
+    }
+
+    public long getCreated() {
+        return this.created;
+    }
+
+    public synchronized int getTotal() {
+        return this.regions.size();
+    }
+
+    public synchronized int getRemaining() {
+        return this.remaining;
+    }
+
+    public synchronized boolean contains(long region) {
+        return this.regions.get(region, DONE) == PENDING;
+    }
+
+    /**
+     * Get the regions still left to render.
+     *
+     * @return remaining regions
+     */
+    public synchronized @NonNull List<@NonNull Point> getRemainingRegions() {
+        List<Point> list = new ArrayList<>(this.remaining);
+        this.regions.forEach((pos, state) -> {
+            if (state == PENDING) {
+                list.add(Point.of(Mathf.longToX(pos), Mathf.longToZ(pos)));
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Mark a region as rendered and checkpoint it.
+     *
+     * @param region region position
+     * @return true if that was the last region of this job
+     * @throws IOException if the checkpoint could not be written
+     */
+    public synchronized boolean complete(long region) throws IOException {
+        if (!markDone(region)) {
+            return false;
+        }
+        if (this.checkpoint == null) {
+            this.checkpoint = new FileOutputStream(this.checkpointFile.toFile(), true);
+        }
+        this.checkpoint.write(ByteBuffer.allocate(8).putLong(region).array());
+        return this.remaining == 0;
+    }
+
+    /**
+     * Remove this job from disk.
+     */
+    public synchronized void delete() {
+        close();
+        try {
+            Files.deleteIfExists(this.checkpointFile);
+            Files.deleteIfExists(this.file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public synchronized void close() {
+        if (this.checkpoint == null) {
+            return;
+        }
+        try {
+            this.checkpoint.close();
+        } catch (IOException ignore) {
+        }
+        this.checkpoint = null;
+    }
+
+    private boolean markDone(long region) {
+        if (this.regions.get(region, DONE) != PENDING) {
+            return false;
+        }
+        this.regions.put(region, DONE);
+        this.remaining--;
+        return true;
+    }
+}
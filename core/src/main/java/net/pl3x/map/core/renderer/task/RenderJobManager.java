@@ -0,0 +1,217 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Keeps track of render jobs, and resumes unfinished ones after a restart.
+ */
+public class RenderJobManager {
+    private final List<@NonNull RenderJob> jobs = new CopyOnWriteArrayList<>();
+    private final AtomicInteger version = new AtomicInteger();
+
+    /**
+     * Load all unfinished jobs from disk.
+     * <p>
+     * Jobs are queued again once their world is initialized, see {@link #resume(World)}.
+     */
+    public void load() {
+        this.jobs.clear();
+        Path dir = getDirectory();
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.list(dir)) {
+            stream.filter(file -> file.getFileName().toString().endsWith(".job")).forEach(file -> {
+                try {
+                    RenderJob job = RenderJob.read(file);
+                    if (job == null) {
+                        Files.deleteIfExists(file);
+                        Files.deleteIfExists(file.resolveSibling(file.getFileName().toString().replace(".job", ".done")));
+                        return;
+                    }
+                    this.jobs.add(job);
+                } catch (IOException e) {
+                    Logger.warn("Skipping unreadable render job " + file, e);
+                }
+            });
+        } catch (IOException e) {
+            Logger.warn("Failed to list render jobs in " + dir, e);
+        }
+    }
+
+    /**
+     * Close all open checkpoint files. Jobs stay on disk.
+     */
+    public void unload() {
+        this.jobs.forEach(RenderJob::close);
+        this.jobs.clear();
+    }
+
+    /**
+     * Queue the remaining regions of all unfinished jobs of a world.
+     *
+     * @param world world that was initialized
+     */
+    public void resume(@NonNull World world) {
+        for (RenderJob job : this.jobs) {
+            if (job.getWorld().equals(world.getName())) {
+                Logger.info("Resuming render job " + job.getId() + " (" + job.getSource() + ") for " + world.getName()
+                        + ", " + job.getRemaining() + " of " + job.getTotal() + " regions left");
+                Pl3xMap.api().getRegionProcessor().addRegions(world, job.getRemainingRegions());
+            }
+        }
+    }
+
+    /**
+     * Create a job, write it to disk and queue its regions.
+     *
+     * @param world    world to render
+     * @param source   what started the job, for humans
+     * @param priority how many age steps the job's regions are ahead of other background regions
+     * @param regions  regions to render
+     */
+    public void submit(@NonNull World world, @NonNull String source, int priority, @NonNull Collection<@NonNull Point> regions) {
+        if (regions.isEmpty()) {
+            return;
+        }
+        try {
+            String id = UUID.randomUUID().toString().substring(0, 8);
+            this.jobs.add(RenderJob.create(getDirectory(), id, world.getName(), source, priority, regions));
+            this.version.incrementAndGet();
+        } catch (IOException e) {
+            // still render, it just will not survive a restart
+            Logger.warn("Failed to save render job for " + world.getName(), e);
+        }
+        Pl3xMap.api().getRegionProcessor().addRegions(world, regions);
+    }
+
+    /**
+     * Checkpoint a rendered region in every job that contains it.
+     *
+     * @param world  world the region is in
+     * @param region rendered region
+     */
+    public void complete(@NonNull World world, @NonNull Point region) {
+        checkpoint(world, region, false);
+    }
+
+    /**
+     * Give up on a region that keeps failing to render in every job that contains it,
+     * so the jobs can still finish. Its region modified state is not touched,
+     * so the next check of the region files picks it up again.
+     *
+     * @param world  world the region is in
+     * @param region failed region
+     */
+    public void skip(@NonNull World world, @NonNull Point region) {
+        checkpoint(world, region, true);
+    }
+
+    private void checkpoint(@NonNull World world, @NonNull Point region, boolean failed) {
+        long pos = Mathf.asLong(region);
+        for (RenderJob job : this.jobs) {
+            if (!job.getWorld().equals(world.getName())) {
+                continue;
+            }
+            try {
+                if (failed && job.contains(pos)) {
+                    Logger.warn("Render job " + job.getId() + " skips region " + region.x() + "," + region.z() + ", it failed to render");
+                }
+                if (job.complete(pos)) {
+                    Logger.info("Finished render job " + job.getId() + " (" + job.getSource() + ") for " + world.getName());
+                    this.jobs.remove(job);
+                    job.delete();
+                }
+            } catch (IOException e) {
+                Logger.warn("Failed to checkpoint render job " + job.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Drop all jobs of a world.
+     *
+     * @param world world to drop jobs for
+     */
+    public void cancel(@NonNull World world) {
+        for (RenderJob job : this.jobs) {
+            if (job.getWorld().equals(world.getName())) {
+                this.jobs.remove(job);
+                job.delete();
+                this.version.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get the highest priority of the jobs containing a region.
+     *
+     * @param world  world the region is in
+     * @param region region position
+     * @return highest priority, or 0 if no job contains the region
+     */
+    public int getPriority(@NonNull World world, long region) {
+        int priority = 0;
+        for (RenderJob job : this.jobs) {
+            if (job.getPriority() > priority && job.getWorld().equals(world.getName()) && job.contains(region)) {
+                priority = job.getPriority();
+            }
+        }
+        return priority;
+    }
+
+    /**
+     * Get a number that changes whenever jobs were submitted or cancelled, and priorities may have changed.
+     *
+     * @return jobs version
+     */
+    public int getVersion() {
+        return this.version.get();
+    }
+
+    public @NonNull List<@NonNull RenderJob> getJobs() {
+        return new ArrayList<>(this.jobs);
+    }
+
+    private static @NonNull Path getDirectory() {
+        return Pl3xMap.api().getMainDir().resolve("jobs");
+    }
+}
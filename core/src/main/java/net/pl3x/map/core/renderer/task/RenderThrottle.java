@@ -0,0 +1,321 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.task;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.scheduler.Task;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Adapts how much cpu renders use to how the server is doing.
+ * <p>
+ * Once a second the server's mspt (see {@link Pl3xMap#getMspt()}) is compared to the configured
+ * target. Above the target the share of the render threads renders may use is halved, and above
+ * the pause mark renders stop altogether. Only after the mspt stayed below the target minus the
+ * hysteresis for a while is the share raised again, one step at a time.
+ * <p>
+ * The share is enforced by render threads sleeping at every chunk checkpoint in proportion to the
+ * time they were busy since the last one (see {@link #pace()}), so a share of 0.5 uses about half
+ * of the render threads' cpu time. Fewer regions are let in flight as well. When the process runs
+ * with a cpu quota (cgroups), the share never goes above half of that quota.
+ */
+public class RenderThrottle {
+    // smallest share before pausing
+    private static final double MIN_SHARE = 1D / 16D;
+    // share added per step while the server has room
+    private static final double GROW_STEP = 1D / 8D;
+    // seconds to hold after shrinking, the server's mspt is an average and lags behind
+    private static final int SHRINK_COOLDOWN = 5;
+    // time between checkpoints (nanos) above which a thread is considered to have been idle
+    private static final long MAX_BUSY = TimeUnit.MILLISECONDS.toNanos(250);
+    // longest a thread sleeps at one checkpoint (nanos)
+    private static final long MAX_SLEEP = TimeUnit.SECONDS.toNanos(1);
+
+    private final ThreadLocal<long[]> lastCheckpoint = ThreadLocal.withInitial(() -> new long[1]);
+
+    private volatile double share = 1D;
+    private volatile double maxShare = 1D;
+    private volatile double mspt = -1D;
+    private volatile State state = State.FULL;
+
+    private int calm;
+    private int cooldown;
+
+    private volatile long shrinks;
+    private volatile long grows;
+    private volatile long pauses;
+    private final LongAdder sleptNanos = new LongAdder();
+
+    /**
+     * Reset and start sampling the server's mspt.
+     */
+    public void start() {
+        double quota = readCpuQuota();
+        int threads = getRenderThreads();
+        // leave at least half of the quota to the server, like render-threads does with cpu-threads
+        this.maxShare = quota > 0 ? Math.min(1D, Math.max(MIN_SHARE, quota / 2D / threads)) : 1D;
+        if (quota > 0) {
+            Logger.debug("Cpu quota of " + String.format("%.2f", quota) + " cpus, renders use at most " + String.format("%.0f", this.maxShare * 100D) + "% of " + threads + " render threads");
+        }
+        this.share = this.maxShare;
+        this.state = State.FULL;
+        this.calm = 0;
+        this.cooldown = 0;
+        this.mspt = -1D;
+        Pl3xMap.api().getScheduler().addTask(new Sampler());
+    }
+
+    /**
+     * Stop throttling, waking up any parked render threads.
+     */
+    public void stop() {
+        this.share = this.maxShare;
+        this.state = State.FULL;
+    }
+
+    /**
+     * Get the share of the render threads renders may use right now.
+     *
+     * @return share between 0 (paused) and 1
+     */
+    public double getShare() {
+        return this.share;
+    }
+
+    public double getMaxShare() {
+        return this.maxShare;
+    }
+
+    /**
+     * Get the server's mspt as last sampled.
+     *
+     * @return mspt, or -1 if the platform does not report it
+     */
+    public double getMspt() {
+        return this.mspt;
+    }
+
+    public @NonNull State getState() {
+        return this.state;
+    }
+
+    public long getShrinks() {
+        return this.shrinks;
+    }
+
+    public long getGrows() {
+        return this.grows;
+    }
+
+    public long getPauses() {
+        return this.pauses;
+    }
+
+    /**
+     * Get the total time render threads slept to stay within their share.
+     *
+     * @return slept time in milliseconds
+     */
+    public long getSleptMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.sleptNanos.sum());
+    }
+
+    /**
+     * Get the process' recent cpu load, for metrics.
+     *
+     * @return cpu load between 0 and 1, or -1 if not available
+     */
+    public double getProcessCpuLoad() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        return os instanceof com.sun.management.OperatingSystemMXBean sun ? sun.getProcessCpuLoad() : -1D;
+    }
+
+    /**
+     * Get how many regions may be in flight with the current share.
+     *
+     * @param max regions in flight at full share
+     * @return regions allowed in flight, 0 while paused
+     */
+    public int limitInFlight(int max) {
+        double share = this.share;
+        return share <= 0 ? 0 : Math.max(1, (int) Math.ceil(max * share));
+    }
+
+    /**
+     * Sleep long enough to keep the calling render thread within the current share,
+     * or park while renders are paused by the throttle.
+     * <p>
+     * Call this once per chunk from render threads.
+     */
+    public void pace() {
+        long[] last = this.lastCheckpoint.get();
+        long now = System.nanoTime();
+        double share = this.share;
+        if (share <= 0) {
+            while (this.share <= 0) {
+                LockSupport.parkNanos(this, MAX_SLEEP);
+                if (Thread.interrupted()) {
+                    // render executor is shutting down, abandon this render
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("Interrupted while throttled");
+                }
+            }
+            last[0] = System.nanoTime();
+            return;
+        }
+        long busy = now - last[0];
+        if (share < 1D && last[0] > 0 && busy < MAX_BUSY) {
+            // busy for share of the time, asleep for the rest
+            long sleep = Math.min(MAX_SLEEP, (long) (busy * (1D / share - 1D)));
+            LockSupport.parkNanos(this, sleep);
+            long slept = System.nanoTime() - now;
+            this.sleptNanos.add(slept);
+            now += slept;
+        }
+        last[0] = now;
+    }
+
+    private void sample() {
+        double mspt = Config.RENDER_THROTTLE_ENABLED ? Pl3xMap.api().getMspt() : -1D;
+        this.mspt = mspt;
+        if (mspt < 0) {
+            set(this.maxShare, State.FULL);
+            return;
+        }
+
+        double target = Config.RENDER_THROTTLE_TARGET_MSPT;
+        double low = target * (1D - Math.max(0D, Math.min(0.9D, Config.RENDER_THROTTLE_HYSTERESIS)));
+        if (this.cooldown > 0) {
+            this.cooldown--;
+        }
+
+        if (mspt >= Config.RENDER_THROTTLE_PAUSE_MSPT) {
+            this.calm = 0;
+            if (this.state != State.PAUSED) {
+                this.pauses++;
+                this.cooldown = SHRINK_COOLDOWN;
+                set(0D, State.PAUSED);
+            }
+        } else if (mspt > target) {
+            this.calm = 0;
+            if (this.state != State.PAUSED && this.cooldown == 0) {
+                this.shrinks++;
+                this.cooldown = SHRINK_COOLDOWN;
+                set(Math.max(MIN_SHARE, this.share / 2D), State.THROTTLED);
+            }
+        } else if (mspt < low) {
+            if (++this.calm >= Math.max(1, Config.RENDER_THROTTLE_GROW_DELAY) && this.share < this.maxShare) {
+                this.calm = 0;
+                this.grows++;
+                double share = Math.min(this.maxShare, this.share + GROW_STEP * this.maxShare);
+                set(share, share >= this.maxShare ? State.FULL : State.THROTTLED);
+            }
+        } else {
+            // between the marks, hold
+            this.calm = 0;
+        }
+    }
+
+    private void set(double share, @NonNull State state) {
+        if (share == this.share && state == this.state) {
+            return;
+        }
+        this.share = share;
+        if (state != this.state) {
+            Logger.debug("Render throttle " + this.state + " -> " + state + " at " + String.format("%.1f", this.mspt) + " mspt, share " + String.format("%.2f", share));
+        }
+        this.state = state;
+        if (share > 0) {
+            // maybe more room, let the processor fill it
+            Pl3xMap.api().getRegionProcessor().signal();
+        }
+    }
+
+    private static int getRenderThreads() {
+        ExecutorService executor = Pl3xMap.api().getRenderExecutor();
+        return executor instanceof ForkJoinPool pool ? pool.getParallelism() : Math.max(1, Config.RENDER_THREADS);
+    }
+
+    /**
+     * Read the cpu quota of the process from cgroups (v2, then v1).
+     *
+     * @return number of cpus the process may use, or -1 if not limited
+     */
+    private static double readCpuQuota() {
+        try {
+            Path v2 = Path.of("/sys/fs/cgroup/cpu.max");
+            if (Files.isReadable(v2)) {
+                // "<quota|max> <period>"
+                List<String> max = List.of(Files.readString(v2).trim().split(" "));
+                if (max.size() == 2 && !max.get(0).equals("max")) {
+                    return Double.parseDouble(max.get(0)) / Double.parseDouble(max.get(1));
+                }
+                return -1D;
+            }
+            Path quota = Path.of("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+            Path period = Path.of("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+            if (Files.isReadable(quota) && Files.isReadable(period)) {
+                double q = Double.parseDouble(Files.readString(quota).trim());
+                double p = Double.parseDouble(Files.readString(period).trim());
+                return q > 0 && p > 0 ? q / p : -1D;
+            }
+        } catch (IOException | NumberFormatException e) {
+            Logger.debug("Could not read cpu quota: " + e.getMessage());
+        }
+        return -1D;
+    }
+
+    public enum State {
+        FULL, THROTTLED, PAUSED
+    }
+
+    private class Sampler extends Task {
+        private Sampler() {
+            super(1, true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                sample();
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+        }
+    }
+}
@@ -33,11 +33,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.httpd.SnapshotStore;
 import net.pl3x.map.core.markers.JsonObjectWrapper;
 import net.pl3x.map.core.markers.layer.Layer;
 import net.pl3x.map.core.markers.marker.Marker;
 import net.pl3x.map.core.scheduler.Task;
-import net.pl3x.map.core.util.FileUtil;
 import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -68,6 +69,7 @@ public class UpdateMarkerData extends Task {
     }
 
     private void parseLayers() {
+        SnapshotStore snapshots = Pl3xMap.api().getHttpdServer().getSnapshotStore();
         List<Object> layers = new ArrayList<>();
 
         this.world.getLayerRegistry().entrySet().forEach(entry -> {
@@ -81,7 +83,7 @@ public class UpdateMarkerData extends Task {
 
                 if (now - lastUpdate > layer.getUpdateInterval()) {
                     List<Marker<?>> list = new ArrayList<>(layer.getMarkers());
-                    FileUtil.write(this.gson.toJson(list), this.world.getMarkersDirectory().resolve(key.replace(":", "-") + ".json"));
+                    snapshots.put(this.world.getMarkersDirectory().resolve(key.replace(":", "-") + ".json"), this.gson.toJson(list));
                     this.lastUpdated.put(key, now);
                 }
             } catch (Throwable t) {
@@ -89,7 +91,7 @@ public class UpdateMarkerData extends Task {
             }
         });
 
-        FileUtil.write(this.gson.toJson(layers), this.world.getTilesDirectory().resolve("markers.json"));
+        snapshots.put(this.world.getTilesDirectory().resolve("markers.json"), this.gson.toJson(layers));
     }
 
     private static class Adapter implements JsonSerializer<@NonNull Marker<@NonNull ?>> {
@@ -36,6 +36,7 @@ import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.configuration.Lang;
 import net.pl3x.map.core.configuration.PlayerTracker;
 import net.pl3x.map.core.configuration.WorldConfig;
+import net.pl3x.map.core.httpd.SnapshotStore;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.scheduler.Task;
 import net.pl3x.map.core.util.FileUtil;
@@ -94,6 +95,7 @@ public class UpdateSettingsData extends Task {
     }
 
     private @NonNull List<@NonNull Map<@NonNull String, @NonNull Object>> parseWorlds() {
+        SnapshotStore snapshots = Pl3xMap.api().getHttpdServer().getSnapshotStore();
         List<Map<String, Object>> worldSettings = new ArrayList<>();
         Pl3xMap.api().getWorldRegistry().entrySet().forEach(entry -> {
             World world = entry.getValue();
@@ -126,7 +128,7 @@ public class UpdateSettingsData extends Task {
             settings.put("zoom", zoom);
             settings.put("ui", ui);
 
-            FileUtil.write(this.gson.toJson(settings), world.getTilesDirectory().resolve("settings.json"));
+            snapshots.put(world.getTilesDirectory().resolve("settings.json"), this.gson.toJson(settings));
 
             List<Object> renderers = new ArrayList<>();
             world.getRenderers().forEach((rendererKey, builder) -> {
@@ -174,6 +176,6 @@ public class UpdateSettingsData extends Task {
             t.printStackTrace();
         }
 
-        FileUtil.write(this.gson.toJson(map), FileUtil.getTilesDir().resolve("settings.json"));
+        Pl3xMap.api().getHttpdServer().getSnapshotStore().put(FileUtil.getTilesDir().resolve("settings.json"), this.gson.toJson(map));
     }
 }
@@ -0,0 +1,197 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.worker;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.renderer.task.RegionScanTask;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * The render worker process. Renders the regions the server hands it and reports back.
+ * <p>
+ * The worker connects to the server over loopback, and exits once that connection is gone.
+ */
+public class RenderWorker {
+    static final int PROTOCOL = 1;
+
+    // server -> worker
+    static final byte SETUP = 1;
+    static final byte TICKET = 2;
+    static final byte SHUTDOWN = 3;
+
+    // worker -> server
+    static final byte HELLO = 10;
+    static final byte DONE = 11;
+    static final byte TILE = 12;
+
+    private final WorkerPl3xMap api;
+    private final DataOutputStream out;
+
+    private RenderWorker(@NonNull WorkerPl3xMap api, @NonNull DataOutputStream out) {
+        this.api = api;
+        this.out = out;
+    }
+
+    /**
+     * Run a render worker until the server goes away.
+     *
+     * @param port    loopback port the server listens on
+     * @param token   token the server expects back
+     * @param mainDir the server's Pl3xMap directory
+     * @throws IOException if talking to the server failed
+     */
+    public static void run(int port, @NonNull String token, @NonNull Path mainDir) throws IOException {
+        WorkerPl3xMap api = new WorkerPl3xMap(mainDir);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(PROTOCOL);
+            out.writeUTF(token);
+            out.flush();
+
+            RenderWorker worker = new RenderWorker(api, out);
+            api.getHttpdServer().setTileListener(worker::tile);
+            worker.loop(in);
+        } finally {
+            if (api.getRenderExecutor() != null) {
+                api.shutdown();
+            }
+        }
+    }
+
+    private void loop(@NonNull DataInputStream in) throws IOException {
+        boolean ready = false;
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                Logger.info("Server closed the connection, stopping render worker");
+                return;
+            }
+            switch (type) {
+                case SETUP -> {
+                    this.api.setup(WorkerManifest.read(in));
+                    if (!ready) {
+                        ready = true;
+                        hello();
+                    }
+                }
+                case TICKET -> {
+                    long id = in.readLong();
+                    String name = in.readUTF();
+                    int regionX = in.readInt();
+                    int regionZ = in.readInt();
+                    int length = in.readInt();
+                    long[] chunks = null;
+                    if (length >= 0) {
+                        chunks = new long[length];
+                        for (int i = 0; i < chunks.length; i++) {
+                            chunks[i] = in.readLong();
+                        }
+                    }
+                    render(id, name, Point.of(regionX, regionZ), chunks);
+                }
+                case SHUTDOWN -> {
+                    Logger.info("Server asked to stop render worker");
+                    return;
+                }
+                default -> throw new IOException("Unknown message type " + type);
+            }
+        }
+    }
+
+    private void render(long id, @NonNull String name, @NonNull Point region, long @Nullable [] chunks) {
+        World world = this.api.getWorldRegistry().get(name);
+        if (world == null || !world.isEnabled()) {
+            Logger.warn("Render worker does not know world " + name);
+            done(id, false);
+            return;
+        }
+        new RegionScanTask(world, region, chunks)
+                .pipeline(this.api.getIOExecutor(), this.api.getRenderExecutor())
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        throwable.printStackTrace();
+                    }
+                    done(id, throwable == null);
+                });
+    }
+
+    private void hello() {
+        // same as the region processor keeps in flight, every render thread busy plus one being read or written
+        ExecutorService renderExecutor = this.api.getRenderExecutor();
+        int threads = renderExecutor instanceof ForkJoinPool pool ? pool.getParallelism() : 1;
+        synchronized (this.out) {
+            try {
+                this.out.writeByte(HELLO);
+                this.out.writeInt(Math.max(1, threads) * 2);
+                this.out.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void done(long id, boolean ok) {
+        synchronized (this.out) {
+            try {
+                this.out.writeByte(DONE);
+                this.out.writeLong(id);
+                this.out.writeBoolean(ok);
+                this.out.flush();
+            } catch (IOException e) {
+                // the server is gone, the main loop notices
+                Logger.debug("Failed to report region to server: " + e.getMessage());
+            }
+        }
+    }
+
+    private void tile(@NonNull Path path) {
+        synchronized (this.out) {
+            try {
+                this.out.writeByte(TILE);
+                this.out.writeUTF(path.toAbsolutePath().toString());
+                // flushed with the region it belongs to
+            } catch (IOException e) {
+                Logger.debug("Failed to report tile to server: " + e.getMessage());
+            }
+        }
+    }
+}
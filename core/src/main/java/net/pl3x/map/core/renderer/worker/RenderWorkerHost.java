@@ -0,0 +1,419 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.worker;
+
+import com.google.gson.Gson;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import net.kyori.adventure.audience.Audience;
+import net.kyori.adventure.platform.AudienceProvider;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.renderer.task.RegionScanTask;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Runs a render worker process next to the server and hands it regions to render.
+ * <p>
+ * The worker is restarted with a growing delay when it dies. Regions it was rendering
+ * are queued again. After too many failed starts in a row rendering falls back to the server.
+ */
+public class RenderWorkerHost {
+    private static final long CONNECT_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+    private static final long HEALTHY_AFTER = TimeUnit.MINUTES.toMillis(1);
+    private static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(1);
+    private static final int MAX_FAILURES = 5;
+
+    private final Map<@NonNull Long, @NonNull CompletableFuture<@Nullable Void>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong ids = new AtomicLong();
+
+    private volatile boolean running;
+    private volatile Session session;
+    private Thread thread;
+
+    /**
+     * Start the worker if enabled in the config.
+     */
+    public void start() {
+        if (!Config.RENDER_WORKER_ENABLED) {
+            return;
+        }
+        this.running = true;
+        this.thread = new Thread(this::supervise, "Pl3xMap-RenderWorker");
+        this.thread.setDaemon(true);
+        this.thread.setContextClassLoader(Pl3xMap.class.getClassLoader());
+        this.thread.start();
+    }
+
+    /**
+     * Stop the worker. Regions it was rendering are queued again.
+     */
+    public void stop() {
+        this.running = false;
+        Session session = this.session;
+        if (session != null) {
+            session.shutdown();
+        }
+        if (this.thread != null) {
+            this.thread.interrupt();
+            try {
+                this.thread.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.thread = null;
+        }
+        failPending();
+    }
+
+    /**
+     * Whether regions are rendered by the worker, even if it is restarting right now.
+     *
+     * @return true if regions go to the worker
+     */
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    /**
+     * Get how many regions the worker wants in flight.
+     *
+     * @return regions in flight, or 0 if no worker is connected
+     */
+    public int getCapacity() {
+        Session session = this.session;
+        return session == null ? 0 : session.capacity;
+    }
+
+    public int getPending() {
+        return this.pending.size();
+    }
+
+    /**
+     * Hand a region to the worker.
+     *
+     * @param world  world the region is in
+     * @param region region to render
+     * @param chunks chunks to render, or null for the whole region
+     * @return future completing once the worker rendered the region, or null if no worker is connected
+     */
+    public @Nullable CompletableFuture<@Nullable Void> submit(@NonNull World world, @NonNull Point region, long @Nullable [] chunks) {
+        Session session = this.session;
+        if (session == null) {
+            return null;
+        }
+        long id = this.ids.incrementAndGet();
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        this.pending.put(id, future);
+        try {
+            session.ticket(id, world, region, chunks);
+        } catch (IOException e) {
+            // the read loop notices the worker is gone, render this one here
+            this.pending.remove(id);
+            return null;
+        }
+        return future;
+    }
+
+    private void supervise() {
+        int failures = 0;
+        long backoff = MIN_BACKOFF;
+        while (this.running) {
+            long started = System.currentTimeMillis();
+            try {
+                runSession();
+            } catch (IOException e) {
+                if (this.running) {
+                    Logger.warn("Render worker stopped: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable t) {
+                Logger.warn("Render worker stopped", t);
+            }
+            failPending();
+            if (!this.running) {
+                break;
+            }
+
+            if (System.currentTimeMillis() - started > HEALTHY_AFTER) {
+                failures = 0;
+                backoff = MIN_BACKOFF;
+            } else if (++failures >= MAX_FAILURES) {
+                Logger.warn("Render worker failed " + failures + " times in a row, rendering inside the server instead");
+                this.running = false;
+                Pl3xMap.api().getRegionProcessor().signal();
+                break;
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+    }
+
+    private void runSession() throws IOException, InterruptedException {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            String token = UUID.randomUUID().toString();
+            Process process = launch(server.getLocalPort(), token);
+            try {
+                Socket socket = accept(server, process);
+                try (socket) {
+                    socket.setTcpNoDelay(true);
+                    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                    if (in.readInt() != RenderWorker.PROTOCOL || !token.equals(in.readUTF())) {
+                        throw new IOException("Render worker did not identify itself");
+                    }
+
+                    Session session = new Session(socket, out);
+                    session.setup(Pl3xMap.api().getWorldRegistry().values());
+                    if (in.readByte() != RenderWorker.HELLO) {
+                        throw new IOException("Render worker did not say hello");
+                    }
+                    session.capacity = Math.max(1, in.readInt());
+                    this.session = session;
+                    Logger.info("Render worker started, rendering " + session.capacity + " regions at a time");
+                    Pl3xMap.api().getRegionProcessor().signal();
+
+                    read(in);
+                } finally {
+                    this.session = null;
+                }
+            } finally {
+                process.destroy();
+                if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+    }
+
+    private @NonNull Socket accept(@NonNull ServerSocket server, @NonNull Process process) throws IOException {
+        server.setSoTimeout(1000);
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT;
+        while (this.running) {
+            try {
+                return server.accept();
+            } catch (SocketTimeoutException e) {
+                if (!process.isAlive()) {
+                    throw new IOException("Render worker exited with code " + process.exitValue() + ", see " + getLogFile());
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("Render worker did not connect in time, see " + getLogFile());
+                }
+            }
+        }
+        throw new IOException("Stopped");
+    }
+
+    private void read(@NonNull DataInputStream in) throws IOException {
+        while (true) {
+            byte type;
+            try {
+                type = in.readByte();
+            } catch (EOFException e) {
+                throw new IOException("Render worker exited, see " + getLogFile());
+            }
+            switch (type) {
+                case RenderWorker.DONE -> {
+                    long id = in.readLong();
+                    boolean ok = in.readBoolean();
+                    CompletableFuture<Void> future = this.pending.remove(id);
+                    if (future == null) {
+                        continue;
+                    }
+                    if (ok) {
+                        future.complete(null);
+                    } else {
+                        future.completeExceptionally(new CompletionException(new IOException("Render worker failed to render region, see " + getLogFile())));
+                    }
+                }
+                case RenderWorker.TILE -> Pl3xMap.api().getHttpdServer().invalidateTile(Path.of(in.readUTF()));
+                default -> throw new IOException("Unknown message type " + type);
+            }
+        }
+    }
+
+    private void failPending() {
+        // hand them back to the region processor to be queued again
+        for (Long id : new ArrayList<>(this.pending.keySet())) {
+            CompletableFuture<Void> future = this.pending.remove(id);
+            if (future != null) {
+                future.completeExceptionally(new CompletionException(new RegionScanTask.Preempted()));
+            }
+        }
+    }
+
+    private @NonNull Process launch(int port, @NonNull String token) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(ProcessHandle.current().info().command()
+                .orElse(Path.of(System.getProperty("java.home"), "bin", "java").toString()));
+        for (String arg : Config.RENDER_WORKER_JVM_ARGS.trim().split("\\s+")) {
+            if (!arg.isEmpty()) {
+                command.add(arg);
+            }
+        }
+        command.add("-cp");
+        command.add(getClasspath());
+        command.add(Pl3xMap.class.getName());
+        command.add("--worker");
+        command.add(Integer.toString(port));
+        command.add(token);
+        command.add(Pl3xMap.api().getMainDir().toAbsolutePath().toString());
+
+        Path log = getLogFile();
+        Files.createDirectories(log.getParent());
+        Logger.debug("Starting render worker: " + String.join(" ", command));
+        return new ProcessBuilder(command)
+                .directory(Pl3xMap.api().getMainDir().toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.appendTo(log.toFile()))
+                .start();
+    }
+
+    private static @NonNull String getClasspath() {
+        // our jar, plus the libraries the server provides instead of us
+        Set<String> paths = new LinkedHashSet<>();
+        paths.add(Pl3xMap.api().getJarPath().toAbsolutePath().toString());
+        for (Class<?> clazz : new Class<?>[]{
+                Gson.class,
+                org.apache.logging.log4j.LogManager.class,
+                org.apache.logging.log4j.core.Logger.class,
+                Audience.class,
+                AudienceProvider.class,
+                MiniMessage.class,
+                PlainTextComponentSerializer.class
+        }) {
+            try {
+                CodeSource source = clazz.getProtectionDomain().getCodeSource();
+                URL location = source == null ? null : source.getLocation();
+                if (location != null && "file".equals(location.getProtocol())) {
+                    paths.add(Path.of(location.toURI()).toAbsolutePath().toString());
+                }
+            } catch (Exception ignore) {
+            }
+        }
+        return String.join(File.pathSeparator, paths);
+    }
+
+    private static @NonNull Path getLogFile() {
+        return Pl3xMap.api().getMainDir().resolve("logs").resolve("render-worker.log");
+    }
+
+    /**
+     * A connected worker.
+     */
+    private static class Session {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final Set<@NonNull String> sentWorlds = ConcurrentHashMap.newKeySet();
+        private volatile int capacity;
+
+        private Session(@NonNull Socket socket, @NonNull DataOutputStream out) {
+            this.socket = socket;
+            this.out = out;
+        }
+
+        private void setup(@NonNull Collection<@NonNull World> worlds) throws IOException {
+            List<World> enabled = worlds.stream().filter(World::isEnabled).toList();
+            synchronized (this.out) {
+                this.out.writeByte(RenderWorker.SETUP);
+                WorkerManifest.of(enabled).write(this.out);
+                this.out.flush();
+                enabled.forEach(world -> this.sentWorlds.add(world.getName()));
+            }
+        }
+
+        private void ticket(long id, @NonNull World world, @NonNull Point region, long @Nullable [] chunks) throws IOException {
+            if (!this.sentWorlds.contains(world.getName())) {
+                // loaded after the worker started
+                setup(List.of(world));
+            }
+            synchronized (this.out) {
+                this.out.writeByte(RenderWorker.TICKET);
+                this.out.writeLong(id);
+                this.out.writeUTF(world.getName());
+                this.out.writeInt(region.x());
+                this.out.writeInt(region.z());
+                this.out.writeInt(chunks == null ? -1 : chunks.length);
+                if (chunks != null) {
+                    for (long chunk : chunks) {
+                        this.out.writeLong(chunk);
+                    }
+                }
+                this.out.flush();
+            }
+        }
+
+        private void shutdown() {
+            synchronized (this.out) {
+                try {
+                    this.out.writeByte(RenderWorker.SHUTDOWN);
+                    this.out.flush();
+                } catch (IOException ignore) {
+                }
+            }
+            try {
+                this.socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.worker;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.world.Biome;
+import net.pl3x.map.core.world.Block;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Everything a render worker needs to know about the server that is not on disk.
+ * <p>
+ * Block and biome indices are sent along, so the worker maps the same data to the same colors.
+ */
+public record WorkerManifest(@NonNull String version, int @NonNull [] powerColors, @NonNull List<@NonNull BlockInfo> blocks, @NonNull List<@NonNull WorldInfo> worlds) {
+    // grass modifiers are server code, only their kind is sent
+    static final byte GRASS_NONE = 0;
+    static final byte GRASS_DARK_FOREST = 1;
+    static final byte GRASS_SWAMP = 2;
+
+    /**
+     * Describe the running server and some of its worlds.
+     *
+     * @param worlds worlds to describe
+     * @return new manifest
+     */
+    public static @NonNull WorkerManifest of(@NonNull Collection<@NonNull World> worlds) {
+        Pl3xMap api = Pl3xMap.api();
+        int[] powerColors = new int[16];
+        for (int power = 0; power < powerColors.length; power++) {
+            powerColors[power] = api.getColorForPower((byte) power);
+        }
+        List<BlockInfo> blocks = new ArrayList<>();
+        api.getBlockRegistry().values().stream()
+                .sorted(Comparator.comparingInt(Block::getIndex))
+                .forEach(block -> blocks.add(new BlockInfo(block.getIndex(), block.getKey(), block.color())));
+        List<WorldInfo> infos = new ArrayList<>();
+        for (World world : worlds) {
+            List<BiomeInfo> biomes = new ArrayList<>();
+            world.getBiomeRegistry().values().stream()
+                    .sorted(Comparator.comparingInt(Biome::index))
+                    .forEach(biome -> biomes.add(new BiomeInfo(biome.index(), biome.getKey(), biome.color(),
+                            biome.foliage(), biome.grass(), biome.water(), grassModifier(biome))));
+            infos.add(new WorldInfo(world.getName(), world.getSeed(), world.getSpawn().x(), world.getSpawn().z(),
+                    world.getType(), world.getRegionDirectory().toAbsolutePath().toString(), world.hasCeiling(),
+                    world.getMinBuildHeight(), world.getMaxBuildHeight(), world.getLogicalHeight(),
+                    world.getBorderMinX(), world.getBorderMinZ(), world.getBorderMaxX(), world.getBorderMaxZ(), biomes));
+        }
+        return new WorkerManifest(api.getVersion(), powerColors, blocks, infos);
+    }
+
+    public static @NonNull WorkerManifest read(@NonNull DataInput in) throws IOException {
+        String version = in.readUTF();
+        int[] powerColors = new int[16];
+        for (int i = 0; i < powerColors.length; i++) {
+            powerColors[i] = in.readInt();
+        }
+        int blockCount = in.readInt();
+        List<BlockInfo> blocks = new ArrayList<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            blocks.add(new BlockInfo(in.readInt(), in.readUTF(), in.readInt()));
+        }
+        int worldCount = in.readInt();
+        List<WorldInfo> worlds = new ArrayList<>(worldCount);
+        for (int i = 0; i < worldCount; i++) {
+            String name = in.readUTF();
+            long seed = in.readLong();
+            int spawnX = in.readInt();
+            int spawnZ = in.readInt();
+            World.Type type = World.Type.values()[in.readByte()];
+            String regionDirectory = in.readUTF();
+            boolean ceiling = in.readBoolean();
+            int minBuildHeight = in.readInt();
+            int maxBuildHeight = in.readInt();
+            int logicalHeight = in.readInt();
+            double borderMinX = in.readDouble();
+            double borderMinZ = in.readDouble();
+            double borderMaxX = in.readDouble();
+            double borderMaxZ = in.readDouble();
+            int biomeCount = in.readInt();
+            List<BiomeInfo> biomes = new ArrayList<>(biomeCount);
+            for (int j = 0; j < biomeCount; j++) {
+                biomes.add(new BiomeInfo(in.readInt(), in.readUTF(), in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readByte()));
+            }
+            worlds.add(new WorldInfo(name, seed, spawnX, spawnZ, type, regionDirectory, ceiling, minBuildHeight,
+                    maxBuildHeight, logicalHeight, borderMinX, borderMinZ, borderMaxX, borderMaxZ, biomes));
+        }
+        return new WorkerManifest(version, powerColors, blocks, worlds);
+    }
+
+    public void write(@NonNull DataOutput out) throws IOException {
+        out.writeUTF(this.version);
+        for (int color : this.powerColors) {
+            out.writeInt(color);
+        }
+        out.writeInt(this.blocks.size());
+        for (BlockInfo block : this.blocks) {
+            out.writeInt(block.index());
+            out.writeUTF(block.id());
+            out.writeInt(block.color());
+        }
+        out.writeInt(this.worlds.size());
+        for (WorldInfo world : this.worlds) {
+            out.writeUTF(world.name());
+            out.writeLong(world.seed());
+            out.writeInt(world.spawnX());
+            out.writeInt(world.spawnZ());
+            out.writeByte(world.type().ordinal());
+            out.writeUTF(world.regionDirectory());
+            out.writeBoolean(world.ceiling());
+            out.writeInt(world.minBuildHeight());
+            out.writeInt(world.maxBuildHeight());
+            out.writeInt(world.logicalHeight());
+            out.writeDouble(world.borderMinX());
+            out.writeDouble(world.borderMinZ());
+            out.writeDouble(world.borderMaxX());
+            out.writeDouble(world.borderMaxZ());
+            out.writeInt(world.biomes().size());
+            for (BiomeInfo biome : world.biomes()) {
+                out.writeInt(biome.index());
+                out.writeUTF(biome.id());
+                out.writeInt(biome.color());
+                out.writeInt(biome.foliage());
+                out.writeInt(biome.grass());
+                out.writeInt(biome.water());
+                out.writeByte(biome.grassModifier());
+            }
+        }
+    }
+
+    private static byte grassModifier(@NonNull Biome biome) {
+        // tell the vanilla modifiers apart by what they do to a probe color
+        int probe = 0x123456;
+        int modified = biome.grassModifier().modify(0, 0, probe);
+        if (modified == probe) {
+            return GRASS_NONE;
+        }
+        if (modified == ((probe & 0xFEFEFE) + 0x28340A) >> 1) {
+            return GRASS_DARK_FOREST;
+        }
+        return GRASS_SWAMP;
+    }
+
+    public record BlockInfo(int index, @NonNull String id, int color) {
+    }
+
+    public record BiomeInfo(int index, @NonNull String id, int color, int foliage, int grass, int water, byte grassModifier) {
+        /**
+         * Get a stand-in for the server's grass modifier.
+         *
+         * @return grass modifier
+         */
+        public Biome.@NonNull GrassModifier modifier() {
+            return switch (this.grassModifier) {
+                case GRASS_DARK_FOREST -> (x, z, color) -> ((color & 0xFEFEFE) + 0x28340A) >> 1;
+                // the server picks between two colors by noise, the worker has no noise, use the common one
+                case GRASS_SWAMP -> (x, z, color) -> 0x6A7039;
+                default -> (x, z, color) -> color;
+            };
+        }
+    }
+
+    public record WorldInfo(@NonNull String name, long seed, int spawnX, int spawnZ, World.@NonNull Type type,
+                            @NonNull String regionDirectory, boolean ceiling, int minBuildHeight, int maxBuildHeight,
+                            int logicalHeight, double borderMinX, double borderMinZ, double borderMaxX,
+                            double borderMaxZ, @NonNull List<@NonNull BiomeInfo> biomes) {
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.worker;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import net.kyori.adventure.platform.AudienceProvider;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.log.ConsoleAudienceProvider;
+import net.pl3x.map.core.world.Biome;
+import net.pl3x.map.core.world.Block;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Pl3xMap inside a render worker process, set up from a {@link WorkerManifest} instead of a running server.
+ */
+public class WorkerPl3xMap extends Pl3xMap {
+    private final Path mainDir;
+    private final AudienceProvider adventure = new ConsoleAudienceProvider();
+
+    private WorkerManifest manifest;
+
+    public WorkerPl3xMap(@NonNull Path mainDir) {
+        super();
+        this.mainDir = mainDir;
+    }
+
+    /**
+     * Apply a manifest from the server, setting up rendering the first time.
+     * <p>
+     * Later manifests only add what was not known yet, like worlds loaded after the worker started.
+     *
+     * @param manifest manifest to apply
+     */
+    public void setup(@NonNull WorkerManifest manifest) {
+        boolean first = this.manifest == null;
+        this.manifest = manifest;
+        if (first) {
+            enableRenderer();
+        } else {
+            loadBlocks();
+        }
+        loadWorlds();
+    }
+
+    /**
+     * Stop all render threads.
+     */
+    public void shutdown() {
+        getRenderExecutor().shutdownNow();
+        getIOExecutor().shutdownNow();
+        getRegionCache().stop();
+    }
+
+    @Override
+    public @NonNull String getPlatform() {
+        return "worker";
+    }
+
+    @Override
+    public @NonNull String getVersion() {
+        return this.manifest == null ? "unknown" : this.manifest.version();
+    }
+
+    @Override
+    public int getMaxPlayers() {
+        return 0;
+    }
+
+    @Override
+    public boolean getOnlineMode() {
+        return false;
+    }
+
+    @Override
+    public String getServerVersion() {
+        return getVersion();
+    }
+
+    @Override
+    public @NonNull AudienceProvider adventure() {
+        return this.adventure;
+    }
+
+    @Override
+    public @NonNull Path getMainDir() {
+        return this.mainDir;
+    }
+
+    @Override
+    public @NonNull Path getJarPath() {
+        try {
+            return Path.of(Pl3xMap.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public int getColorForPower(byte power) {
+        return this.manifest.powerColors()[power & 0xF];
+    }
+
+    @Override
+    public @Nullable Block getFlower(@NonNull World world, @NonNull Biome biome, int blockX, int blockY, int blockZ) {
+        // flower placement needs the server's world generation
+        return null;
+    }
+
+    @Override
+    protected void loadBlocks() {
+        // same indices as the server, tiles store them
+        for (WorkerManifest.BlockInfo block : this.manifest.blocks()) {
+            if (!getBlockRegistry().has(block.id())) {
+                getBlockRegistry().register(block.id(), new Block(block.index(), block.id(), block.color()));
+            }
+        }
+    }
+
+    @Override
+    protected void loadWorlds() {
+        for (WorkerManifest.WorldInfo info : this.manifest.worlds()) {
+            getWorldRegistry().getOrDefault(info.name(), () -> new WorkerWorld(info));
+        }
+    }
+
+    @Override
+    protected void loadPlayers() {
+        // players stay on the server
+    }
+
+    @Override
+    public @NonNull World cloneWorld(@NonNull World world) {
+        return new WorkerWorld(((WorkerWorld) world).getInfo());
+    }
+}
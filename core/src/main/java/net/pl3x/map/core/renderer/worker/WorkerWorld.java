@@ -0,0 +1,130 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.renderer.worker;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.player.Player;
+import net.pl3x.map.core.world.Biome;
+import net.pl3x.map.core.world.BiomeManager;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * A world as seen by a render worker, described by the server instead of backed by a level.
+ * <p>
+ * Only set up for rendering. The server keeps the region index, markers and settings of the world.
+ */
+public class WorkerWorld extends World {
+    private final WorkerManifest.WorldInfo info;
+
+    public WorkerWorld(WorkerManifest.@NonNull WorldInfo info) {
+        super(info.name(), info.seed(), Point.of(info.spawnX(), info.spawnZ()), info.type(), Path.of(info.regionDirectory()));
+        this.info = info;
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        loadRenderers();
+
+        // same indices as the server, tiles store them
+        for (WorkerManifest.BiomeInfo biome : info.biomes()) {
+            getBiomeRegistry().register(biome.id(), new Biome(biome.index(), biome.id(), biome.color(),
+                    biome.foliage(), biome.grass(), biome.water(), biome.modifier()));
+        }
+    }
+
+    public WorkerManifest.@NonNull WorldInfo getInfo() {
+        return this.info;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public <@NonNull T> @NonNull T getLevel() {
+        return (@NonNull T) this;
+    }
+
+    @Override
+    public long hashSeed(long seed) {
+        // called from the super constructor, so it can not look at the manifest
+        return BiomeManager.obfuscateSeed(seed);
+    }
+
+    @Override
+    public boolean hasCeiling() {
+        return this.info.ceiling();
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return this.info.minBuildHeight();
+    }
+
+    @Override
+    public int getMaxBuildHeight() {
+        return this.info.maxBuildHeight();
+    }
+
+    @Override
+    public int getLogicalHeight() {
+        return this.info.logicalHeight();
+    }
+
+    @Override
+    public double getBorderMinX() {
+        return this.info.borderMinX();
+    }
+
+    @Override
+    public double getBorderMinZ() {
+        return this.info.borderMinZ();
+    }
+
+    @Override
+    public double getBorderMaxX() {
+        return this.info.borderMaxX();
+    }
+
+    @Override
+    public double getBorderMaxZ() {
+        return this.info.borderMaxZ();
+    }
+
+    @Override
+    public @NonNull Collection<@NonNull Player> getPlayers() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return "WorkerWorld{"
+                + "name=" + getName()
+                + ",seed=" + getSeed()
+                + ",spawn=" + getSpawn()
+                + "}";
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.standalone;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Splits a render into leases and waits for workers to render them.
+ * <p>
+ * Only the coordinator writes the block, biome, settings and region modified state files,
+ * workers only write tiles. A lease covers a square of regions sharing the same tile at the
+ * furthest zoom level, so no two leases ever write the same tile file.
+ */
+public class LeaseCoordinator {
+    private static final long POLL_INTERVAL = 2000;
+
+    private final LeaseQueue queue;
+    private final long timeout;
+
+    /**
+     * Create a coordinator.
+     *
+     * @param queue   queue shared with the workers
+     * @param timeout milliseconds a lease may go without a heartbeat before it is handed out again
+     */
+    public LeaseCoordinator(@NonNull LeaseQueue queue, long timeout) {
+        this.queue = queue;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Hand out the regions of some worlds and wait until workers rendered all of them.
+     *
+     * @param worlds worlds to render
+     * @param full   true to render all regions, false to only render the ones changed since the last render
+     * @throws IOException          if the queue could not be read or written
+     * @throws InterruptedException if interrupted while waiting on workers
+     */
+    public void run(@NonNull Collection<@NonNull World> worlds, boolean full) throws IOException, InterruptedException {
+        LeaseQueue.Job job = this.queue.readJob();
+        if (job == null) {
+            List<LeaseQueue.Lease> leases = new ArrayList<>();
+            for (World world : worlds) {
+                leases.addAll(partition(world, world.listRegions(full)));
+            }
+            this.queue.create(leases);
+            job = this.queue.readJob();
+            if (job == null) {
+                throw new IOException("Lease job disappeared");
+            }
+            Logger.info("Handing out " + job.regions() + " regions in " + job.leases() + " leases");
+        } else if (this.queue.isFinished()) {
+            Logger.info("Lease job is already finished, remove the directory to start a new one");
+            return;
+        } else {
+            Logger.info("Resuming lease job of " + job.regions() + " regions in " + job.leases() + " leases");
+        }
+
+        Map<String, World> byName = new HashMap<>();
+        worlds.forEach(world -> byName.put(world.getName(), world));
+
+        Set<String> recorded = new HashSet<>();
+        Map<Path, Heartbeat> heartbeats = new HashMap<>();
+        StandaloneRenderer.Progress progress = new StandaloneRenderer.Progress("all workers", (int) job.regions());
+        int regionsDone = 0;
+        while (true) {
+            for (Path file : this.queue.listDone()) {
+                String id = LeaseQueue.id(file);
+                if (!recorded.add(id)) {
+                    continue;
+                }
+                LeaseQueue.Lease lease = LeaseQueue.Lease.read(id, file);
+                World world = byName.get(lease.world());
+                if (world != null) {
+                    // anything saved after the job started renders again next time,
+                    // regions that failed are left as they were so the next run tries them again
+                    Set<Long> failed = new HashSet<>();
+                    for (long region : lease.failed()) {
+                        failed.add(region);
+                    }
+                    for (long region : lease.regions()) {
+                        if (!failed.contains(region)) {
+                            world.getRegionModifiedState().set(region, job.started());
+                        }
+                    }
+                    if (!failed.isEmpty()) {
+                        Logger.warn(failed.size() + " regions of lease " + id + " failed to render, they render again next run");
+                    }
+                }
+                regionsDone += lease.regions().length;
+            }
+            if (recorded.size() >= job.leases()) {
+                break;
+            }
+            expire(heartbeats);
+            progress.maybeReport(regionsDone);
+            Thread.sleep(POLL_INTERVAL);
+        }
+        progress.report(regionsDone);
+
+        this.queue.finish();
+    }
+
+    /**
+     * Hand out leases again that went without a heartbeat for too long.
+     * <p>
+     * Ages are measured against this machine's clock, from when a lease was last seen changing,
+     * so clocks of the workers do not need to agree with ours.
+     *
+     * @param heartbeats last seen modified time of every claimed lease
+     */
+    private void expire(@NonNull Map<@NonNull Path, @NonNull Heartbeat> heartbeats) throws IOException {
+        long now = System.currentTimeMillis();
+        List<Path> claimed = this.queue.listClaimed();
+        heartbeats.keySet().retainAll(new HashSet<>(claimed));
+        for (Path file : claimed) {
+            long modified;
+            try {
+                modified = Files.getLastModifiedTime(file).toMillis();
+            } catch (NoSuchFileException e) {
+                continue; // completed in the meantime
+            }
+            Heartbeat heartbeat = heartbeats.get(file);
+            if (heartbeat == null || heartbeat.modified() != modified) {
+                heartbeats.put(file, new Heartbeat(modified, now));
+                continue;
+            }
+            if (now - heartbeat.seen() < this.timeout) {
+                continue;
+            }
+            heartbeats.remove(file);
+            if (this.queue.release(file)) {
+                Logger.warn("Lease " + file.getFileName() + " went without a heartbeat for " + (this.timeout / 1000) + "s, handing it out again");
+            }
+        }
+    }
+
+    /**
+     * Split the regions of a world into leases of whole tiles at the furthest zoom level.
+     *
+     * @param world   world the regions are in
+     * @param regions regions to render
+     * @return leases
+     */
+    private static @NonNull List<LeaseQueue.@NonNull Lease> partition(@NonNull World world, @NonNull Collection<@NonNull Point> regions) {
+        int shift = world.getConfig().ZOOM_MAX_OUT;
+        Map<Long, List<Long>> groups = new LinkedHashMap<>();
+        for (Point region : regions) {
+            long group = Mathf.asLong(region.x() >> shift, region.z() >> shift);
+            groups.computeIfAbsent(group, k -> new ArrayList<>()).add(Mathf.asLong(region));
+        }
+
+        // dots separate the worker id in claimed lease names. names differing only in replaced
+        // characters (like "world nether" and "world_nether") are told apart by the hash of the name
+        String prefix = world.getName().replaceAll("[^A-Za-z0-9_-]", "_") + "-" + Integer.toHexString(world.getName().hashCode());
+        List<LeaseQueue.Lease> leases = new ArrayList<>(groups.size());
+        groups.forEach((group, positions) -> leases.add(new LeaseQueue.Lease(
+                prefix + "_" + Mathf.longToX(group) + "_" + Mathf.longToZ(group),
+                world.getName(),
+                positions.stream().mapToLong(Long::longValue).toArray(),
+                new long[0],
+                null
+        )));
+        return leases;
+    }
+
+    private record Heartbeat(long modified, long seen) {
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.standalone;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import net.pl3x.map.core.util.FileUtil;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Leases of regions to render, shared between a coordinator and its workers through a directory.
+ * <p>
+ * A lease moves from {@code pending} to {@code claimed} when a worker takes it, and on to
+ * {@code done} once all its regions are rendered, listing the regions that failed. Every move is a rename, so only one
+ * process wins it, even on a network file system. Workers touch the leases they hold to
+ * show they are still alive, the coordinator moves leases nobody touched back to pending.
+ */
+public class LeaseQueue {
+    private static final int MAGIC = 0x524C5301; // "RLS" version 1
+    private static final String EXTENSION = ".lease";
+
+    private final Path pending;
+    private final Path claimed;
+    private final Path done;
+    private final Path jobFile;
+    private final Path finishedFile;
+
+    public LeaseQueue(@NonNull Path dir) {
+        this.pending = dir.resolve("pending");
+        this.claimed = dir.resolve("claimed");
+        this.done = dir.resolve("done");
+        this.jobFile = dir.resolve("job");
+        this.finishedFile = dir.resolve("finished");
+    }
+
+    /**
+     * Write all leases of a new job. Does nothing if a job is already set up, so a restarted coordinator resumes it.
+     *
+     * @param leases leases of the job
+     * @return true if the job was created, false if resuming
+     * @throws IOException if the leases could not be written
+     */
+    public boolean create(@NonNull List<@NonNull Lease> leases) throws IOException {
+        if (Files.exists(this.jobFile)) {
+            return false;
+        }
+        Set<String> ids = new HashSet<>();
+        for (Lease lease : leases) {
+            if (!ids.add(lease.id())) {
+                throw new IOException("Lease id " + lease.id() + " is used twice, rename one of the worlds");
+            }
+        }
+        Files.createDirectories(this.pending);
+        Files.createDirectories(this.claimed);
+        Files.createDirectories(this.done);
+        Files.deleteIfExists(this.finishedFile);
+        for (Lease lease : leases) {
+            FileUtil.writeAtomic(lease.write(), this.pending.resolve(lease.id() + EXTENSION));
+        }
+        // written last, workers wait for it
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(leases.size());
+            out.writeLong(leases.stream().mapToLong(lease -> lease.regions().length).sum());
+            out.writeLong(System.currentTimeMillis());
+        }
+        FileUtil.writeAtomic(bytes.toByteArray(), this.jobFile);
+        return true;
+    }
+
+    /**
+     * Read the job the leases belong to.
+     *
+     * @return job, or null if no job is set up yet
+     * @throws IOException if the job file could not be read
+     */
+    public @Nullable Job readJob() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(this.jobFile))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a lease job");
+            }
+            return new Job(in.readInt(), in.readLong(), in.readLong());
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    public boolean isFinished() {
+        return Files.exists(this.finishedFile);
+    }
+
+    /**
+     * Mark the job as finished, letting workers know they can exit.
+     *
+     * @throws IOException if the marker could not be written
+     */
+    public void finish() throws IOException {
+        FileUtil.writeAtomic(new byte[0], this.finishedFile);
+    }
+
+    /**
+     * Take a pending lease.
+     *
+     * @param worker unique id of the claiming worker
+     * @return claimed lease, or null if none are pending
+     * @throws IOException if the queue could not be read
+     */
+    public @Nullable Lease claim(@NonNull String worker) throws IOException {
+        for (Path file : list(this.pending)) {
+            String id = id(file);
+            Path target = this.claimed.resolve(id + "." + worker + EXTENSION);
+            try {
+                move(file, target);
+            } catch (NoSuchFileException e) {
+                continue; // another worker was faster
+            }
+            touch(target);
+            return Lease.read(id, target);
+        }
+        return null;
+    }
+
+    /**
+     * Show the coordinator a lease is still being worked on.
+     *
+     * @param lease claimed lease
+     * @return false if the lease was taken away in the meantime
+     */
+    public boolean touch(@NonNull Lease lease) {
+        try {
+            touch(lease.file());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Hand in a lease with all its regions tried.
+     *
+     * @param lease  claimed lease
+     * @param failed regions that failed to render
+     * @return false if the lease was taken away in the meantime
+     * @throws IOException if the lease could not be written or moved
+     */
+    public boolean complete(@NonNull Lease lease, long @NonNull [] failed) throws IOException {
+        Path file = lease.file();
+        if (file == null || !Files.exists(file)) {
+            return false;
+        }
+        // list the failures in the lease itself, then hand it in. if the lease expires right
+        // in between, it shows up claimed again and at worst its regions render twice
+        Lease tried = new Lease(lease.id(), lease.world(), lease.regions(), failed, file);
+        FileUtil.writeAtomic(tried.write(), file);
+        try {
+            move(file, this.done.resolve(lease.id() + EXTENSION));
+            return true;
+        } catch (NoSuchFileException | FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Put a claimed lease back, like when its worker went silent.
+     *
+     * @param file claimed lease file
+     * @return false if the worker completed the lease in the meantime
+     * @throws IOException if the lease could not be moved
+     */
+    public boolean release(@NonNull Path file) throws IOException {
+        try {
+            move(file, this.pending.resolve(id(file) + EXTENSION));
+            return true;
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+    }
+
+    public @NonNull List<@NonNull Path> listClaimed() throws IOException {
+        return list(this.claimed);
+    }
+
+    public @NonNull List<@NonNull Path> listDone() throws IOException {
+        return list(this.done);
+    }
+
+    /**
+     * Get the lease id of a lease file.
+     *
+     * @param file lease file
+     * @return lease id
+     */
+    public static @NonNull String id(@NonNull Path file) {
+        String name = file.getFileName().toString();
+        name = name.substring(0, name.length() - EXTENSION.length());
+        // claimed leases carry their worker's id
+        int worker = name.indexOf('.');
+        return worker < 0 ? name : name.substring(0, worker);
+    }
+
+    private static void touch(@NonNull Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    private static void move(@NonNull Path from, @NonNull Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            // not atomic, at worst a region gets rendered twice
+            Files.move(from, to);
+        }
+    }
+
+    private static @NonNull List<@NonNull Path> list(@NonNull Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    /**
+     * All leases handed out together.
+     *
+     * @param leases  number of leases
+     * @param regions number of regions in all leases
+     * @param started when the leases were created
+     */
+    public record Job(int leases, long regions, long started) {
+    }
+
+    /**
+     * A batch of regions of one world, rendered by one worker at a time.
+     *
+     * @param id      lease id, unique within the job
+     * @param world   name of the world
+     * @param regions region positions
+     * @param failed  region positions that failed to render, only set once the lease is done
+     * @param file    file the lease is in right now
+     */
+    public record Lease(@NonNull String id, @NonNull String world, long @NonNull [] regions, long @NonNull [] failed, @Nullable Path file) {
+        public static @NonNull Lease read(@NonNull String id, @NonNull Path file) throws IOException {
+            try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("Not a lease " + file);
+                }
+                String world = in.readUTF();
+                long[] regions = readPositions(in);
+                long[] failed = readPositions(in);
+                return new Lease(id, world, regions, failed, file);
+            }
+        }
+
+        private byte @NonNull [] write() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(MAGIC);
+                out.writeUTF(this.world);
+                writePositions(out, this.regions);
+                writePositions(out, this.failed);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static long @NonNull [] readPositions(@NonNull DataInputStream in) throws IOException {
+            long[] positions = new long[in.readInt()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = in.readLong();
+            }
+            return positions;
+        }
+
+        private static void writePositions(@NonNull DataOutputStream out, long @NonNull [] positions) throws IOException {
+            out.writeInt(positions.length);
+            for (long pos : positions) {
+                out.writeLong(pos);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.standalone;
+
+import java.io.IOException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.renderer.task.RegionScanTask;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Claims leases from a coordinator and renders their regions, until the coordinator says the job is finished.
+ * <p>
+ * The world directory may be a read-only mount, workers only write tiles. Any number of workers
+ * can run side by side, on this machine or others sharing the lease and output directories.
+ */
+public class LeaseWorker {
+    private static final long POLL_INTERVAL = 2000;
+    private static final long HEARTBEAT_INTERVAL = 10000;
+
+    private final StandalonePl3xMap api;
+    private final LeaseQueue queue;
+    // dots separate the worker id in claimed lease names
+    private final String id = UUID.randomUUID().toString().substring(0, 8);
+    private final Set<LeaseQueue.@NonNull Lease> active = ConcurrentHashMap.newKeySet();
+
+    public LeaseWorker(@NonNull StandalonePl3xMap api, @NonNull LeaseQueue queue) {
+        this.api = api;
+        this.queue = queue;
+    }
+
+    /**
+     * Render leases until the job is finished.
+     *
+     * @return number of regions that failed to render
+     * @throws IOException          if the queue could not be read or written
+     * @throws InterruptedException if interrupted while waiting on leases
+     */
+    public int run() throws IOException, InterruptedException {
+        Logger.info("Worker " + this.id + " waiting for leases");
+        while (this.queue.readJob() == null) {
+            Thread.sleep(POLL_INTERVAL);
+        }
+
+        Thread heartbeat = new Thread(this::heartbeat, "Pl3xMap-Lease-Heartbeat");
+        heartbeat.setDaemon(true);
+        heartbeat.start();
+
+        // every render thread busy, plus one region per thread being read or written
+        ExecutorService renderExecutor = this.api.getRenderExecutor();
+        int slots = (renderExecutor instanceof ForkJoinPool pool ? pool.getParallelism() : 1) * 2;
+        Semaphore inFlight = new Semaphore(slots);
+        AtomicInteger failed = new AtomicInteger();
+        try {
+            while (!this.queue.isFinished()) {
+                LeaseQueue.Lease lease = this.queue.claim(this.id);
+                if (lease == null) {
+                    // the rest is claimed, wait in case a lease expires
+                    Thread.sleep(POLL_INTERVAL);
+                    continue;
+                }
+                World world = this.api.getWorldRegistry().get(lease.world());
+                if (world == null || !world.isEnabled()) {
+                    this.queue.release(lease.file());
+                    throw new IOException("World " + lease.world() + " is missing or disabled, check the world directory and config");
+                }
+                this.active.add(lease);
+                Logger.info("Claimed lease " + lease.id() + " with " + lease.regions().length + " regions");
+                render(world, lease, inFlight, failed);
+            }
+            // the job cannot be finished with leases of ours left, this is only for good measure
+            inFlight.acquire(slots);
+        } finally {
+            heartbeat.interrupt();
+        }
+        return failed.get();
+    }
+
+    private void render(@NonNull World world, LeaseQueue.@NonNull Lease lease, @NonNull Semaphore inFlight, @NonNull AtomicInteger failed) throws InterruptedException {
+        AtomicInteger remaining = new AtomicInteger(lease.regions().length);
+        Queue<Long> leaseFailed = new ConcurrentLinkedQueue<>();
+        for (long pos : lease.regions()) {
+            inFlight.acquire();
+            Point region = Point.of(Mathf.longToX(pos), Mathf.longToZ(pos));
+            new RegionScanTask(world, region)
+                    .pipeline(this.api.getIOExecutor(), this.api.getRenderExecutor())
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            // the coordinator leaves it unstamped, the next run tries it again
+                            leaseFailed.add(pos);
+                            failed.incrementAndGet();
+                            Logger.warn("Failed to render region " + region + " of " + world.getName(), throwable);
+                        }
+                        inFlight.release();
+                        if (remaining.decrementAndGet() == 0) {
+                            complete(lease, leaseFailed.stream().mapToLong(Long::longValue).toArray());
+                        }
+                    });
+        }
+    }
+
+    private void complete(LeaseQueue.@NonNull Lease lease, long @NonNull [] failed) {
+        this.active.remove(lease);
+        try {
+            if (this.queue.complete(lease, failed)) {
+                Logger.info("Completed lease " + lease.id());
+            } else {
+                Logger.warn("Lease " + lease.id() + " expired before it was completed, another worker renders it again");
+            }
+        } catch (IOException e) {
+            Logger.warn("Failed to complete lease " + lease.id() + ", it expires and renders again", e);
+        }
+    }
+
+    private void heartbeat() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(HEARTBEAT_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (LeaseQueue.Lease lease : this.active) {
+                if (!this.queue.touch(lease)) {
+                    // keep going, rendering it twice does no harm
+                    this.active.remove(lease);
+                    Logger.warn("Lost lease " + lease.id() + ", it took longer than the lease timeout");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.standalone;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.world.World;
+import net.querz.nbt.io.NBTInputStream;
+import net.querz.nbt.io.NamedTag;
+import net.querz.nbt.tag.CompoundTag;
+import net.querz.nbt.tag.Tag;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * What a world's level.dat says about it, and where its dimensions keep their region files.
+ */
+public record LevelData(int dataVersion, long seed, int spawnX, int spawnZ, double borderCenterX, double borderCenterZ,
+                        double borderSize, @NonNull List<@NonNull Dimension> dimensions) {
+    // first release with worlds from -64 to 320
+    private static final int DATA_VERSION_1_18 = 2860;
+
+    /**
+     * Read the level.dat of a world directory.
+     *
+     * @param worldDir world directory
+     * @return level data
+     * @throws IOException if level.dat could not be read
+     */
+    public static @NonNull LevelData read(@NonNull Path worldDir) throws IOException {
+        NamedTag tag;
+        try (NBTInputStream in = new NBTInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(worldDir.resolve("level.dat")))))) {
+            tag = in.readTag(Tag.DEFAULT_MAX_DEPTH);
+        }
+        CompoundTag data = tag != null && tag.getTag() instanceof CompoundTag root ? root.getCompoundTag("Data") : null;
+        if (data == null) {
+            throw new IOException("Not a level.dat");
+        }
+
+        int dataVersion = data.getInt("DataVersion");
+        CompoundTag settings = data.getCompoundTag("WorldGenSettings");
+        long seed = settings != null && settings.containsKey("seed") ? settings.getLong("seed") : data.getLong("RandomSeed");
+        CompoundTag dimensionTypes = settings == null ? null : settings.getCompoundTag("dimensions");
+
+        List<Dimension> dimensions = new ArrayList<>();
+        addDimension(dimensions, dataVersion, dimensionTypes, "minecraft:overworld", worldDir.resolve("region"));
+        addDimension(dimensions, dataVersion, dimensionTypes, "minecraft:the_nether", worldDir.resolve("DIM-1").resolve("region"));
+        addDimension(dimensions, dataVersion, dimensionTypes, "minecraft:the_end", worldDir.resolve("DIM1").resolve("region"));
+
+        // datapack dimensions live in dimensions/<namespace>/<path>
+        Path custom = worldDir.resolve("dimensions");
+        if (Files.isDirectory(custom)) {
+            try (DirectoryStream<Path> namespaces = Files.newDirectoryStream(custom, Files::isDirectory)) {
+                for (Path namespace : namespaces) {
+                    try (DirectoryStream<Path> paths = Files.newDirectoryStream(namespace, Files::isDirectory)) {
+                        for (Path path : paths) {
+                            String key = namespace.getFileName() + ":" + path.getFileName();
+                            if (dimensions.stream().noneMatch(dimension -> dimension.key().equals(key))) {
+                                addDimension(dimensions, dataVersion, dimensionTypes, key, path.resolve("region"));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        return new LevelData(dataVersion, seed, data.getInt("SpawnX"), data.getInt("SpawnZ"),
+                data.getDouble("BorderCenterX"), data.getDouble("BorderCenterZ"),
+                data.containsKey("BorderSize") ? data.getDouble("BorderSize") : 59999968D, dimensions);
+    }
+
+    private static void addDimension(@NonNull List<@NonNull Dimension> dimensions, int dataVersion, @Nullable CompoundTag types, @NonNull String key, @NonNull Path regionDir) {
+        if (!Files.isDirectory(regionDir)) {
+            return;
+        }
+        CompoundTag dimension = types == null ? null : types.getCompoundTag(key);
+        Tag<?> type = dimension == null ? null : dimension.get("type");
+        String typeKey = type != null && type.getValue() instanceof String string ? string : key;
+
+        if (type instanceof CompoundTag custom) {
+            // inline dimension types, the server wrote down everything we need
+            dimensions.add(new Dimension(key, World.Type.get(key), regionDir, custom.getInt("min_y"),
+                    custom.getInt("height"), custom.getInt("logical_height"), custom.getBoolean("has_ceiling")));
+            return;
+        }
+
+        switch (typeKey) {
+            case "minecraft:the_nether" -> dimensions.add(new Dimension(key, World.Type.get(key), regionDir, 0, 256, 128, true));
+            case "minecraft:the_end" -> dimensions.add(new Dimension(key, World.Type.get(key), regionDir, 0, 256, 256, false));
+            default -> {
+                if (!typeKey.equals("minecraft:overworld") && !typeKey.equals("minecraft:overworld_caves")) {
+                    // datapack dimension types are not in level.dat
+                    Logger.warn("Unknown dimension type " + typeKey + " for " + key + ", using overworld heights");
+                }
+                if (dataVersion >= DATA_VERSION_1_18) {
+                    dimensions.add(new Dimension(key, World.Type.get(key), regionDir, -64, 384, 384, typeKey.endsWith("_caves")));
+                } else {
+                    dimensions.add(new Dimension(key, World.Type.get(key), regionDir, 0, 256, 256, typeKey.endsWith("_caves")));
+                }
+            }
+        }
+    }
+
+    public double getBorderMinX() {
+        return this.borderCenterX - this.borderSize / 2D;
+    }
+
+    public double getBorderMinZ() {
+        return this.borderCenterZ - this.borderSize / 2D;
+    }
+
+    public double getBorderMaxX() {
+        return this.borderCenterX + this.borderSize / 2D;
+    }
+
+    public double getBorderMaxZ() {
+        return this.borderCenterZ + this.borderSize / 2D;
+    }
+
+    /**
+     * A dimension with region files.
+     *
+     * @param key           dimension key, used as world name
+     * @param type          world type
+     * @param regionDir     region directory
+     * @param minY          lowest block y
+     * @param height        build height
+     * @param logicalHeight logical height
+     * @param ceiling       whether the dimension has a ceiling
+     */
+    public record Dimension(@NonNull String key, World.@NonNull Type type, @NonNull Path regionDir, int minY, int height,
+                            int logicalHeight, boolean ceiling) {
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.standalone;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import net.kyori.adventure.platform.AudienceProvider;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.ConsoleAudienceProvider;
+import net.pl3x.map.core.renderer.task.UpdateSettingsData;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.Biome;
+import net.pl3x.map.core.world.Block;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Pl3xMap without a server, rendering a world directory straight from disk.
+ */
+public class StandalonePl3xMap extends Pl3xMap {
+    private final Path mainDir;
+    private final LevelData levelData;
+    private final int threads;
+    private final boolean ownsMetadata;
+    private final AudienceProvider adventure = new ConsoleAudienceProvider();
+
+    /**
+     * Create a standalone instance.
+     *
+     * @param mainDir   directory holding the config and the web directory
+     * @param levelData level data of the world to render
+     * @param threads   render threads, or less than 1 for all cpu-threads
+     */
+    public StandalonePl3xMap(@NonNull Path mainDir, @NonNull LevelData levelData, int threads) {
+        this(mainDir, levelData, threads, true);
+    }
+
+    /**
+     * Create a standalone instance.
+     *
+     * @param mainDir      directory holding the config and the web directory
+     * @param levelData    level data of the world to render
+     * @param threads      render threads, or less than 1 for all cpu-threads
+     * @param ownsMetadata false to only write tiles, leaving the block, biome and settings files to another process
+     */
+    public StandalonePl3xMap(@NonNull Path mainDir, @NonNull LevelData levelData, int threads, boolean ownsMetadata) {
+        super();
+        this.mainDir = mainDir;
+        this.levelData = levelData;
+        this.threads = threads;
+        this.ownsMetadata = ownsMetadata;
+    }
+
+    /**
+     * Set up rendering and the dimensions of the world directory.
+     */
+    public void load() {
+        enableRenderer();
+
+        // there is no web server to serve the json files, write them next to the tiles
+        Config.WEB_DIR_EXPORT_JSON = true;
+
+        loadWorlds();
+    }
+
+    /**
+     * Write everything the web map needs besides the tiles, and stop all threads.
+     */
+    public void unload() {
+        if (this.ownsMetadata) {
+            getWorldRegistry().values().forEach(World::cleanup);
+            new UpdateSettingsData().run();
+        }
+        getRenderExecutor().shutdownNow();
+        getIOExecutor().shutdownNow();
+        getRegionCache().stop();
+    }
+
+    @Override
+    protected @NonNull ExecutorService createRenderExecutor() {
+        // no game to leave room for
+        return ThreadFactory.createUncappedService("Pl3xMap-Renderer", this.threads);
+    }
+
+    @Override
+    public @NonNull String getPlatform() {
+        return "standalone";
+    }
+
+    @Override
+    public @NonNull String getVersion() {
+        return getVersionCommit();
+    }
+
+    @Override
+    public int getMaxPlayers() {
+        return 0;
+    }
+
+    @Override
+    public boolean getOnlineMode() {
+        return false;
+    }
+
+    @Override
+    public String getServerVersion() {
+        return "data version " + this.levelData.dataVersion();
+    }
+
+    @Override
+    public @NonNull AudienceProvider adventure() {
+        return this.adventure;
+    }
+
+    @Override
+    public @NonNull Path getMainDir() {
+        return this.mainDir;
+    }
+
+    @Override
+    public @NonNull Path getJarPath() {
+        try {
+            return Path.of(Pl3xMap.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public int getColorForPower(byte power) {
+        // same as redstone wire on the server
+        float f = power / 15.0F;
+        float r = f * 0.6F + (f > 0.0F ? 0.4F : 0.3F);
+        float g = Mathf.clamp(0.0F, 1.0F, f * f * 0.7F - 0.5F);
+        float b = Mathf.clamp(0.0F, 1.0F, f * f * 0.6F - 0.7F);
+        return (int) (r * 255.0F) << 16 | (int) (g * 255.0F) << 8 | (int) (b * 255.0F);
+    }
+
+    @Override
+    public @Nullable Block getFlower(@NonNull World world, @NonNull Biome biome, int blockX, int blockY, int blockZ) {
+        // flower placement needs the server's world generation
+        return null;
+    }
+
+    @Override
+    protected void loadBlocks() {
+        // only the default blocks are known without a server
+        if (this.ownsMetadata) {
+            getBlockRegistry().saveToDisk();
+        }
+    }
+
+    @Override
+    protected void loadWorlds() {
+        for (LevelData.Dimension dimension : this.levelData.dimensions()) {
+            World world = getWorldRegistry().getOrDefault(dimension.key(), () -> new StandaloneWorld(this.levelData, dimension));
+            if (this.ownsMetadata && world.isEnabled()) {
+                world.getBiomeRegistry().saveToDisk(world);
+            }
+        }
+    }
+
+    @Override
+    protected void loadPlayers() {
+        // nobody is online
+    }
+
+    @Override
+    public @NonNull World cloneWorld(@NonNull World world) {
+        return new StandaloneWorld(this.levelData, ((StandaloneWorld) world).getDimension());
+    }
+}
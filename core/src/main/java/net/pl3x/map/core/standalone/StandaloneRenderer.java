@@ -0,0 +1,242 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.standalone;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.renderer.task.RegionScanTask;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Command line renderer for world directories, like backups, without a server.
+ * <p>
+ * Servers provide Gson and log4j, so the jar does not ship them. Put them on the classpath
+ * next to the jar and start {@code net.pl3x.map.core.Pl3xMap render <world directory>}.
+ */
+public final class StandaloneRenderer {
+    private static final String USAGE = """
+            Usage: java -cp <Pl3xMap jar>:<gson jar>:<log4j-api jar>:<log4j-core jar> net.pl3x.map.core.Pl3xMap render <world directory> [options]
+              (use ; instead of : to separate the jars on Windows)
+
+              --out <directory>    Pl3xMap directory with the config and web files (default: pl3xmap)
+              --threads <count>    render threads (default: all cpu-threads)
+              --dimension <key>    only render one dimension, like minecraft:overworld
+              --full               render all regions, not only the ones changed since the last render
+
+            Distributed rendering, all processes sharing the lease directory and the --out directory:
+              --coordinate <dir>   hand out leases of regions to workers instead of rendering
+              --work <dir>         render leases handed out by a coordinator
+              --lease-timeout <s>  seconds a worker may go silent before its lease is handed out again (default: 120)""";
+
+    private StandaloneRenderer() {
+    }
+
+    /**
+     * Run the command line renderer.
+     *
+     * @param args command line arguments, after "render"
+     * @return exit code
+     */
+    public static int run(@NonNull String @NonNull [] args) {
+        Path worldDir = null;
+        Path outDir = Path.of("pl3xmap");
+        int threads = -1;
+        String dimension = null;
+        boolean full = false;
+        Path coordinateDir = null;
+        Path workDir = null;
+        long leaseTimeout = 120;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--out" -> outDir = Path.of(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--dimension" -> dimension = args[++i];
+                    case "--full" -> full = true;
+                    case "--coordinate" -> coordinateDir = Path.of(args[++i]);
+                    case "--work" -> workDir = Path.of(args[++i]);
+                    case "--lease-timeout" -> leaseTimeout = Long.parseLong(args[++i]);
+                    default -> {
+                        if (args[i].startsWith("--") || worldDir != null) {
+                            throw new IllegalArgumentException("Unknown argument " + args[i]);
+                        }
+                        worldDir = Path.of(args[i]);
+                    }
+                }
+            }
+            if (worldDir == null) {
+                throw new IllegalArgumentException("No world directory given");
+            }
+            if (coordinateDir != null && workDir != null) {
+                throw new IllegalArgumentException("--coordinate and --work cannot be combined");
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e instanceof ArrayIndexOutOfBoundsException ? "Missing value for " + args[args.length - 1] : e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+
+        LevelData levelData;
+        try {
+            levelData = LevelData.read(worldDir);
+            Files.createDirectories(outDir);
+        } catch (IOException e) {
+            System.err.println("Cannot read world " + worldDir.toAbsolutePath() + ": " + e.getMessage());
+            return 1;
+        }
+
+        // workers leave everything but the tiles to the coordinator
+        StandalonePl3xMap api = new StandalonePl3xMap(outDir.toAbsolutePath(), levelData, threads, workDir == null);
+        api.load();
+        int failed = 0;
+        try {
+            if (workDir != null) {
+                failed = new LeaseWorker(api, new LeaseQueue(workDir)).run();
+            } else {
+                List<World> worlds = new ArrayList<>();
+                for (World world : api.getWorldRegistry().values()) {
+                    if (dimension != null && !dimension.equals(world.getName())) {
+                        continue;
+                    }
+                    if (!world.isEnabled()) {
+                        Logger.info("Skipping " + world.getName() + ", it is disabled in its world config");
+                        continue;
+                    }
+                    worlds.add(world);
+                }
+                if (coordinateDir != null) {
+                    new LeaseCoordinator(new LeaseQueue(coordinateDir), leaseTimeout * 1000).run(worlds, full);
+                } else {
+                    for (World world : worlds) {
+                        failed += render(api, world, full);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Logger.severe("Stopped rendering leases", e);
+            return 1;
+        } catch (InterruptedException e) {
+            Logger.warn("Interrupted, stopping");
+            return 1;
+        } finally {
+            api.unload();
+        }
+        Logger.info("Done, map written to " + api.getMainDir());
+        return failed > 0 ? 1 : 0;
+    }
+
+    private static int render(@NonNull StandalonePl3xMap api, @NonNull World world, boolean full) throws InterruptedException {
+        Collection<Point> regions = world.listRegions(full);
+        if (regions.isEmpty()) {
+            Logger.info(world.getName() + " is up to date");
+            return 0;
+        }
+
+        // every render thread busy, plus one region per thread being read or written
+        ExecutorService renderExecutor = api.getRenderExecutor();
+        int slots = (renderExecutor instanceof ForkJoinPool pool ? pool.getParallelism() : 1) * 2;
+        Semaphore inFlight = new Semaphore(slots);
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Progress progress = new Progress(world.getName(), regions.size());
+
+        Logger.info("Rendering " + regions.size() + " regions of " + world.getName());
+        for (Point region : regions) {
+            while (!inFlight.tryAcquire(1, TimeUnit.SECONDS)) {
+                progress.report(done.get());
+            }
+            long started = System.currentTimeMillis();
+            new RegionScanTask(world, region)
+                    .pipeline(api.getIOExecutor(), renderExecutor)
+                    .whenComplete((result, throwable) -> {
+                        if (throwable != null) {
+                            failed.incrementAndGet();
+                            throwable.printStackTrace();
+                        } else {
+                            // remembered for the next run without --full
+                            world.getRegionModifiedState().set(Mathf.asLong(region), started);
+                        }
+                        done.incrementAndGet();
+                        inFlight.release();
+                    });
+            progress.maybeReport(done.get());
+        }
+        // wait for the last regions
+        while (!inFlight.tryAcquire(slots, 1, TimeUnit.SECONDS)) {
+            progress.report(done.get());
+        }
+        progress.report(done.get());
+
+        world.cleanup();
+        if (failed.get() > 0) {
+            Logger.warn(failed.get() + " regions of " + world.getName() + " failed to render");
+        }
+        return failed.get();
+    }
+
+    /**
+     * Prints how far along a world is, at most once a second.
+     */
+    static class Progress {
+        private final String world;
+        private final int total;
+        private final long started = System.currentTimeMillis();
+        private long lastReport = this.started;
+
+        Progress(@NonNull String world, int total) {
+            this.world = world;
+            this.total = total;
+        }
+
+        void maybeReport(int done) {
+            if (System.currentTimeMillis() - this.lastReport >= 1000) {
+                report(done);
+            }
+        }
+
+        void report(int done) {
+            long now = System.currentTimeMillis();
+            this.lastReport = now;
+            double seconds = Math.max(1, now - this.started) / 1000D;
+            double rate = done / seconds;
+            long eta = rate > 0 ? (long) ((this.total - done) / rate) : -1;
+            Logger.info(String.format("%s: %d/%d regions (%.1f%%), %.0f chunks/s, eta %s",
+                    this.world, done, this.total, done * 100D / this.total, rate * 1024D,
+                    eta < 0 ? "unknown" : String.format("%d:%02d:%02d", eta / 3600, eta / 60 % 60, eta % 60)));
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.standalone;
+
+import java.util.Collection;
+import java.util.Collections;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.player.Player;
+import net.pl3x.map.core.world.BiomeManager;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * A dimension of a world directory, rendered without a server.
+ */
+public class StandaloneWorld extends World {
+    private final LevelData levelData;
+    private final LevelData.Dimension dimension;
+
+    public StandaloneWorld(@NonNull LevelData levelData, LevelData.@NonNull Dimension dimension) {
+        super(dimension.key(), levelData.seed(), Point.of(levelData.spawnX(), levelData.spawnZ()), dimension.type(), dimension.regionDir());
+        this.levelData = levelData;
+        this.dimension = dimension;
+
+        if (!isEnabled()) {
+            return;
+        }
+
+        loadRenderers();
+
+        VanillaBiomes.register(this);
+    }
+
+    public @NonNull LevelData getLevelData() {
+        return this.levelData;
+    }
+
+    public LevelData.@NonNull Dimension getDimension() {
+        return this.dimension;
+    }
+
+    @Override
+    @SuppressWarnings({"unchecked"})
+    public <@NonNull T> @NonNull T getLevel() {
+        return (@NonNull T) this;
+    }
+
+    @Override
+    public long hashSeed(long seed) {
+        return BiomeManager.obfuscateSeed(seed);
+    }
+
+    @Override
+    public boolean hasCeiling() {
+        return this.dimension.ceiling();
+    }
+
+    @Override
+    public int getMinBuildHeight() {
+        return this.dimension.minY();
+    }
+
+    @Override
+    public int getMaxBuildHeight() {
+        return this.dimension.minY() + this.dimension.height();
+    }
+
+    @Override
+    public int getLogicalHeight() {
+        return this.dimension.logicalHeight();
+    }
+
+    @Override
+    public double getBorderMinX() {
+        return this.levelData.getBorderMinX();
+    }
+
+    @Override
+    public double getBorderMinZ() {
+        return this.levelData.getBorderMinZ();
+    }
+
+    @Override
+    public double getBorderMaxX() {
+        return this.levelData.getBorderMaxX();
+    }
+
+    @Override
+    public double getBorderMaxZ() {
+        return this.levelData.getBorderMaxZ();
+    }
+
+    @Override
+    public @NonNull Collection<@NonNull Player> getPlayers() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public @NonNull String toString() {
+        return "StandaloneWorld{"
+                + "name=" + getName()
+                + ",seed=" + getSeed()
+                + ",spawn=" + getSpawn()
+                + "}";
+    }
+}
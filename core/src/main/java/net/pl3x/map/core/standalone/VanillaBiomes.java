@@ -0,0 +1,140 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.standalone;
+
+import net.pl3x.map.core.configuration.ColorsConfig;
+import net.pl3x.map.core.util.Colors;
+import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.Biome;
+import net.pl3x.map.core.world.World;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Climate and colors of the vanilla biomes, for worlds rendered without a server to ask.
+ * <p>
+ * Biomes added by datapacks or mods are unknown here and render with the default biome colors.
+ */
+public final class VanillaBiomes {
+    private static final int WATER = 0x3F76E4;
+    private static final int NONE = -1;
+
+    private static final Biome.GrassModifier NO_MODIFIER = (x, z, color) -> color;
+    private static final Biome.GrassModifier DARK_FOREST = (x, z, color) -> ((color & 0xFEFEFE) + 0x28340A) >> 1;
+    // the server picks between two colors by noise, use the common one
+    private static final Biome.GrassModifier SWAMP = (x, z, color) -> 0x6A7039;
+
+    private static final Entry[] BIOMES = {
+            new Entry("minecraft:badlands", 2.0F, 0.0F, WATER, 0x90814D, 0x9E814D, NO_MODIFIER),
+            new Entry("minecraft:bamboo_jungle", 0.95F, 0.9F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:basalt_deltas", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:beach", 0.8F, 0.4F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:birch_forest", 0.6F, 0.6F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:cherry_grove", 0.5F, 0.8F, 0x5DB7EF, 0xB6DB61, 0xB6DB61, NO_MODIFIER),
+            new Entry("minecraft:cold_ocean", 0.5F, 0.5F, 0x3D57D6, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:crimson_forest", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:dark_forest", 0.7F, 0.8F, WATER, NONE, NONE, DARK_FOREST),
+            new Entry("minecraft:deep_cold_ocean", 0.5F, 0.5F, 0x3D57D6, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:deep_dark", 0.8F, 0.4F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:deep_frozen_ocean", 0.5F, 0.5F, 0x3938C9, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:deep_lukewarm_ocean", 0.5F, 0.5F, 0x45ADF2, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:deep_ocean", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:desert", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:dripstone_caves", 0.8F, 0.4F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:end_barrens", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:end_highlands", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:end_midlands", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:eroded_badlands", 2.0F, 0.0F, WATER, 0x90814D, 0x9E814D, NO_MODIFIER),
+            new Entry("minecraft:flower_forest", 0.7F, 0.8F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:forest", 0.7F, 0.8F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:frozen_ocean", 0.0F, 0.5F, 0x3938C9, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:frozen_peaks", -0.7F, 0.9F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:frozen_river", 0.0F, 0.5F, 0x3938C9, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:grove", -0.2F, 0.8F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:ice_spikes", 0.0F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:jagged_peaks", -0.7F, 0.9F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:jungle", 0.95F, 0.9F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:lukewarm_ocean", 0.5F, 0.5F, 0x45ADF2, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:lush_caves", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:mangrove_swamp", 0.8F, 0.9F, 0x3A7A6A, NONE, 0x8DB127, SWAMP),
+            new Entry("minecraft:meadow", 0.5F, 0.8F, 0x0E4ECF, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:mushroom_fields", 0.9F, 1.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:nether_wastes", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:ocean", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:old_growth_birch_forest", 0.6F, 0.6F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:old_growth_pine_taiga", 0.3F, 0.8F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:old_growth_spruce_taiga", 0.25F, 0.8F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:plains", 0.8F, 0.4F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:river", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:savanna", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:savanna_plateau", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:small_end_islands", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:snowy_beach", 0.05F, 0.3F, 0x3D57D6, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:snowy_plains", 0.0F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:snowy_slopes", -0.3F, 0.9F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:snowy_taiga", -0.5F, 0.4F, 0x3D57D6, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:soul_sand_valley", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:sparse_jungle", 0.95F, 0.8F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:stony_peaks", 1.0F, 0.3F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:stony_shore", 0.2F, 0.3F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:sunflower_plains", 0.8F, 0.4F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:swamp", 0.8F, 0.9F, 0x617B64, NONE, 0x6A7039, SWAMP),
+            new Entry("minecraft:taiga", 0.25F, 0.8F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:the_end", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:the_void", 0.5F, 0.5F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:warm_ocean", 0.5F, 0.5F, 0x43D5EE, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:warped_forest", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:windswept_forest", 0.2F, 0.3F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:windswept_gravelly_hills", 0.2F, 0.3F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:windswept_hills", 0.2F, 0.3F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:windswept_savanna", 2.0F, 0.0F, WATER, NONE, NONE, NO_MODIFIER),
+            new Entry("minecraft:wooded_badlands", 2.0F, 0.0F, WATER, 0x90814D, 0x9E814D, NO_MODIFIER)
+    };
+
+    private VanillaBiomes() {
+    }
+
+    /**
+     * Register all vanilla biomes to a world, with the colors from the colors config winning.
+     *
+     * @param world world to register biomes to
+     */
+    public static void register(@NonNull World world) {
+        for (Entry biome : BIOMES) {
+            float temperature = Mathf.clamp(0.0F, 1.0F, biome.temperature());
+            float humidity = Mathf.clamp(0.0F, 1.0F, biome.downfall());
+            world.getBiomeRegistry().register(
+                    biome.id(),
+                    ColorsConfig.BIOME_COLORS.getOrDefault(biome.id(), 0),
+                    ColorsConfig.BIOME_FOLIAGE.getOrDefault(biome.id(), biome.foliage() != NONE ? biome.foliage() : Colors.getDefaultFoliageColor(temperature, humidity)),
+                    ColorsConfig.BIOME_GRASS.getOrDefault(biome.id(), biome.grass() != NONE ? biome.grass() : Colors.getDefaultGrassColor(temperature, humidity)),
+                    ColorsConfig.BIOME_WATER.getOrDefault(biome.id(), biome.water()),
+                    biome.modifier()
+            );
+        }
+    }
+
+    private record Entry(@NonNull String id, float temperature, float downfall, int water, int grass, int foliage,
+                         Biome.@NonNull GrassModifier modifier) {
+    }
+}
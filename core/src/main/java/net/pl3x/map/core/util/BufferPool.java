@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Pools for the large fixed size buffers used while rendering a region.
+ * <p>
+ * Render stages run on different threads (a buffer is taken on a render thread
+ * and given back on an io thread), so the pools are shared lock-free stacks.
+ * Buffers handed out are always zeroed, exactly like freshly allocated ones.
+ */
+public class BufferPool {
+    /**
+     * Number of pixels in one region sized tile.
+     */
+    public static final int PIXELS_SIZE = 512 << 9;
+
+    /**
+     * Number of bytes in one region sized blockinfo buffer (12 byte header, 4 bytes per block).
+     */
+    public static final int BLOCKINFO_SIZE = 512 * 512 * 4 + 12;
+
+    // max buffers kept around, anything more is left to the garbage collector
+    private static final int MAX_PIXELS = 64;
+    private static final int MAX_BLOCKINFO = 16;
+
+    private static final Pool<int[]> PIXELS = new Pool<>(MAX_PIXELS);
+    private static final Pool<ByteBuffer> BLOCKINFO = new Pool<>(MAX_BLOCKINFO);
+
+    private BufferPool() {
+    }
+
+    public static int[] takePixels() {
+        int[] pixels = PIXELS.take();
+        if (pixels == null) {
+            return new int[PIXELS_SIZE];
+        }
+        Arrays.fill(pixels, 0);
+        return pixels;
+    }
+
+    public static void releasePixels(int[] pixels) {
+        if (pixels.length == PIXELS_SIZE) {
+            PIXELS.release(pixels);
+        }
+    }
+
+    /**
+     * Take a little endian heap buffer of {@link #BLOCKINFO_SIZE} bytes.
+     *
+     * @return zeroed buffer
+     */
+    public static @NonNull ByteBuffer takeBlockInfo() {
+        ByteBuffer buffer = BLOCKINFO.take();
+        if (buffer == null) {
+            return ByteBuffer.allocate(BLOCKINFO_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        Arrays.fill(buffer.array(), (byte) 0);
+        buffer.clear();
+        return buffer;
+    }
+
+    public static void releaseBlockInfo(@NonNull ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.capacity() == BLOCKINFO_SIZE) {
+            BLOCKINFO.release(buffer.order(ByteOrder.LITTLE_ENDIAN));
+        }
+    }
+
+    private static class Pool<T> {
+        private final Deque<T> stack = new ConcurrentLinkedDeque<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int max;
+
+        private Pool(int max) {
+            this.max = max;
+        }
+
+        private T take() {
+            T value = this.stack.pollFirst();
+            if (value != null) {
+                this.size.decrementAndGet();
+            }
+            return value;
+        }
+
+        private void release(@NonNull T value) {
+            if (this.size.incrementAndGet() > this.max) {
+                this.size.decrementAndGet();
+                return;
+            }
+            this.stack.offerFirst(value);
+        }
+    }
+}
@@ -33,7 +33,6 @@ import net.pl3x.map.core.configuration.ColorsConfig;
 import net.pl3x.map.core.world.Biome;
 import net.pl3x.map.core.world.Block;
 import net.pl3x.map.core.world.BlockState;
-import net.pl3x.map.core.world.Chunk;
 import net.pl3x.map.core.world.Region;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
@@ -226,11 +225,11 @@ public class Colors {
                 if (x2 == x && z2 == z) {
                     continue;
                 }
-                Chunk.BlockData data = region.getWorld().getChunk(region, x2 >> 4, z2 >> 4).getData(x2, z2); // 3%
-                if (data == null) {
+                Biome biome2 = region.getWorld().getNeighborBiome(region, x2, z2);
+                if (biome2 == null) {
                     continue;
                 }
-                int color2 = colorSampler.apply(data.getBiome(region, x2, z2), x2, z2); // 2%
+                int color2 = colorSampler.apply(biome2, x2, z2);
                 if (color2 > 0) {
                     red += red(color2);
                     green += green(color2);
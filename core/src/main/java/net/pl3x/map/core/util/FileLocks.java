@@ -0,0 +1,121 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.util;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Write locks for tile files that hold across processes.
+ * <p>
+ * The server and a render worker process may both update the same zoomed out tiles.
+ * Each directory gets one lock file, and a file is locked by locking one byte of it, picked
+ * from the file name. Every process picks the same byte for the same file. Files sharing a
+ * byte wait on each other, which is rare enough not to matter.
+ * <p>
+ * Locks on a lock file are held by the whole process, so threads of this process
+ * wait on a plain lock per byte first.
+ */
+public class FileLocks {
+    private static final String LOCK_FILE = ".lock";
+    private static final int STRIPES = 256;
+
+    private static final Map<@NonNull Path, @NonNull Directory> DIRECTORIES = new ConcurrentHashMap<>();
+
+    private FileLocks() {
+    }
+
+    /**
+     * Lock a file for writing, waiting for other threads and processes to let go of it.
+     *
+     * @param file file to lock
+     * @return lock to close when done writing
+     * @throws IOException if the lock file could not be opened or locked
+     */
+    public static @NonNull Lock lock(@NonNull Path file) throws IOException {
+        Path path = file.toAbsolutePath();
+        Directory dir = DIRECTORIES.computeIfAbsent(path.getParent(), Directory::new);
+        int stripe = Math.floorMod(path.getFileName().toString().hashCode(), STRIPES);
+        ReentrantLock local = dir.locks[stripe];
+        local.lock();
+        try {
+            return new Lock(local, dir.channel().lock(stripe, 1, false));
+        } catch (IOException | RuntimeException e) {
+            local.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * A held file lock.
+     */
+    public static class Lock implements AutoCloseable {
+        private final ReentrantLock local;
+        private final FileLock lock;
+
+        private Lock(@NonNull ReentrantLock local, @NonNull FileLock lock) {
+            this.local = local;
+            this.lock = lock;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (this.lock.isValid()) {
+                    this.lock.release();
+                }
+            } finally {
+                this.local.unlock();
+            }
+        }
+    }
+
+    private static class Directory {
+        private final Path path;
+        private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+        private FileChannel channel;
+
+        private Directory(@NonNull Path path) {
+            this.path = path;
+            for (int i = 0; i < STRIPES; i++) {
+                this.locks[i] = new ReentrantLock(true);
+            }
+        }
+
+        private synchronized @NonNull FileChannel channel() throws IOException {
+            // an interrupted thread closes the channel, open it again
+            if (this.channel == null || !this.channel.isOpen()) {
+                this.channel = FileChannel.open(this.path.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+            return this.channel;
+        }
+    }
+}
@@ -25,6 +25,7 @@ package net.pl3x.map.core.util;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -33,15 +34,12 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Enumeration;
-import java.util.List;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.stream.Stream;
@@ -51,7 +49,6 @@ import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.configuration.Config;
 import net.pl3x.map.core.log.Logger;
 import net.pl3x.map.core.markers.Point;
-import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -144,6 +141,25 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Write bytes to a temporary file next to the target and move it into place,
+     * so readers never see a partially written file.
+     *
+     * @param bytes bytes to write
+     * @param file  target file
+     * @throws IOException if the file could not be written
+     */
+    public static void writeAtomic(byte[] bytes, @NonNull Path file) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, bytes);
+        try {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     public static void saveGzip(@NonNull String json, @NonNull Path file) throws IOException {
         try (
                 OutputStream fileOut = Files.newOutputStream(mkDirs(file));
@@ -156,13 +172,11 @@ public class FileUtil {
     }
 
     public static void saveGzip(byte[] bytes, @NonNull Path file) throws IOException {
-        try (
-                OutputStream fileOut = Files.newOutputStream(mkDirs(file));
-                GZIPOutputStream gzipOut = new GZIPOutputStream(fileOut)
-        ) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
             gzipOut.write(bytes);
-            gzipOut.flush();
         }
+        writeAtomic(out.toByteArray(), file);
     }
 
     public static void readGzip(@NonNull Path file, @NonNull ByteBuffer buffer) throws IOException {
@@ -204,41 +218,21 @@ public class FileUtil {
         }
     }
 
-    public static @NonNull Collection<@NonNull Point> regionPathsToPoints(@NonNull World world, @Nullable Collection<@NonNull Path> paths, boolean ignoreTimestamp) {
-        if (paths == null || paths.isEmpty()) {
-            return Collections.emptyList();
+    /**
+     * Get the region position from a region file name.
+     *
+     * @param name file name, like {@code r.<x>.<z>.mca}
+     * @return region position, or null if not a region file name
+     */
+    public static @Nullable Point regionFileToPoint(@NonNull String name) {
+        int dot = name.indexOf('.', 2);
+        if (dot < 0 || !name.startsWith("r.") || !name.endsWith(".mca")) {
+            return null;
         }
-        List<Point> regions = new ArrayList<>();
-        for (Path file : paths) {
-            if (file.toFile().length() <= 0) {
-                Logger.debug("Skipping zero length region file: " + file.getFileName());
-                continue;
-            }
-            try {
-                String[] split = file.getFileName().toString().split("\\.");
-                int rX = Integer.parseInt(split[1]);
-                int rZ = Integer.parseInt(split[2]);
-                if (!world.visibleRegion(rX, rZ)) {
-                    Logger.debug("Skipping region outside of visible areas: " + file.getFileName());
-                    continue;
-                }
-                if (ignoreTimestamp) {
-                    regions.add(Point.of(rX, rZ));
-                    continue;
-                }
-                long storedModifiedTime = world.getRegionModifiedState().get(Mathf.asLong(rX, rZ));
-                long actualModifiedTime = Files.getLastModifiedTime(file).toMillis();
-                if (actualModifiedTime > storedModifiedTime) {
-                    Logger.debug("Found modified region file: " + file.getFileName());
-                    regions.add(Point.of(rX, rZ));
-                } else {
-                    Logger.debug("Skipping unmodified region file: " + file.getFileName() + " " + actualModifiedTime + " <= " + storedModifiedTime);
-                }
-            } catch (NumberFormatException ignore) {
-            } catch (IOException e) {
-                throw new RuntimeException(e);
-            }
+        try {
+            return Point.of(Integer.parseInt(name, 2, dot, 10), Integer.parseInt(name, dot + 1, name.length() - 4, 10));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            return null;
         }
-        return regions;
     }
 }
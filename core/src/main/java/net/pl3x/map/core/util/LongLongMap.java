@@ -0,0 +1,176 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.util;
+
+import java.util.Arrays;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Open addressing map of primitive longs to primitive longs.
+ * <p>
+ * Entries cannot be removed one by one, only in bulk with {@link #removeIf(Filter)}. Not thread safe.
+ */
+public class LongLongMap {
+    private static final float LOAD_FACTOR = 0.5F;
+
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+
+    // key 0 marks free slots, so it is stored on the side
+    private boolean hasZero;
+    private long zeroValue;
+
+    public LongLongMap() {
+        this(16);
+    }
+
+    public LongLongMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public long get(long key, long defaultValue) {
+        if (key == 0) {
+            return this.hasZero ? this.zeroValue : defaultValue;
+        }
+        for (int i = index(key); ; i = (i + 1) & this.mask) {
+            long k = this.keys[i];
+            if (k == key) {
+                return this.values[i];
+            }
+            if (k == 0) {
+                return defaultValue;
+            }
+        }
+    }
+
+    public void put(long key, long value) {
+        if (key == 0) {
+            if (!this.hasZero) {
+                this.hasZero = true;
+                this.size++;
+            }
+            this.zeroValue = value;
+            return;
+        }
+        for (int i = index(key); ; i = (i + 1) & this.mask) {
+            long k = this.keys[i];
+            if (k == key) {
+                this.values[i] = value;
+                return;
+            }
+            if (k == 0) {
+                this.keys[i] = key;
+                this.values[i] = value;
+                if (++this.size > this.keys.length * LOAD_FACTOR) {
+                    grow();
+                }
+                return;
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(this.keys, 0);
+        this.hasZero = false;
+        this.size = 0;
+    }
+
+    /**
+     * Remove all entries matching a filter. Rebuilds the map, sized for the entries left.
+     *
+     * @param filter entries to remove
+     */
+    public void removeIf(@NonNull Filter filter) {
+        LongLongMap kept = new LongLongMap(this.size);
+        forEach((key, value) -> {
+            if (!filter.test(key, value)) {
+                kept.put(key, value);
+            }
+        });
+        this.keys = kept.keys;
+        this.values = kept.values;
+        this.mask = kept.mask;
+        this.size = kept.size;
+        this.hasZero = kept.hasZero;
+        this.zeroValue = kept.zeroValue;
+    }
+
+    public void forEach(@NonNull Consumer consumer) {
+        if (this.hasZero) {
+            consumer.accept(0, this.zeroValue);
+        }
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.keys[i] != 0) {
+                consumer.accept(this.keys[i], this.values[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        long[] oldValues = this.values;
+        this.keys = new long[oldKeys.length << 1];
+        this.values = new long[oldValues.length << 1];
+        this.mask = this.keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key == 0) {
+                continue;
+            }
+            int j = index(key);
+            while (this.keys[j] != 0) {
+                j = (j + 1) & this.mask;
+            }
+            this.keys[j] = key;
+            this.values[j] = oldValues[i];
+        }
+    }
+
+    private int index(long key) {
+        // murmur3 finalizer, region positions are anything but evenly spread
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        return (int) key & this.mask;
+    }
+
+    @FunctionalInterface
+    public interface Consumer {
+        void accept(long key, long value);
+    }
+
+    @FunctionalInterface
+    public interface Filter {
+        boolean test(long key, long value);
+    }
+}
@@ -74,4 +74,36 @@ public class Mathf {
     public static int longToZ(long pos) {
         return (int) (pos >>> 32 & 0xFFFFFFFFL);
     }
+
+    /**
+     * Get the distance along a hilbert curve covering all region coordinates.
+     * <p>
+     * Points close together on the curve are close together in the world.
+     *
+     * @param x region x
+     * @param z region z
+     * @return distance along the curve
+     */
+    public static long hilbert(int x, int z) {
+        // the world border limits regions to +/- 58594, shift them into a 2^17 square
+        long hx = Math.max(0, Math.min(0x1FFFF, x + 0x10000));
+        long hz = Math.max(0, Math.min(0x1FFFF, z + 0x10000));
+        long d = 0;
+        for (long s = 0x10000; s > 0; s >>= 1) {
+            long rx = (hx & s) > 0 ? 1 : 0;
+            long rz = (hz & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ rz);
+            // rotate the quadrant
+            if (rz == 0) {
+                if (rx == 1) {
+                    hx = s - 1 - hx;
+                    hz = s - 1 - hz;
+                }
+                long t = hx;
+                hx = hz;
+                hz = t;
+            }
+        }
+        return d;
+    }
 }
@@ -3,6 +3,10 @@
  */
 package net.pl3x.map.core.world;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 public class BiomeManager {
@@ -12,6 +16,23 @@ public class BiomeManager {
         this.hashedSeed = hashedSeed;
     }
 
+    /**
+     * Hash a world seed the way the server does, for worlds without a server.
+     *
+     * @param seed world seed
+     * @return hashed seed
+     */
+    public static long obfuscateSeed(long seed) {
+        // first 8 bytes of the sha-256 of the little endian seed
+        try {
+            byte[] bytes = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN).putLong(seed).array();
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(bytes);
+            return ByteBuffer.wrap(hash).order(ByteOrder.LITTLE_ENDIAN).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public @NonNull Biome getBiome(@NonNull Region region, int x, int y, int z) {
         int i = x - 2;
         int j = y - 2;
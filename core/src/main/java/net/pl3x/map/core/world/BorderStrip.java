@@ -0,0 +1,242 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.pl3x.map.core.util.FileUtil;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Surface heights and biomes of the outermost columns of a region.
+ * <p>
+ * Height shading and biome blending look a few blocks past the edge of the region being
+ * rendered. A strip is saved every time a region renders, so its neighbors can answer those
+ * lookups without decoding any of its chunks.
+ */
+public class BorderStrip {
+    /**
+     * How many columns deep the strip reaches into the region on every side.
+     */
+    public static final int WIDTH = 8;
+
+    /**
+     * Height of a column without any data.
+     */
+    public static final int NONE = Integer.MIN_VALUE;
+
+    /**
+     * Strip of a region without a region file.
+     */
+    public static final BorderStrip EMPTY = new BorderStrip(0);
+
+    // strip that is not on disk (yet) or stale, lookups have to go to the chunks
+    static final BorderStrip MISSING = new BorderStrip(-1);
+
+    private static final int VERSION = 1;
+    private static final int EDGE = 512 - WIDTH;
+    private static final int ROWS = WIDTH << 9;
+    private static final int COLUMNS = ROWS * 2 + (EDGE - WIDTH) * WIDTH * 2;
+    // heights and biomes, 2 bytes each per column, plus a bit for the object and palette
+    private static final int FOOTPRINT = COLUMNS * 4 + 256;
+
+    private final long modified;
+    private final short[] heights = new short[COLUMNS];
+    private final short[] biomes = new short[COLUMNS];
+    private final List<@NonNull Biome> palette = new ArrayList<>();
+
+    private BorderStrip(long modified) {
+        this.modified = modified;
+        Arrays.fill(this.heights, Short.MIN_VALUE);
+        Arrays.fill(this.biomes, (short) -1);
+    }
+
+    /**
+     * Collect the border strip of a region that was just rendered.
+     *
+     * @param region region with its chunks loaded
+     * @return border strip
+     */
+    public static @NonNull BorderStrip create(@NonNull Region region) {
+        BorderStrip strip = new BorderStrip(region.getLastModified());
+        Map<Biome, Integer> palette = new HashMap<>();
+        int minX = region.getX() << 9;
+        int minZ = region.getZ() << 9;
+        for (int z = 0; z < 512; z++) {
+            boolean edgeRow = z < WIDTH || z >= EDGE;
+            // skip over the inside of the region
+            for (int x = 0; x < 512; x = edgeRow || x != WIDTH - 1 ? x + 1 : EDGE) {
+                int blockX = minX + x;
+                int blockZ = minZ + z;
+                Chunk.BlockData data = region.getChunk(blockX >> 4, blockZ >> 4).getData(blockX, blockZ);
+                if (data == null) {
+                    continue;
+                }
+                int index = index(blockX, blockZ);
+                strip.heights[index] = (short) data.getBlockY();
+                Biome biome = data.getBiome(region, blockX, blockZ);
+                strip.biomes[index] = (short) (int) palette.computeIfAbsent(biome, k -> {
+                    strip.palette.add(k);
+                    return strip.palette.size() - 1;
+                });
+            }
+        }
+        return strip;
+    }
+
+    /**
+     * Read a border strip from disk.
+     *
+     * @param world    world the region belongs to
+     * @param file     border strip file
+     * @param modified last modified time of the region file
+     * @return border strip, or null if it is missing or older than the region file
+     * @throws IOException if the file could not be read
+     */
+    public static @Nullable BorderStrip read(@NonNull World world, @NonNull Path file, long modified) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION || in.readLong() != modified) {
+                return null;
+            }
+            BorderStrip strip = new BorderStrip(modified);
+            int size = in.readUnsignedShort();
+            for (int i = 0; i < size; i++) {
+                strip.palette.add(world.getBiomeRegistry().get(in.readUTF()));
+            }
+            for (int i = 0; i < COLUMNS; i++) {
+                strip.heights[i] = in.readShort();
+            }
+            for (int i = 0; i < COLUMNS; i++) {
+                strip.biomes[i] = in.readShort();
+            }
+            return strip;
+        }
+    }
+
+    /**
+     * Write this border strip to disk.
+     *
+     * @param file border strip file
+     * @throws IOException if the file could not be written
+     */
+    public void write(@NonNull Path file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(VERSION);
+            out.writeLong(this.modified);
+            out.writeShort(this.palette.size());
+            for (Biome biome : this.palette) {
+                out.writeUTF(biome.getKey());
+            }
+            for (short height : this.heights) {
+                out.writeShort(height);
+            }
+            for (short biome : this.biomes) {
+                out.writeShort(biome);
+            }
+        }
+        FileUtil.writeAtomic(bytes.toByteArray(), file);
+    }
+
+    /**
+     * Estimate how much heap this strip holds.
+     *
+     * @return footprint in bytes
+     */
+    public int getFootprint() {
+        // the shared empty and missing strips only cost a cache entry
+        return this == EMPTY || this == MISSING ? 64 : FOOTPRINT;
+    }
+
+    /**
+     * Check if a column is part of this strip.
+     *
+     * @param blockX block x
+     * @param blockZ block z
+     * @return true if the column is in this strip
+     */
+    public boolean contains(int blockX, int blockZ) {
+        return index(blockX, blockZ) >= 0;
+    }
+
+    /**
+     * Get the surface height of a column in this strip.
+     *
+     * @param blockX block x
+     * @param blockZ block z
+     * @return surface height, or {@link #NONE} if the column has no data
+     */
+    public int getHeight(int blockX, int blockZ) {
+        int index = index(blockX, blockZ);
+        short height = index < 0 ? Short.MIN_VALUE : this.heights[index];
+        return height == Short.MIN_VALUE ? NONE : height;
+    }
+
+    /**
+     * Get the surface biome of a column in this strip.
+     *
+     * @param blockX block x
+     * @param blockZ block z
+     * @return surface biome, or null if the column has no data
+     */
+    public @Nullable Biome getBiome(int blockX, int blockZ) {
+        int index = index(blockX, blockZ);
+        short biome = index < 0 ? -1 : this.biomes[index];
+        return biome < 0 ? null : this.palette.get(biome);
+    }
+
+    private static int index(int blockX, int blockZ) {
+        int x = blockX & 511;
+        int z = blockZ & 511;
+        if (z < WIDTH) {
+            return (z << 9) + x;
+        }
+        if (z >= EDGE) {
+            return ROWS + ((z - EDGE) << 9) + x;
+        }
+        int row = ROWS * 2 + (z - WIDTH) * WIDTH * 2;
+        if (x < WIDTH) {
+            return row + x;
+        }
+        if (x >= EDGE) {
+            return row + WIDTH + x - EDGE;
+        }
+        return -1;
+    }
+}
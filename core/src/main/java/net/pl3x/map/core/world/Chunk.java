@@ -31,6 +31,15 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 public abstract class Chunk {
+    /**
+     * Rough heap used by one decoded chunk.
+     */
+    public static final int FOOTPRINT = 32 * 1024;
+    /**
+     * Rough heap used by one chunk without any data.
+     */
+    public static final int EMPTY_FOOTPRINT = 1024;
+
     private final World world;
     private final Region region;
 
@@ -55,6 +64,17 @@ public abstract class Chunk {
         this.inhabitedTime = 0;
     }
 
+    protected Chunk(@NonNull World world, @NonNull Region region, int xPos, int yPos, int zPos, long inhabitedTime) {
+        this.world = world;
+        this.region = region;
+
+        this.xPos = xPos;
+        this.yPos = yPos;
+        this.zPos = zPos;
+
+        this.inhabitedTime = inhabitedTime;
+    }
+
     protected Chunk(@NonNull World world, @NonNull Region region, @NonNull CompoundTag tag) {
         this.world = world;
         this.region = region;
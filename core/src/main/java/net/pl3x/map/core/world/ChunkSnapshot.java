@@ -0,0 +1,279 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import net.pl3x.map.core.util.MCAMath;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A read-only copy of the surface of a loaded chunk, taken from the server instead of the region file.
+ * <p>
+ * Platforms capture chunks near players (see {@link World#captureChunk(int, int)}), so edits show up on the
+ * map before the server saves them. Only the sections holding the surface are kept, with block states
+ * paletted and packed like in region files.
+ */
+public class ChunkSnapshot {
+    private final World world;
+    private final int chunkX;
+    private final int chunkZ;
+    private final long captured;
+    private final long inhabitedTime;
+    private final int[] surface;
+    private final int sectionMin;
+    private final Section[] sections;
+    private final long hash;
+
+    private ChunkSnapshot(@NonNull Builder builder) {
+        this.world = builder.world;
+        this.chunkX = builder.chunkX;
+        this.chunkZ = builder.chunkZ;
+        this.captured = builder.captured;
+        this.inhabitedTime = builder.inhabitedTime;
+        this.surface = builder.surface;
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (Section section : builder.sections) {
+            min = Math.min(min, section.sectionY);
+            max = Math.max(max, section.sectionY);
+        }
+        this.sectionMin = builder.sections.isEmpty() ? 0 : min;
+        this.sections = new Section[builder.sections.isEmpty() ? 0 : 1 + max - min];
+        for (Section section : builder.sections) {
+            this.sections[section.sectionY - this.sectionMin] = section;
+        }
+
+        long hash = Arrays.hashCode(this.surface);
+        for (Section section : this.sections) {
+            hash = 31 * hash + (section == null ? 0 : section.hash());
+        }
+        this.hash = hash;
+    }
+
+    /**
+     * Start building a snapshot of a chunk.
+     *
+     * @param world  world the chunk is in
+     * @param chunkX chunk x
+     * @param chunkZ chunk z
+     * @return new builder
+     */
+    public static @NonNull Builder builder(@NonNull World world, int chunkX, int chunkZ) {
+        return new Builder(world, chunkX, chunkZ);
+    }
+
+    public @NonNull World getWorld() {
+        return this.world;
+    }
+
+    public int getX() {
+        return this.chunkX;
+    }
+
+    public int getZ() {
+        return this.chunkZ;
+    }
+
+    /**
+     * Get when this snapshot was taken.
+     *
+     * @return capture time in milliseconds
+     */
+    public long getCaptured() {
+        return this.captured;
+    }
+
+    /**
+     * Get a hash of the contents, to tell whether a chunk changed between two snapshots.
+     *
+     * @return content hash
+     */
+    public long getHash() {
+        return this.hash;
+    }
+
+    /**
+     * Turn this snapshot into a chunk of a region, for renderers to scan.
+     *
+     * @param region region the chunk is in
+     * @return chunk backed by this snapshot
+     */
+    public @NonNull Chunk toChunk(@NonNull Region region) {
+        return new SnapshotChunk(region, this).populate();
+    }
+
+    long getInhabitedTime() {
+        return this.inhabitedTime;
+    }
+
+    int getSurface(int x, int z) {
+        return this.surface[((z & 0xF) << 4) + (x & 0xF)];
+    }
+
+    int getSectionMin() {
+        return this.sectionMin;
+    }
+
+    @Nullable Section getSection(int sectionY) {
+        int y = sectionY - this.sectionMin;
+        return y < 0 || y >= this.sections.length ? null : this.sections[y];
+    }
+
+    static class Section {
+        private final int sectionY;
+        private final BlockState[] palette;
+        private final long[] blocks;
+        private final int bitsPerBlock;
+        private final Biome[] biomes;
+        private final byte[] blockLight;
+
+        private Section(int sectionY, @NonNull BlockState @NonNull [] blocks, @NonNull Biome @NonNull [] biomes, byte @Nullable [] blockLight) {
+            this.sectionY = sectionY;
+
+            // palette the states, the platform hands out one instance per state
+            Map<BlockState, Integer> indices = new IdentityHashMap<>();
+            int[] values = new int[blocks.length];
+            for (int i = 0; i < blocks.length; i++) {
+                values[i] = indices.computeIfAbsent(blocks[i], state -> indices.size());
+            }
+            this.palette = new BlockState[indices.size()];
+            indices.forEach((state, index) -> this.palette[index] = state);
+
+            // pack like region files do, values do not span longs
+            if (this.palette.length == 1) {
+                this.bitsPerBlock = 0;
+                this.blocks = new long[0];
+            } else {
+                this.bitsPerBlock = Math.max(4, Integer.SIZE - Integer.numberOfLeadingZeros(this.palette.length - 1));
+                int valuesPerLong = 64 / this.bitsPerBlock;
+                this.blocks = new long[(values.length + valuesPerLong - 1) / valuesPerLong];
+                for (int i = 0; i < values.length; i++) {
+                    this.blocks[i / valuesPerLong] |= (long) values[i] << (i % valuesPerLong) * this.bitsPerBlock;
+                }
+            }
+
+            boolean single = true;
+            for (Biome biome : biomes) {
+                single &= biome == biomes[0];
+            }
+            this.biomes = single ? new Biome[]{biomes[0]} : biomes;
+            this.blockLight = blockLight == null || blockLight.length < 2048 ? new byte[0] : blockLight;
+        }
+
+        @NonNull BlockState getBlockState(int x, int y, int z) {
+            if (this.bitsPerBlock == 0) {
+                return this.palette[0];
+            }
+            int blockIndex = ((y & 0xF) << 8) + ((z & 0xF) << 4) + (x & 0xF);
+            return this.palette[(int) MCAMath.getValueFromLongArray(this.blocks, blockIndex, this.bitsPerBlock)];
+        }
+
+        @NonNull Biome getBiome(int x, int y, int z) {
+            if (this.biomes.length == 1) {
+                return this.biomes[0];
+            }
+            return this.biomes[(((y & 0xF) >> 2) << 4) + (((z & 0xF) >> 2) << 2) + ((x & 0xF) >> 2)];
+        }
+
+        int getLight(int x, int y, int z) {
+            if (this.blockLight.length == 0) {
+                return 0;
+            }
+            int blockByteIndex = ((y & 0xF) << 8) + ((z & 0xF) << 4) + (x & 0xF);
+            return MCAMath.getByteHalf(this.blockLight[blockByteIndex >> 1], (blockByteIndex & 0x1) != 0);
+        }
+
+        private long hash() {
+            long hash = this.sectionY;
+            for (BlockState state : this.palette) {
+                hash = 31 * hash + state.getBlock().getIndex();
+                hash = 31 * hash + ((state.getAge() << 16) | (state.getMoisture() << 8) | (state.getPower() & 0xFF));
+            }
+            hash = 31 * hash + Arrays.hashCode(this.blocks);
+            for (Biome biome : this.biomes) {
+                hash = 31 * hash + biome.index();
+            }
+            return 31 * hash + Arrays.hashCode(this.blockLight);
+        }
+    }
+
+    public static class Builder {
+        private final World world;
+        private final int chunkX;
+        private final int chunkZ;
+        private final long captured = System.currentTimeMillis();
+        private final List<Section> sections = new ArrayList<>();
+        private long inhabitedTime;
+        private int[] surface = new int[0];
+
+        private Builder(@NonNull World world, int chunkX, int chunkZ) {
+            this.world = world;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+        }
+
+        public @NonNull Builder inhabitedTime(long inhabitedTime) {
+            this.inhabitedTime = inhabitedTime;
+            return this;
+        }
+
+        /**
+         * Set the surface height of each column.
+         *
+         * @param surface y of the lowest air block above all non-air blocks, indexed by {@code z << 4 | x}
+         * @return this builder
+         */
+        public @NonNull Builder surface(int @NonNull [] surface) {
+            this.surface = surface;
+            return this;
+        }
+
+        /**
+         * Add a section. Sections not added are treated as air.
+         *
+         * @param sectionY   section y
+         * @param blocks     4096 block states, indexed by {@code y << 8 | z << 4 | x}
+         * @param biomes     64 biomes, one per 4x4x4 cell, indexed by {@code y << 4 | z << 2 | x}
+         * @param blockLight 2048 bytes of block light, or null if dark
+         * @return this builder
+         */
+        public @NonNull Builder section(int sectionY, @NonNull BlockState @NonNull [] blocks, @NonNull Biome @NonNull [] biomes, byte @Nullable [] blockLight) {
+            this.sections.add(new Section(sectionY, blocks, biomes, blockLight));
+            return this;
+        }
+
+        public @NonNull ChunkSnapshot build() {
+            if (this.surface.length != 256) {
+                throw new IllegalStateException("Snapshot needs the surface of all 256 columns");
+            }
+            return new ChunkSnapshot(this);
+        }
+    }
+}
@@ -24,15 +24,21 @@
 package net.pl3x.map.core.world;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
 import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.renderer.progress.RenderProfiler;
+import net.pl3x.map.core.renderer.progress.RenderStageEvent;
 import net.querz.mca.CompressionType;
 import net.querz.nbt.io.NBTInputStream;
 import net.querz.nbt.io.NamedTag;
@@ -48,6 +54,9 @@ public class Region {
     private final File regionFile;
 
     private final Chunk[] chunks = new Chunk[32 << 5];
+    // kept up to date as chunks load, the region cache weighs regions on every lazy chunk load
+    private final AtomicInteger footprint = new AtomicInteger(this.chunks.length * 4);
+    private volatile long lastModified;
 
     private final int hash;
 
@@ -76,7 +85,23 @@ public class Region {
         return this.regionFile;
     }
 
-    private int getChunkIndex(int chunkX, int chunkZ) {
+    /**
+     * Get the last modified time of the region file as it was when its chunks were loaded.
+     *
+     * @return last modified time, or 0 if not loaded
+     */
+    public long getLastModified() {
+        return this.lastModified;
+    }
+
+    /**
+     * Get the index of a chunk within its region, 0 to 1023.
+     *
+     * @param chunkX chunk x
+     * @param chunkZ chunk z
+     * @return chunk index
+     */
+    public static int getChunkIndex(int chunkX, int chunkZ) {
         return (chunkX & 0x1F) + ((chunkZ & 0x1F) << 5);
     }
 
@@ -91,22 +116,121 @@ public class Region {
                 e.printStackTrace();
             }
             if (chunk == null) {
-                return this.chunks[index] = new EmptyChunk(getWorld(), this);
+                chunk = setChunk(index, new EmptyChunk(getWorld(), this));
             }
+            Pl3xMap.api().getRegionCache().reweigh(this);
         }
         return chunk;
     }
 
+    /**
+     * Use a chunk that did not come from the region file, like a snapshot of a loaded chunk.
+     *
+     * @param chunk chunk to use
+     */
+    public void putChunk(@NonNull Chunk chunk) {
+        setChunk(getChunkIndex(chunk.getX(), chunk.getZ()), chunk);
+    }
+
+    /**
+     * Estimate how much heap this region holds with the chunks it has loaded so far.
+     *
+     * @return footprint in bytes
+     */
+    public int getFootprint() {
+        return this.footprint.get();
+    }
+
+    private @NonNull Chunk setChunk(int index, @NonNull Chunk chunk) {
+        Chunk old = this.chunks[index];
+        this.chunks[index] = chunk;
+        this.footprint.addAndGet(footprint(chunk) - footprint(old));
+        return chunk;
+    }
+
+    private static int footprint(@Nullable Chunk chunk) {
+        if (chunk == null) {
+            return 0;
+        }
+        return chunk instanceof EmptyChunk ? Chunk.EMPTY_FOOTPRINT : Chunk.FOOTPRINT;
+    }
+
     public void loadChunks() throws IOException {
         if (!getRegionFile().exists() || getRegionFile().length() <= 0) {
             return;
         }
+        this.lastModified = getRegionFile().lastModified();
         try (RandomAccessFile raf = new RandomAccessFile(getRegionFile(), "r")) {
             for (int index = 0; index < this.chunks.length; index++) {
-                Pl3xMap.api().getRegionProcessor().checkPaused();
+                Pl3xMap.api().getRegionProcessor().checkPaused(getWorld());
                 loadChunk(raf, index);
             }
         }
+        Pl3xMap.api().getRegionCache().reweigh(this);
+    }
+
+    /**
+     * Read the whole region file into memory.
+     *
+     * @return region file contents, or null if there is no region file
+     * @throws IOException if the file could not be read
+     */
+    public byte @Nullable [] readFile() throws IOException {
+        if (!getRegionFile().exists() || getRegionFile().length() <= 0) {
+            return null;
+        }
+        this.lastModified = getRegionFile().lastModified();
+        RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+        RenderStageEvent read = profiler.start(RenderProfiler.Stage.READ);
+        byte[] data = Files.readAllBytes(getRegionFile().toPath());
+        profiler.stop(read);
+        profiler.addBytesRead(data.length);
+        return data;
+    }
+
+    /**
+     * Decompress and parse all chunks from region file contents read by {@link #readFile()}.
+     *
+     * @param data region file contents
+     * @throws IOException if a chunk could not be parsed
+     */
+    public void loadChunks(byte @NonNull [] data) throws IOException {
+        for (int index = 0; index < this.chunks.length; index++) {
+            Pl3xMap.api().getRegionProcessor().checkPaused(getWorld());
+            loadChunk(data, index);
+        }
+        Pl3xMap.api().getRegionCache().reweigh(this);
+    }
+
+    private @NonNull Chunk loadChunk(byte @NonNull [] data, int index) throws IOException {
+        int pos = index * 4;
+        if (pos + 4 > data.length || data[pos + 3] == 0) {
+            return setChunk(index, new EmptyChunk(getWorld(), this));
+        }
+        int offset = (data[pos] & 0xFF) << 16 | (data[pos + 1] & 0xFF) << 8 | data[pos + 2] & 0xFF;
+        int start = 4096 * offset;
+        if (start + 5 > data.length) {
+            throw new IOException("Chunk " + index + " points outside of region file");
+        }
+        int length = (data[start] & 0xFF) << 24 | (data[start + 1] & 0xFF) << 16 | (data[start + 2] & 0xFF) << 8 | data[start + 3] & 0xFF;
+
+        byte compressionTypeByte = data[start + 4];
+        CompressionType compressionType = CompressionType.getFromID(compressionTypeByte);
+        if (compressionType == null) {
+            throw new IOException("Invalid compression type " + compressionTypeByte);
+        }
+
+        InputStream in = new ByteArrayInputStream(data, start + 5, Math.max(0, Math.min(length - 1, data.length - start - 5)));
+        RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+        if (profiler.isEnabled()) {
+            // decompress up front, otherwise it happens bit by bit while parsing
+            RenderStageEvent decompress = profiler.start(RenderProfiler.Stage.DECOMPRESS);
+            byte[] nbt = compressionType.decompress(in).readAllBytes();
+            profiler.stop(decompress);
+            return setChunk(index, readChunk(new DataInputStream(new ByteArrayInputStream(nbt))));
+        }
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(compressionType.decompress(in)));
+        return setChunk(index, readChunk(dis));
     }
 
     public @NonNull Chunk loadChunk(@NonNull RandomAccessFile raf, int index) throws IOException {
@@ -115,7 +239,7 @@ public class Region {
         offset |= (raf.read() & 0xFF) << 8;
         offset |= raf.read() & 0xFF;
         if (raf.readByte() == 0) {
-            return this.chunks[index] = new EmptyChunk(getWorld(), this);
+            return setChunk(index, new EmptyChunk(getWorld(), this));
         }
         raf.seek(4096L * offset + 4); // +4 skip chunk size
 
@@ -126,9 +250,19 @@ public class Region {
         }
 
         DataInputStream dis = new DataInputStream(new BufferedInputStream(compressionType.decompress(new FileInputStream(raf.getFD()))));
+        return setChunk(index, readChunk(dis));
+    }
+
+    private @NonNull Chunk readChunk(@NonNull DataInputStream dis) throws IOException {
+        RenderProfiler profiler = Pl3xMap.api().getRenderProfiler();
+        RenderStageEvent parse = profiler.start(RenderProfiler.Stage.PARSE);
         NamedTag tag = new NBTInputStream(dis).readTag(Tag.DEFAULT_MAX_DEPTH);
+        profiler.stop(parse);
         if (tag != null && tag.getTag() instanceof CompoundTag compoundTag) {
-            return this.chunks[index] = Chunk.create(getWorld(), this, compoundTag).populate();
+            RenderStageEvent populate = profiler.start(RenderProfiler.Stage.POPULATE);
+            Chunk chunk = Chunk.create(getWorld(), this, compoundTag).populate();
+            profiler.stop(populate);
+            return chunk;
         } else {
             throw new IOException("Invalid data tag: " + (tag == null ? "null" : tag.getName()));
         }
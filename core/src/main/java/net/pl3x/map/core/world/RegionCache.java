@@ -0,0 +1,182 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.log.Logger;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Decoded regions of all worlds, weighed by the heap they hold.
+ * <p>
+ * The cache shares one byte budget between all worlds. When the heap is still
+ * nearly full right after a garbage collection, the coldest half of the cache is dropped.
+ */
+public class RegionCache {
+    // used heap after a collection (of the max heap) that counts as memory pressure
+    private static final double PRESSURE_THRESHOLD = 0.85D;
+
+    private final Cache<@NonNull Key, @NonNull Region> cache;
+    private final NotificationListener pressureListener = this::onNotification;
+    private final List<@NonNull MemoryPoolMXBean> watchedPools = new ArrayList<>();
+
+    public RegionCache() {
+        this.cache = Caffeine.newBuilder()
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .maximumWeight(getBudget())
+                .weigher((Key key, Region region) -> region.getFootprint())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Apply the configured budget and start watching for heap pressure.
+     */
+    public void start() {
+        eviction().setMaximum(getBudget());
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            // only the old generation supports this, leave pools alone someone else already watches
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()
+                    || pool.getCollectionUsageThreshold() > 0 || pool.getUsage().getMax() <= 0) {
+                continue;
+            }
+            pool.setCollectionUsageThreshold((long) (pool.getUsage().getMax() * PRESSURE_THRESHOLD));
+            this.watchedPools.add(pool);
+        }
+        if (!this.watchedPools.isEmpty()) {
+            ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).addNotificationListener(this.pressureListener, null, null);
+        }
+    }
+
+    /**
+     * Stop watching for heap pressure and forget all cached regions.
+     */
+    public void stop() {
+        if (!this.watchedPools.isEmpty()) {
+            try {
+                ((NotificationEmitter) ManagementFactory.getMemoryMXBean()).removeNotificationListener(this.pressureListener);
+            } catch (ListenerNotFoundException ignore) {
+            }
+            this.watchedPools.forEach(pool -> pool.setCollectionUsageThreshold(0));
+            this.watchedPools.clear();
+        }
+        this.cache.invalidateAll();
+    }
+
+    /**
+     * Get a region, creating it if not cached.
+     *
+     * @param world   world the region is in
+     * @param regionX region x
+     * @param regionZ region z
+     * @return region
+     */
+    public @NonNull Region get(@NonNull World world, int regionX, int regionZ) {
+        return this.cache.get(new Key(world, regionX, regionZ), key -> world.loadRegion(regionX, regionZ));
+    }
+
+    /**
+     * Weigh a cached region again after loading more of its chunks.
+     *
+     * @param region region that grew
+     */
+    public void reweigh(@NonNull Region region) {
+        this.cache.asMap().replace(new Key(region.getWorld(), region.getX(), region.getZ()), region, region);
+    }
+
+    public void invalidate(@NonNull World world, int regionX, int regionZ) {
+        this.cache.invalidate(new Key(world, regionX, regionZ));
+    }
+
+    public void invalidateAll(@NonNull World world) {
+        this.cache.asMap().keySet().removeIf(key -> key.world().equals(world));
+    }
+
+    public long size() {
+        return this.cache.estimatedSize();
+    }
+
+    /**
+     * Get the heap (in bytes) the cached regions are estimated to hold.
+     *
+     * @return weighted size in bytes
+     */
+    public long weightedSize() {
+        return eviction().weightedSize().orElse(0L);
+    }
+
+    public @NonNull CacheStats stats() {
+        return this.cache.stats();
+    }
+
+    /**
+     * Get the amount of heap cached regions may hold together.
+     *
+     * @return budget in bytes
+     */
+    public static long getBudget() {
+        if (Config.REGION_CACHE > 0) {
+            return Config.REGION_CACHE * 1024L * 1024L;
+        }
+        long max = Runtime.getRuntime().maxMemory();
+        // a tenth of the heap, regions being rendered have their own budget
+        return max == Long.MAX_VALUE ? 512L * 1024L * 1024L : max / 10;
+    }
+
+    private Policy.@NonNull Eviction<@NonNull Key, @NonNull Region> eviction() {
+        return this.cache.policy().eviction().orElseThrow();
+    }
+
+    private void onNotification(@NonNull Notification notification, Object handback) {
+        if (!MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            return;
+        }
+        long weight = weightedSize();
+        if (weight <= 0) {
+            return;
+        }
+        // still short on heap right after a collection, let go of the coldest half
+        this.cache.invalidateAll(eviction().coldestWeighted(weight / 2).keySet());
+        Logger.debug("Heap pressure, dropped cached regions down to " + (weightedSize() >> 20) + " MiB");
+    }
+
+    private record Key(@NonNull World world, int x, int z) {
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.util.LongLongMap;
+import net.pl3x.map.core.util.Mathf;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Region files of a world with their size and last modified time, kept on disk between restarts.
+ * <p>
+ * Adding or removing region files changes the modified time of the region directory, so it
+ * is only listed again when that changed. Region files are written in place though, so their
+ * attributes are read again whenever fresh timestamps are needed, in parallel batches on the
+ * io executor.
+ */
+public class RegionIndex {
+    private static final int MAGIC = 0x52494E01; // "RIN" version 1
+    private static final int BATCH_SIZE = 256;
+
+    private final World world;
+    private final Path file;
+
+    private long directoryModified = -1;
+    private long[] positions = new long[0];
+    private LongLongMap sizes = new LongLongMap();
+    private LongLongMap modified = new LongLongMap();
+    private boolean loaded;
+
+    public RegionIndex(@NonNull World world) {
+        this.world = world;
+        this.file = world.getDataDirectory().resolve("regions");
+    }
+
+    /**
+     * List the region files worth rendering.
+     *
+     * @param ignoreTimestamp true to list all regions, false to only list regions modified since they were last rendered
+     * @return regions to render
+     */
+    public synchronized @NonNull Collection<@NonNull Point> listRegions(boolean ignoreTimestamp) {
+        if (!this.loaded) {
+            load();
+            this.loaded = true;
+        }
+        try {
+            if (refresh(!ignoreTimestamp)) {
+                save();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to list region files in directory '" + this.world.getRegionDirectory().toAbsolutePath() + "'", e);
+        }
+
+        List<Point> regions = new ArrayList<>();
+        for (long pos : this.positions) {
+            int rX = Mathf.longToX(pos);
+            int rZ = Mathf.longToZ(pos);
+            if (this.sizes.get(pos, 0) <= 0) {
+                Logger.debug("Skipping zero length region file: r." + rX + "." + rZ + ".mca");
+                continue;
+            }
+            if (!this.world.visibleRegion(rX, rZ)) {
+                Logger.debug("Skipping region outside of visible areas: r." + rX + "." + rZ + ".mca");
+                continue;
+            }
+            if (ignoreTimestamp || this.modified.get(pos, 0) > this.world.getRegionModifiedState().get(pos)) {
+                regions.add(Point.of(rX, rZ));
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Bring the index up to date with the region directory.
+     *
+     * @param attributes true to read the attributes of every region file again
+     * @return true if the index changed
+     * @throws IOException if the region directory could not be read
+     */
+    private boolean refresh(boolean attributes) throws IOException {
+        Path dir = this.world.getRegionDirectory();
+        if (!Files.isDirectory(dir)) {
+            boolean changed = this.positions.length > 0;
+            this.positions = new long[0];
+            return changed;
+        }
+
+        long dirModified = Files.getLastModifiedTime(dir).toMillis();
+        boolean listed = dirModified != this.directoryModified;
+        if (listed) {
+            List<Long> list = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "r.*.*.mca")) {
+                for (Path path : stream) {
+                    Point region = FileUtil.regionFileToPoint(path.getFileName().toString());
+                    if (region != null) {
+                        list.add(Mathf.asLong(region));
+                    }
+                }
+            }
+            this.positions = list.stream().mapToLong(Long::longValue).toArray();
+            this.directoryModified = dirModified;
+        }
+
+        if (!listed && !attributes) {
+            return false;
+        }
+
+        Stat stat = new Stat(dir, this.positions, 0, this.positions.length, new long[this.positions.length], new long[this.positions.length]);
+        ExecutorService executor = Pl3xMap.api().getIOExecutor();
+        if (executor instanceof ForkJoinPool pool) {
+            pool.invoke(stat);
+        } else {
+            stat.compute();
+        }
+
+        LongLongMap sizes = new LongLongMap(this.positions.length);
+        LongLongMap modified = new LongLongMap(this.positions.length);
+        boolean changed = listed;
+        for (int i = 0; i < this.positions.length; i++) {
+            long pos = this.positions[i];
+            changed |= this.sizes.get(pos, -1) != stat.sizes[i] || this.modified.get(pos, -1) != stat.modified[i];
+            sizes.put(pos, stat.sizes[i]);
+            modified.put(pos, stat.modified[i]);
+        }
+        this.sizes = sizes;
+        this.modified = modified;
+        return changed;
+    }
+
+    private void load() {
+        if (!Files.exists(this.file)) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new GZIPInputStream(Files.newInputStream(this.file)), crc))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a region index");
+            }
+            long dirModified = in.readLong();
+            int size = in.readInt();
+            long[] positions = new long[size];
+            LongLongMap sizes = new LongLongMap(size);
+            LongLongMap modified = new LongLongMap(size);
+            for (int i = 0; i < size; i++) {
+                positions[i] = in.readLong();
+                sizes.put(positions[i], in.readLong());
+                modified.put(positions[i], in.readLong());
+            }
+            int expected = (int) crc.getValue();
+            if (in.readInt() != expected) {
+                throw new IOException("Checksum mismatch");
+            }
+            this.directoryModified = dirModified;
+            this.positions = positions;
+            this.sizes = sizes;
+            this.modified = modified;
+        } catch (IOException e) {
+            // no harm done, the directory just gets listed again
+            Logger.warn("Ignoring corrupt region index " + this.file, e);
+        }
+    }
+
+    private void save() {
+        try {
+            CRC32 crc = new CRC32();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new GZIPOutputStream(bytes), crc))) {
+                out.writeInt(MAGIC);
+                out.writeLong(this.directoryModified);
+                out.writeInt(this.positions.length);
+                for (long pos : this.positions) {
+                    out.writeLong(pos);
+                    out.writeLong(this.sizes.get(pos, 0));
+                    out.writeLong(this.modified.get(pos, 0));
+                }
+                out.writeInt((int) crc.getValue());
+            }
+            FileUtil.writeAtomic(bytes.toByteArray(), this.file);
+        } catch (IOException e) {
+            Logger.warn("Failed to save region index " + this.file, e);
+        }
+    }
+
+    /**
+     * Reads the size and last modified time of a range of region files, splitting into batches.
+     */
+    private static class Stat extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final long[] positions;
+        private final int from;
+        private final int to;
+        private final long[] sizes;
+        private final long[] modified;
+
+        private Stat(@NonNull Path dir, long @NonNull [] positions, int from, int to, long @NonNull [] sizes, long @NonNull [] modified) {
+            this.dir = dir;
+            this.positions = positions;
+            this.from = from;
+            this.to = to;
+            this.sizes = sizes;
+            this.modified = modified;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > BATCH_SIZE) {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new Stat(this.dir, this.positions, this.from, mid, this.sizes, this.modified),
+                        new Stat(this.dir, this.positions, mid, this.to, this.sizes, this.modified));
+                return;
+            }
+            for (int i = this.from; i < this.to; i++) {
+                long pos = this.positions[i];
+                Path path = this.dir.resolve("r." + Mathf.longToX(pos) + "." + Mathf.longToZ(pos) + ".mca");
+                try {
+                    // one stat for both size and modified time
+                    BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                    this.sizes[i] = attrs.size();
+                    this.modified[i] = attrs.lastModifiedTime().toMillis();
+                } catch (NoSuchFileException e) {
+                    this.sizes[i] = 0;
+                    this.modified[i] = 0;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+    }
+}
@@ -24,53 +24,193 @@
  */
 package net.pl3x.map.core.world;
 
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import net.pl3x.map.core.log.Logger;
+import net.pl3x.map.core.util.FileUtil;
+import net.pl3x.map.core.util.LongLongMap;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
+/**
+ * Remembers when each region was last rendered, so unchanged regions are skipped on startup.
+ * <p>
+ * Every render is appended to a journal right away, so a crash only loses the renders that were
+ * still in flight. The journal is folded into the snapshot once it grows large, and on save.
+ * Both carry checksums, a torn record at the end of the journal is dropped.
+ */
 public class RegionModifiedState {
-    private final Map<@NonNull Long, @NonNull Long> regionModifiedStates = new ConcurrentHashMap<>(); // <pos, modified>
-    private final File file;
+    // "RMS" and format version, older snapshots start with their entry count instead
+    private static final int MAGIC = 0x524D5302;
+    // position, modified time and checksum
+    private static final int RECORD_SIZE = 8 + 8 + 4;
+    // journal records to allow before compacting, at least
+    private static final int MIN_COMPACT = 4096;
+
+    private final LongLongMap regionModifiedStates = new LongLongMap(); // <pos, modified>
+    private final Path file;
+    private final Path journalFile;
+
+    private OutputStream journal;
+    private int journalRecords;
+    private boolean tornJournal;
 
     public RegionModifiedState(@NonNull World world) {
-        this.file = world.getTilesDirectory().resolve(".rms").toFile();
+        this.file = world.getTilesDirectory().resolve(".rms");
+        this.journalFile = world.getTilesDirectory().resolve(".rms.journal");
 
-        if (this.file.exists()) {
-            try (DataInputStream in = new DataInputStream(new GZIPInputStream(new FileInputStream(this.file)))) {
-                int size = in.readInt();
-                for (int i = 0; i < size; i++) {
-                    this.regionModifiedStates.put(in.readLong(), in.readLong());
-                }
-            } catch (Throwable ignore) {
+        loadSnapshot();
+        // do not append behind a torn record, start over with a fresh journal on the next write.
+        // only loading never writes, so other processes can read the state of a shared tiles directory
+        this.tornJournal = !loadJournal();
+    }
+
+    public synchronized void set(long regionPos, long modified) {
+        this.regionModifiedStates.put(regionPos, modified);
+        if (this.tornJournal) {
+            // the fresh snapshot has this one too
+            compact();
+            return;
+        }
+        append(regionPos, modified);
+        if (this.journalRecords > Math.max(MIN_COMPACT, this.regionModifiedStates.size())) {
+            compact();
+        }
+    }
+
+    public synchronized long get(long regionPos) {
+        return this.regionModifiedStates.get(regionPos, -1);
+    }
+
+    /**
+     * Fold the journal into the snapshot.
+     */
+    public synchronized void save() {
+        compact();
+    }
+
+    private void append(long regionPos, long modified) {
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE).putLong(regionPos).putLong(modified);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, 16);
+        record.putInt((int) crc.getValue());
+        try {
+            if (this.journal == null) {
+                Files.createDirectories(this.journalFile.getParent());
+                this.journal = new FileOutputStream(this.journalFile.toFile(), true);
             }
+            // one write per record, so a crash can only tear the last one
+            this.journal.write(record.array());
+            this.journalRecords++;
+        } catch (IOException e) {
+            Logger.warn("Failed to journal region modified state to " + this.journalFile, e);
         }
     }
 
-    public void set(long regionPos, long modified) {
-        this.regionModifiedStates.put(regionPos, modified);
+    private void compact() {
+        closeJournal();
+        try {
+            CRC32 crc = new CRC32();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new GZIPOutputStream(bytes), crc))) {
+                out.writeInt(MAGIC);
+                out.writeInt(this.regionModifiedStates.size());
+                this.regionModifiedStates.forEach((pos, modified) -> {
+                    try {
+                        out.writeLong(pos);
+                        out.writeLong(modified);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                out.writeInt((int) crc.getValue());
+            }
+            FileUtil.writeAtomic(bytes.toByteArray(), this.file);
+            // only drop the journal once the snapshot is safely on disk
+            Files.deleteIfExists(this.journalFile);
+            this.journalRecords = 0;
+            this.tornJournal = false;
+        } catch (IOException | RuntimeException e) {
+            Logger.warn("Failed to save region modified state to " + this.file, e);
+        }
     }
 
-    public long get(long regionPos) {
-        Long modified = this.regionModifiedStates.get(regionPos);
-        return modified == null ? -1 : modified;
+    private void closeJournal() {
+        if (this.journal == null) {
+            return;
+        }
+        try {
+            this.journal.close();
+        } catch (IOException ignore) {
+        }
+        this.journal = null;
     }
 
-    public void save() {
-        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new FileOutputStream(this.file)))) {
-            out.writeInt(this.regionModifiedStates.size());
-            for (Map.Entry<Long, Long> entry : this.regionModifiedStates.entrySet()) {
-                out.writeLong(entry.getKey());
-                out.writeLong(entry.getValue());
+    private void loadSnapshot() {
+        if (!Files.exists(this.file)) {
+            return;
+        }
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new CheckedInputStream(new GZIPInputStream(Files.newInputStream(this.file)), crc))) {
+            int header = in.readInt();
+            boolean legacy = header != MAGIC;
+            int size = legacy ? header : in.readInt();
+            for (int i = 0; i < size; i++) {
+                this.regionModifiedStates.put(in.readLong(), in.readLong());
+            }
+            if (!legacy) {
+                int expected = (int) crc.getValue();
+                if (in.readInt() != expected) {
+                    throw new IOException("Checksum mismatch");
+                }
             }
-            out.flush();
-        } catch (Throwable ignore) {
+        } catch (IOException e) {
+            // better to render some regions again than to skip regions that need it
+            Logger.warn("Ignoring corrupt region modified state " + this.file, e);
+            this.regionModifiedStates.clear();
+        }
+    }
+
+    private boolean loadJournal() {
+        if (!Files.exists(this.journalFile)) {
+            return true;
+        }
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(this.journalFile);
+        } catch (IOException e) {
+            Logger.warn("Failed to read region modified state journal " + this.journalFile, e);
+            return false;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_SIZE) {
+            crc.reset();
+            crc.update(bytes, buffer.position(), 16);
+            long pos = buffer.getLong();
+            long modified = buffer.getLong();
+            if (buffer.getInt() != (int) crc.getValue()) {
+                Logger.warn("Dropping " + (buffer.remaining() + RECORD_SIZE) + " bytes of torn region modified state journal " + this.journalFile);
+                return false;
+            }
+            this.regionModifiedStates.put(pos, modified);
+            this.journalRecords++;
+        }
+        if (buffer.hasRemaining()) {
+            Logger.warn("Dropping " + buffer.remaining() + " bytes of torn region modified state journal " + this.journalFile);
+            return false;
         }
+        return true;
     }
 }
@@ -0,0 +1,123 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import java.util.HashMap;
+import java.util.Map;
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.configuration.Config;
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.util.LongLongMap;
+import net.pl3x.map.core.util.Mathf;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * Chunks of a world the server saved and that wait to be rendered.
+ * <p>
+ * Platforms mark chunks from their chunk save hooks, which run on the server thread,
+ * so marking a chunk only stores its position. Marked chunks are handed out per region
+ * once the server had time to write them to the region file.
+ */
+public class SavedChunks {
+    private LongLongMap chunks = new LongLongMap(); // <chunk pos, time saved>
+    private final LongLongMap regions = new LongLongMap(); // <region pos, time a chunk was last saved>
+    private long lastPruned;
+
+    /**
+     * Mark a chunk as saved.
+     *
+     * @param chunkX chunk x
+     * @param chunkZ chunk z
+     */
+    public synchronized void mark(int chunkX, int chunkZ) {
+        long now = System.currentTimeMillis();
+        this.chunks.put(Mathf.asLong(chunkX, chunkZ), now);
+        this.regions.put(Mathf.asLong(chunkX >> 5, chunkZ >> 5), now);
+    }
+
+    /**
+     * Take out the marked chunks of all regions where no chunk was saved after the given time.
+     * <p>
+     * The server saves many chunks of a region in a burst, so a region is held back
+     * until its burst is over and then rendered once.
+     *
+     * @param before time the last save of a region has to be before
+     * @return chunks per region, as a bit per chunk index (see {@link Region#getChunkIndex(int, int)})
+     */
+    public synchronized @NonNull Map<@NonNull Point, long @NonNull []> drain(long before) {
+        // region saves only matter until the watcher sees the file change they caused
+        long keep = Math.max(0, Config.SAVED_CHUNKS_DELAY) + Math.max(0, Config.REGION_WATCHER_QUIET_PERIOD);
+        if (Config.REGION_WATCHER_MODE.equalsIgnoreCase("poll")) {
+            keep += Math.max(1, Config.REGION_WATCHER_POLL_INTERVAL) * 1000L;
+        }
+        long now = System.currentTimeMillis();
+        if (now - this.lastPruned >= keep && this.regions.size() > 0) {
+            this.lastPruned = now;
+            long oldest = now - keep;
+            this.regions.removeIf((pos, time) -> time < oldest);
+        }
+
+        if (this.chunks.size() == 0) {
+            return Map.of();
+        }
+        LongLongMap latest = new LongLongMap();
+        this.chunks.forEach((pos, time) -> {
+            long region = Mathf.asLong(Mathf.longToX(pos) >> 5, Mathf.longToZ(pos) >> 5);
+            latest.put(region, Math.max(time, latest.get(region, 0)));
+        });
+
+        Map<Point, long[]> ready = new HashMap<>();
+        LongLongMap waiting = new LongLongMap();
+        this.chunks.forEach((pos, time) -> {
+            int chunkX = Mathf.longToX(pos);
+            int chunkZ = Mathf.longToZ(pos);
+            if (latest.get(Mathf.asLong(chunkX >> 5, chunkZ >> 5), 0) > before) {
+                waiting.put(pos, time);
+                return;
+            }
+            int index = Region.getChunkIndex(chunkX, chunkZ);
+            ready.computeIfAbsent(Point.of(chunkX >> 5, chunkZ >> 5), k -> new long[16])[index >> 6] |= 1L << index;
+        });
+        this.chunks = waiting;
+        return ready;
+    }
+
+    /**
+     * Check whether a change to a region file is explained by chunk saves reported for it.
+     * <p>
+     * Only platforms reporting every chunk save can tell, see {@link Pl3xMap#reportsChunkSaves()}.
+     *
+     * @param region   region position
+     * @param modified modified time of the region file
+     * @return true if the change is already queued through chunk saves
+     */
+    public synchronized boolean covers(long region, long modified) {
+        if (!Pl3xMap.api().reportsChunkSaves()) {
+            return false;
+        }
+        long saved = this.regions.get(region, 0);
+        // the file is written in the background shortly after the save
+        return saved > 0 && modified <= saved + Math.max(0, Config.SAVED_CHUNKS_DELAY);
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2020-2023 William Blake Galbreath
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package net.pl3x.map.core.world;
+
+import net.pl3x.map.core.util.Colors;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+/**
+ * A chunk backed by a {@link ChunkSnapshot} of a loaded chunk.
+ */
+class SnapshotChunk extends Chunk {
+    private final ChunkSnapshot snapshot;
+
+    SnapshotChunk(@NonNull Region region, @NonNull ChunkSnapshot snapshot) {
+        super(snapshot.getWorld(), region, snapshot.getX(), 0, snapshot.getZ(), snapshot.getInhabitedTime());
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public boolean isFull() {
+        return true;
+    }
+
+    @Override
+    public boolean noHeightmap() {
+        return false;
+    }
+
+    @Override
+    public int getWorldSurfaceY(int x, int z) {
+        return this.snapshot.getSurface(x, z);
+    }
+
+    @Override
+    public @NonNull BlockState getBlockState(int x, int y, int z) {
+        ChunkSnapshot.Section section = this.snapshot.getSection(y >> 4);
+        return section == null ? Blocks.AIR.getDefaultState() : section.getBlockState(x, y, z);
+    }
+
+    @Override
+    public int getLight(int x, int y, int z) {
+        int sectionY = y >> 4;
+        ChunkSnapshot.Section section = this.snapshot.getSection(sectionY);
+        if (section == null) {
+            return (sectionY < this.snapshot.getSectionMin()) ? 0 : getWorld().getSkylight();
+        }
+        return section.getLight(x, y, z);
+    }
+
+    @Override
+    public @NonNull Biome getBiome(int x, int y, int z) {
+        ChunkSnapshot.Section section = this.snapshot.getSection(y >> 4);
+        return section == null ? Biome.DEFAULT : section.getBiome(x, y, z);
+    }
+
+    @Override
+    public @NonNull Chunk populate() {
+        if (this.populated) {
+            return this;
+        }
+
+        // block coordinates for most northwest block in chunk
+        int startX = getX() << 4;
+        int startZ = getZ() << 4;
+
+        for (int blockZ = startZ; blockZ < startZ + 16; blockZ++) {
+            for (int blockX = startX; blockX < startX + 16; blockX++) {
+                BlockData data = new BlockData();
+                data.blockY = getWorldSurfaceY(blockX, blockZ) + 1;
+
+                // if world has ceiling iterate down until we find air
+                if (getWorld().hasCeiling()) {
+                    data.blockY = getWorld().getLogicalHeight();
+                    do {
+                        data.blockY -= 1;
+                        data.blockstate = getBlockState(blockX, data.blockY, blockZ);
+                    } while (data.blockY > getWorld().getMinBuildHeight() && !data.blockstate.getBlock().isAir());
+                }
+
+                // iterate down until we find a renderable block
+                do {
+                    data.blockY -= 1;
+                    data.blockstate = getBlockState(blockX, data.blockY, blockZ);
+                    if (data.blockstate.getBlock().isFluid()) {
+                        if (data.fluidstate == null) {
+                            // biome is lazy loaded on first get, same as region chunks
+                            data.fluidY = data.blockY;
+                            data.fluidstate = data.blockstate;
+                        }
+                        continue;
+                    }
+
+                    int blockColor = Colors.getRawBlockColor(data.blockstate.getBlock());
+
+                    if (getWorld().getConfig().RENDER_TRANSLUCENT_GLASS && data.blockstate.getBlock().isGlass()) {
+                        // translucent glass. store this color and keep iterating
+                        data.glass.addFirst(Colors.setAlpha(0x99, blockColor));
+                        continue;
+                    }
+
+                    // test if block is renderable. we ignore blocks with black color
+                    if (blockColor > 0) {
+                        break;
+                    }
+                } while (data.blockY > getWorld().getMinBuildHeight());
+
+                this.data[((blockZ & 0xF) << 4) + (blockX & 0xF)] = data;
+            }
+        }
+
+        this.populated = true;
+        return this;
+    }
+}
@@ -36,7 +36,10 @@ import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Stream;
 import javax.imageio.ImageIO;
 import net.pl3x.map.core.Keyed;
@@ -69,7 +72,11 @@ public abstract class World extends Keyed {
     public static final PathMatcher MCA_MATCHER = FileSystems.getDefault().getPathMatcher("glob:**/r.*.*.mca");
     public static final PathMatcher PNG_MATCHER = FileSystems.getDefault().getPathMatcher("glob:**/*_*.png");
 
+    // heap (in bytes) the border strips of one world may hold
+    private static final long BORDER_STRIP_BUDGET = 16L << 20;
+
     private final Path customMarkersDirectory;
+    private final Path dataDirectory;
     private final Path markersDirectory;
     private final Path regionDirectory;
     private final Path tilesDirectory;
@@ -83,9 +90,10 @@ public abstract class World extends Keyed {
     private final BiomeRegistry biomeRegistry;
     private final Registry<@NonNull Layer> layerRegistry;
 
-    private final LoadingCache<@NonNull Long, @NonNull Region> regionCache;
+    private final LoadingCache<@NonNull Long, @NonNull BorderStrip> borderStrips;
     private final RegionModifiedState regionModifiedState;
-    private final RegionFileWatcher regionFileWatcher;
+    private final RegionIndex regionIndex;
+    private final SavedChunks savedChunks = new SavedChunks();
     private final UpdateMarkerData markerTask;
     private final Map<@NonNull String, Renderer.@NonNull Builder> renderers = new LinkedHashMap<>();
 
@@ -99,6 +107,7 @@ public abstract class World extends Keyed {
         this.regionDirectory = regionDirectory;
         this.tilesDirectory = FileUtil.getTilesDir().resolve(name.replace(":", "-"));
         this.customMarkersDirectory = Pl3xMap.api().getMainDir().resolve("markers").resolve(name);
+        this.dataDirectory = Pl3xMap.api().getMainDir().resolve("data").resolve(name.replace(":", "-"));
         this.markersDirectory = getTilesDirectory().resolve("markers");
 
         if (!Files.exists(this.regionDirectory)) {
@@ -114,13 +123,17 @@ public abstract class World extends Keyed {
         this.biomeRegistry = new BiomeRegistry();
         this.layerRegistry = new Registry<>();
 
-        this.regionCache = Caffeine.newBuilder()
+        // border strips hold about 64 KiB each, a sixteenth of a decoded region. keep a few hundred
+        // around, bounded by their heap. expire after write so a strip gone stale without the
+        // region being rendered again does not stick around
+        this.borderStrips = Caffeine.newBuilder()
                 .expireAfterWrite(1, TimeUnit.MINUTES)
-                .maximumSize(100)
-                .build(this::loadRegion);
+                .maximumWeight(BORDER_STRIP_BUDGET)
+                .weigher((Long key, BorderStrip strip) -> strip.getFootprint())
+                .build(this::loadBorderStrip);
 
         this.regionModifiedState = new RegionModifiedState(this);
-        this.regionFileWatcher = new RegionFileWatcher(this);
+        this.regionIndex = new RegionIndex(this);
         this.markerTask = new UpdateMarkerData(this);
 
         Pl3xMap.api().getEventRegistry().callEvent(new WorldLoadedEvent(this));
@@ -131,11 +144,11 @@ public abstract class World extends Keyed {
             return;
         }
 
-        this.regionFileWatcher.start();
+        Pl3xMap.api().getRegionFileWatcher().register(this);
 
+        loadRenderers();
         getConfig().RENDER_RENDERERS.forEach((id, icon) -> {
-            Renderer.Builder renderer = Pl3xMap.api().getRendererRegistry().get(id);
-            if (renderer == null) {
+            if (!this.renderers.containsKey(id)) {
                 return;
             }
             Path path = FileUtil.getWebDir().resolve("images/icon/" + icon + ".png");
@@ -146,7 +159,6 @@ public abstract class World extends Keyed {
                 Logger.severe("Cannot load world renderer icon " + path);
                 e.printStackTrace();
             }
-            this.renderers.put(renderer.getKey(), renderer);
         });
 
         if (getConfig().MARKERS_WORLDBORDER_ENABLED) {
@@ -164,8 +176,17 @@ public abstract class World extends Keyed {
             getLayerRegistry().register(PlayersLayer.KEY, new PlayersLayer(this));
         }
 
-        Logger.debug("Checking all region files");
-        Pl3xMap.api().getRegionProcessor().addRegions(this, listRegions(false));
+        // checking region files is mostly waiting on the disk, let worlds do that side by side
+        CompletableFuture.runAsync(() -> {
+            Logger.debug("Checking all region files for " + getName());
+            Pl3xMap.api().getRegionProcessor().addRegions(this, listRegions(false));
+
+            Logger.debug("Resuming render jobs for " + getName());
+            Pl3xMap.api().getRegionProcessor().getJobs().resume(this);
+        }, Pl3xMap.api().getIOExecutor()).exceptionally(throwable -> {
+            throwable.printStackTrace();
+            return null;
+        });
 
         Logger.debug("Starting marker task");
         Pl3xMap.api().getScheduler().addTask(1, true, this.markerTask);
@@ -177,8 +198,21 @@ public abstract class World extends Keyed {
         }
     }
 
+    /**
+     * Look up the renderers this world is configured to use.
+     */
+    protected void loadRenderers() {
+        getConfig().RENDER_RENDERERS.forEach((id, icon) -> {
+            Renderer.Builder renderer = Pl3xMap.api().getRendererRegistry().get(id);
+            if (renderer != null) {
+                this.renderers.put(renderer.getKey(), renderer);
+            }
+        });
+    }
+
     public void cleanup() {
-        this.regionCache.invalidateAll();
+        Pl3xMap.api().getRegionCache().invalidateAll(this);
+        this.borderStrips.invalidateAll();
         getRegionModifiedState().save();
     }
 
@@ -198,6 +232,15 @@ public abstract class World extends Keyed {
         return this.tilesDirectory;
     }
 
+    /**
+     * Get the directory for internal world data, kept out of the web directory.
+     *
+     * @return world data directory
+     */
+    public @NonNull Path getDataDirectory() {
+        return this.dataDirectory;
+    }
+
     public @NonNull WorldConfig getConfig() {
         return this.worldConfig;
     }
@@ -206,8 +249,61 @@ public abstract class World extends Keyed {
         return this.regionModifiedState;
     }
 
+    public @NonNull SavedChunks getSavedChunks() {
+        return this.savedChunks;
+    }
+
+    /**
+     * Let Pl3xMap know the server saved a chunk, so only that chunk gets rendered again.
+     * <p>
+     * Meant to be called from the platform's chunk save hooks on the server thread, this only
+     * remembers the position. Saved chunks are queued in batches once their region file was written.
+     *
+     * @param chunkX chunk x
+     * @param chunkZ chunk z
+     */
+    public void markChunkSaved(int chunkX, int chunkZ) {
+        if (isEnabled()) {
+            this.savedChunks.mark(chunkX, chunkZ);
+        }
+    }
+
+    /**
+     * Find loaded chunks with changes the server did not save yet, around players.
+     * <p>
+     * Called on the server thread for live rendering. Platforms that cannot look at
+     * loaded chunks find nothing, and changes show up once the server saves them.
+     *
+     * @param radius radius (in chunks) around each player to look at
+     * @param chunks receives the position of each chunk found, see {@link Mathf#asLong(int, int)}
+     */
+    public void collectUnsavedChunks(int radius, @NonNull LongConsumer chunks) {
+    }
+
+    /**
+     * Capture a loaded chunk for live rendering.
+     * <p>
+     * Called on the server thread with a small budget of chunks per tick. Platforms copy only
+     * what they need from the chunk right away and build the {@link ChunkSnapshot} in the
+     * returned supplier, which is called on a render thread.
+     *
+     * @param chunkX chunk x
+     * @param chunkZ chunk z
+     * @return supplier building the snapshot, or null if the chunk is not loaded
+     */
+    public @Nullable Supplier<@NonNull ChunkSnapshot> captureChunk(int chunkX, int chunkZ) {
+        return null;
+    }
+
+    /**
+     * Get the region file watcher.
+     *
+     * @return region file watcher
+     * @deprecated one watcher is shared by all worlds now, use {@link Pl3xMap#getRegionFileWatcher()}
+     */
+    @Deprecated
     public @NonNull RegionFileWatcher getRegionFileWatcher() {
-        return this.regionFileWatcher;
+        return Pl3xMap.api().getRegionFileWatcher();
     }
 
     public @NonNull UpdateMarkerData getMarkerTask() {
@@ -321,21 +417,115 @@ public abstract class World extends Keyed {
         if (region != null && region.getX() == regionX && region.getZ() == regionZ) {
             return region;
         }
-        return getRegion(Mathf.asLong(regionX, regionZ));
+        return Pl3xMap.api().getRegionCache().get(this, regionX, regionZ);
     }
 
-    private @NonNull Region getRegion(long pos) {
-        return this.regionCache.get(pos);
+    /**
+     * Get the surface height of a column, for lookups reaching past the edge of the region being rendered.
+     * <p>
+     * Columns in a neighboring region are read from its border strip when it has an up-to-date one,
+     * only otherwise the neighboring chunk gets decoded.
+     *
+     * @param region region being rendered
+     * @param blockX block x
+     * @param blockZ block z
+     * @return surface height, or {@link BorderStrip#NONE} if the column has no data
+     */
+    public int getNeighborHeight(@NonNull Region region, int blockX, int blockZ) {
+        BorderStrip strip = getBorderStrip(region, blockX, blockZ);
+        if (strip != null) {
+            return strip.getHeight(blockX, blockZ);
+        }
+        Chunk.BlockData data = getChunk(region, blockX >> 4, blockZ >> 4).getData(blockX, blockZ);
+        return data == null ? BorderStrip.NONE : data.getBlockY();
     }
 
-    public void unloadRegion(int regionX, int regionZ) {
-        unloadRegion(Mathf.asLong(regionX, regionZ));
+    /**
+     * Get the surface biome of a column, for lookups reaching past the edge of the region being rendered.
+     *
+     * @param region region being rendered
+     * @param blockX block x
+     * @param blockZ block z
+     * @return surface biome, or null if the column has no data
+     * @see #getNeighborHeight(Region, int, int)
+     */
+    public @Nullable Biome getNeighborBiome(@NonNull Region region, int blockX, int blockZ) {
+        BorderStrip strip = getBorderStrip(region, blockX, blockZ);
+        if (strip != null) {
+            return strip.getBiome(blockX, blockZ);
+        }
+        Chunk.BlockData data = getChunk(region, blockX >> 4, blockZ >> 4).getData(blockX, blockZ);
+        return data == null ? null : data.getBiome(region, blockX, blockZ);
+    }
+
+    /**
+     * Store the border strip of a region that was just rendered, so its neighbors can use it right away.
+     *
+     * @param regionX region x
+     * @param regionZ region z
+     * @param strip   border strip
+     */
+    public void putBorderStrip(int regionX, int regionZ, @NonNull BorderStrip strip) {
+        this.borderStrips.put(Mathf.asLong(regionX, regionZ), strip);
+    }
+
+    /**
+     * Write the border strip of a region to disk.
+     *
+     * @param regionX region x
+     * @param regionZ region z
+     * @param strip   border strip
+     */
+    public void saveBorderStrip(int regionX, int regionZ, @NonNull BorderStrip strip) {
+        try {
+            strip.write(getBorderStripFile(regionX, regionZ));
+        } catch (IOException e) {
+            Logger.warn("Failed to save border strip " + regionX + "," + regionZ + " for " + getName(), e);
+        }
+    }
+
+    private @Nullable BorderStrip getBorderStrip(@NonNull Region region, int blockX, int blockZ) {
+        int regionX = blockX >> 9;
+        int regionZ = blockZ >> 9;
+        if (regionX == region.getX() && regionZ == region.getZ()) {
+            // chunks of the region being rendered are loaded anyway
+            return null;
+        }
+        BorderStrip strip = this.borderStrips.get(Mathf.asLong(regionX, regionZ));
+        return strip == BorderStrip.MISSING || !strip.contains(blockX, blockZ) ? null : strip;
+    }
+
+    private @NonNull BorderStrip loadBorderStrip(long pos) {
+        int regionX = Mathf.longToX(pos);
+        int regionZ = Mathf.longToZ(pos);
+        Path mca = getMCAFile(regionX, regionZ);
+        if (!Files.exists(mca)) {
+            return BorderStrip.EMPTY;
+        }
+        try {
+            BorderStrip strip = BorderStrip.read(this, getBorderStripFile(regionX, regionZ), mca.toFile().lastModified());
+            return strip == null ? BorderStrip.MISSING : strip;
+        } catch (IOException e) {
+            Logger.warn("Failed to read border strip " + regionX + "," + regionZ + " for " + getName(), e);
+            return BorderStrip.MISSING;
+        }
     }
 
-    private void unloadRegion(long pos) {
-        this.regionCache.invalidate(pos);
+    private @NonNull Path getBorderStripFile(int regionX, int regionZ) {
+        return getDataDirectory().resolve("borders").resolve(regionX + "_" + regionZ + ".gz");
     }
 
+    public void unloadRegion(int regionX, int regionZ) {
+        Pl3xMap.api().getRegionCache().invalidate(this, regionX, regionZ);
+    }
+
+    /**
+     * List the region files of this world.
+     *
+     * @return region files
+     * @deprecated lists and stats the region directory on every call, use {@link #listRegions(boolean)}
+     */
+    @Deprecated
     public @NonNull Collection<@NonNull Path> getRegionFiles() {
         if (!Files.exists(getRegionDirectory())) {
             return Collections.emptySet();
@@ -359,13 +549,11 @@ public abstract class World extends Keyed {
     }
 
     public @NonNull Collection<@NonNull Point> listRegions(boolean ignoreTimestamp) {
-        return FileUtil.regionPathsToPoints(this, getRegionFiles(), ignoreTimestamp);
+        return this.regionIndex.listRegions(ignoreTimestamp);
     }
 
-    private @NonNull Region loadRegion(long pos) {
-        int x = Mathf.longToX(pos);
-        int z = Mathf.longToZ(pos);
-        return new Region(this, x, z, getMCAFile(x, z));
+    @NonNull Region loadRegion(int regionX, int regionZ) {
+        return new Region(this, regionX, regionZ, getMCAFile(regionX, regionZ));
     }
 
     private @NonNull Path getMCAFile(int regionX, int regionZ) {
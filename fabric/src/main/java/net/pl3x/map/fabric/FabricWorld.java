@@ -23,27 +23,53 @@
  */
 package net.pl3x.map.fabric;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import net.minecraft.core.Holder;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.registries.Registries;
 import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.LightLayer;
 import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.biome.BiomeManager;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.DataLayer;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+import net.minecraft.world.level.levelgen.Heightmap;
 import net.pl3x.map.core.Pl3xMap;
 import net.pl3x.map.core.configuration.ColorsConfig;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.player.Player;
 import net.pl3x.map.core.util.Colors;
 import net.pl3x.map.core.util.Mathf;
+import net.pl3x.map.core.world.Block;
+import net.pl3x.map.core.world.Blocks;
+import net.pl3x.map.core.world.ChunkSnapshot;
 import net.pl3x.map.core.world.World;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 public class FabricWorld extends World {
     private final ServerLevel level;
 
+    // converted on render threads, the server hands out one instance per state
+    private final Map<@NonNull BlockState, net.pl3x.map.core.world.@NonNull BlockState> blockStates = new ConcurrentHashMap<>();
+    private final Map<@NonNull Holder<@NonNull Biome>, net.pl3x.map.core.world.@NonNull Biome> biomes = new ConcurrentHashMap<>();
+
     public FabricWorld(@NonNull ServerLevel level, @NonNull String name) {
         super(
                 name,
@@ -130,6 +156,105 @@ public class FabricWorld extends World {
         return this.level.getWorldBorder().getMaxZ();
     }
 
+    @Override
+    public void collectUnsavedChunks(int radius, @NonNull LongConsumer chunks) {
+        for (ServerPlayer player : this.level.players()) {
+            ChunkPos center = player.chunkPosition();
+            for (int x = center.x - radius; x <= center.x + radius; x++) {
+                for (int z = center.z - radius; z <= center.z + radius; z++) {
+                    LevelChunk chunk = this.level.getChunkSource().getChunkNow(x, z);
+                    if (chunk != null && chunk.isUnsaved()) {
+                        chunks.accept(Mathf.asLong(x, z));
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public @Nullable Supplier<@NonNull ChunkSnapshot> captureChunk(int chunkX, int chunkZ) {
+        LevelChunk chunk = this.level.getChunkSource().getChunkNow(chunkX, chunkZ);
+        if (chunk == null) {
+            return null;
+        }
+
+        // only copy what the renderers look at while on the server thread
+        int[] surface = new int[256];
+        int floor = Integer.MAX_VALUE;
+        int top = Integer.MIN_VALUE;
+        for (int z = 0; z < 16; z++) {
+            for (int x = 0; x < 16; x++) {
+                int y = chunk.getHeight(Heightmap.Types.WORLD_SURFACE, x, z) + 1;
+                surface[(z << 4) + x] = y;
+                top = Math.max(top, y);
+                floor = Math.min(floor, chunk.getHeight(Heightmap.Types.OCEAN_FLOOR, x, z));
+            }
+        }
+
+        LevelChunkSection[] sections = chunk.getSections();
+        int last = sections.length - 1;
+        // renderers look through a few blocks below the floor, like glass and blocks without color
+        int from = hasCeiling() ? 0 : Mathf.clamp(0, last, chunk.getSectionIndex(floor - 16));
+        int to = hasCeiling() ? last : Mathf.clamp(0, last, chunk.getSectionIndex(top));
+
+        List<CapturedSection> captured = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            LevelChunkSection section = sections[i];
+            int sectionY = chunk.getSectionYFromSectionIndex(i);
+            List<Holder<Biome>> biomes = new ArrayList<>(64);
+            for (int y = 0; y < 4; y++) {
+                for (int z = 0; z < 4; z++) {
+                    for (int x = 0; x < 4; x++) {
+                        biomes.add(section.getBiomes().get(x, y, z));
+                    }
+                }
+            }
+            DataLayer light = this.level.getLightEngine().getLayerListener(LightLayer.BLOCK).getDataLayerData(SectionPos.of(chunkX, sectionY, chunkZ));
+            captured.add(new CapturedSection(
+                    sectionY,
+                    section.hasOnlyAir() ? null : section.getStates().copy(),
+                    biomes,
+                    light == null || light.isEmpty() ? null : light.copy()
+            ));
+        }
+        long inhabitedTime = chunk.getInhabitedTime();
+
+        return () -> {
+            ChunkSnapshot.Builder builder = ChunkSnapshot.builder(this, chunkX, chunkZ)
+                    .inhabitedTime(inhabitedTime)
+                    .surface(surface);
+            net.pl3x.map.core.world.BlockState air = Blocks.AIR.getDefaultState();
+            for (CapturedSection section : captured) {
+                net.pl3x.map.core.world.BlockState[] blocks = new net.pl3x.map.core.world.BlockState[4096];
+                for (int i = 0; i < blocks.length; i++) {
+                    blocks[i] = section.states() == null ? air : toBlockState(section.states().get(i & 0xF, i >> 8, (i >> 4) & 0xF));
+                }
+                net.pl3x.map.core.world.Biome[] biomes = new net.pl3x.map.core.world.Biome[64];
+                for (int i = 0; i < biomes.length; i++) {
+                    biomes[i] = toBiome(section.biomes().get(i));
+                }
+                builder.section(section.sectionY(), blocks, biomes, section.light() == null ? null : section.light().getData());
+            }
+            return builder.build();
+        };
+    }
+
+    private net.pl3x.map.core.world.@NonNull BlockState toBlockState(@NonNull BlockState state) {
+        return this.blockStates.computeIfAbsent(state, s -> {
+            ResourceLocation key = this.level.registryAccess().registryOrThrow(Registries.BLOCK).getKey(s.getBlock());
+            Block block = key == null ? Blocks.AIR : Pl3xMap.api().getBlockRegistry().getOrDefault(key.toString(), Blocks.AIR);
+            Map<String, String> properties = new HashMap<>();
+            s.getValues().forEach((property, value) -> properties.put(property.getName().toLowerCase(), value.toString().toLowerCase()));
+            return new net.pl3x.map.core.world.BlockState(block, properties);
+        });
+    }
+
+    private net.pl3x.map.core.world.@NonNull Biome toBiome(@NonNull Holder<@NonNull Biome> holder) {
+        return this.biomes.computeIfAbsent(holder, h -> h.unwrapKey()
+                .map(key -> getBiomeRegistry().getOrDefault(key.location().toString(), net.pl3x.map.core.world.Biome.DEFAULT))
+                .orElse(net.pl3x.map.core.world.Biome.DEFAULT));
+    }
+
     @Override
     public @NonNull Collection<@NonNull Player> getPlayers() {
         return this.<ServerLevel>getLevel().players().stream()
@@ -146,4 +271,8 @@ public class FabricWorld extends World {
                 + ",spawn=" + getSpawn()
                 + "}";
     }
+
+    private record CapturedSection(int sectionY, @Nullable PalettedContainer<@NonNull BlockState> states,
+                                   @NonNull List<@NonNull Holder<@NonNull Biome>> biomes, @Nullable DataLayer light) {
+    }
 }
@@ -94,6 +94,7 @@ public class Pl3xMapFabric extends Pl3xMap implements DedicatedServerModInitiali
                 this.tick = 0;
                 getScheduler().tick();
             }
+            getLiveChunks().tick();
         });
 
         ServerPlayConnectionEvents.JOIN.register((handler, sender, server) -> {
@@ -175,6 +176,16 @@ public class Pl3xMapFabric extends Pl3xMap implements DedicatedServerModInitiali
         return getModContainer().getOrigin().getPaths().get(0);
     }
 
+    @Override
+    public double getMspt() {
+        return this.server == null ? -1D : this.server.getAverageTickTime();
+    }
+
+    @Override
+    public boolean reportsChunkSaves() {
+        return true;
+    }
+
     @Override
     public int getColorForPower(byte power) {
         return RedStoneWireBlock.getColorForPower(power);
@@ -40,6 +40,7 @@ import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.util.RandomSource;
+import net.minecraft.world.level.ChunkPos;
 import net.minecraft.world.level.biome.Biome;
 import net.minecraft.world.level.block.Block;
 import net.minecraft.world.level.block.RedStoneWireBlock;
@@ -49,6 +50,7 @@ import net.minecraft.world.level.levelgen.feature.configurations.SimpleBlockConf
 import net.minecraftforge.common.MinecraftForge;
 import net.minecraftforge.common.capabilities.RegisterCapabilitiesEvent;
 import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.event.level.ChunkDataEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.server.ServerStartedEvent;
 import net.minecraftforge.event.server.ServerStoppingEvent;
@@ -106,10 +108,14 @@ public class Pl3xMapForge extends Pl3xMap {
 
     @SubscribeEvent
     public void onServerTick(TickEvent.@NonNull ServerTickEvent event) {
-        if (event.phase == TickEvent.Phase.END && this.tick++ >= 20) {
+        if (event.phase != TickEvent.Phase.END) {
+            return;
+        }
+        if (this.tick++ >= 20) {
             this.tick = 0;
             getScheduler().tick();
         }
+        getLiveChunks().tick();
     }
 
     @SubscribeEvent
@@ -130,6 +136,19 @@ public class Pl3xMapForge extends Pl3xMap {
         }
     }
 
+    @SubscribeEvent
+    public void onChunkSave(ChunkDataEvent.@NonNull Save event) {
+        // fired for autosaves, unloads and shutdown, only when the chunk is actually saved
+        if (!(event.getLevel() instanceof ServerLevel level)) {
+            return;
+        }
+        World world = getWorldRegistry().getByLevel(level);
+        if (world != null) {
+            ChunkPos pos = event.getChunk().getPos();
+            world.markChunkSaved(pos.x, pos.z);
+        }
+    }
+
     @SubscribeEvent
     public void onServerStarted(@NonNull ServerStartedEvent event) {
         this.server = event.getServer();
@@ -201,6 +220,16 @@ public class Pl3xMapForge extends Pl3xMap {
         return getModInfo().getOwningFile().getFile().getFilePath();
     }
 
+    @Override
+    public double getMspt() {
+        return this.server == null ? -1D : this.server.getAverageTickTime();
+    }
+
+    @Override
+    public boolean reportsChunkSaves() {
+        return true;
+    }
+
     @Override
     public int getColorForPower(byte power) {
         return RedStoneWireBlock.getColorForPower(power);